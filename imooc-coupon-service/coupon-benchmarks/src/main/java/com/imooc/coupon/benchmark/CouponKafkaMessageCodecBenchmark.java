@@ -0,0 +1,108 @@
+package com.imooc.coupon.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.constant.CouponStatus;
+import com.imooc.coupon.serialization.CouponKafkaMessageCodec;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>优惠券 Kafka 消息编码基准测试</h1>
+ * 比较 JSON 与二进制编码的编解码吞吐量, ids 取 5(单次状态变更) 和 500(合并后的消息)个,
+ * id 是相近的优惠券主键(间隔 1 ~ 16), 与同一批发放的优惠券一致
+ * 每条消息的字节数在 Setup 中记录日志, 例如 "ids: 500, json: xxx bytes, binary: xxx bytes"
+ * 运行: java -jar coupon-benchmarks/target/benchmarks.jar CouponKafkaMessageCodecBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class CouponKafkaMessageCodecBenchmark {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(CouponKafkaMessageCodecBenchmark.class);
+
+    /** 每条消息包含的优惠券个数 */
+    @Param({"5", "500"})
+    private int ids;
+
+    private CouponKafkaMessage message;
+
+    private byte[] json;
+
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+
+        Random random = new Random(0);
+        List<Integer> couponIds = new ArrayList<>(ids);
+        int id = 10000000;
+        for (int i = 0; i < ids; ++i) {
+            id += 1 + random.nextInt(16);
+            couponIds.add(id);
+        }
+        message = new CouponKafkaMessage(CouponStatus.USED.getCode(), couponIds, 10001L);
+        json = encodeJson(message);
+        binary = CouponKafkaMessageCodec.encode(message);
+
+        log.info("ids: {}, json: {} bytes, binary: {} bytes",
+                ids, json.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return encodeJson(message);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return CouponKafkaMessageCodec.encode(message);
+    }
+
+    @Benchmark
+    public CouponKafkaMessage decodeJson() {
+        return JSON.parseObject(new String(json, StandardCharsets.UTF_8),
+                CouponKafkaMessage.class);
+    }
+
+    @Benchmark
+    public CouponKafkaMessage decodeBinary() {
+        return CouponKafkaMessageCodec.decode(binary);
+    }
+
+    private static byte[] encodeJson(CouponKafkaMessage message) {
+        return JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CouponKafkaMessageCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,341 @@
+package com.imooc.coupon.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.config.KafkaConsumerConfig;
+import com.imooc.coupon.config.KafkaConsumerProperties;
+import com.imooc.coupon.config.KafkaTopicProperties;
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.constant.CouponStatus;
+import com.imooc.coupon.dao.CouponDao;
+import com.imooc.coupon.entity.Coupon;
+import com.imooc.coupon.service.impl.KafkaServiceImpl;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.AbstractKafkaListenerContainerFactory;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.rule.KafkaEmbedded;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>优惠券 Kafka 消息消费基准测试</h1>
+ * 内嵌的 Kafka Broker + H2 内存数据库, 每次测量先暂停监听容器, 插入一批新的可用优惠券,
+ * 写入 MESSAGES 条消息, 再恢复监听容器, 统计所有优惠券状态写入 DB 的耗时:
+ * 1. record: 原来的逐条消费, 每条消息 findAllById + saveAll, 即 1 次 select + N 次 update
+ * 2. batch: KafkaServiceImpl 批量消费, 每批每个状态一条 update ... where id in (...),
+ *    消息按 userId 分区, 每个分区一个消费线程
+ * H2 没有网络往返, 在 MySQL 上两者的差距会更大
+ * 运行: java -jar coupon-benchmarks/target/benchmarks.jar KafkaConsumeBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class KafkaConsumeBenchmark {
+
+    /** 每次测量写入的消息条数 */
+    private static final int MESSAGES = 2000;
+
+    /** 每条消息包含的优惠券个数 */
+    private static final int IDS_PER_MESSAGE = 5;
+
+    /** Topic 的分区数 */
+    private static final int PARTITIONS = 4;
+
+    /** 消息涉及的用户数 */
+    private static final int USERS = 100;
+
+    /** 消费方式 */
+    @Param({"record", "batch"})
+    private String mode;
+
+    private KafkaEmbedded broker;
+
+    private AnnotationConfigApplicationContext context;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private DefaultKafkaProducerFactory<String, String> producerFactory;
+
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    private Collection<MessageListenerContainer> containers;
+
+    /** 本次测量之前的最大优惠券 id */
+    private int base;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(
+                org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        broker = new KafkaEmbedded(1, true, PARTITIONS, Constant.Kafka.TOPIC);
+        broker.before();
+
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(
+                Collections.singletonList(broker.getBrokersAsString()));
+        kafkaProperties.getConsumer().setAutoOffsetReset("earliest");
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(KafkaProperties.class, () -> kafkaProperties);
+        context.register(StorageConfig.class,
+                "batch".equals(mode) ? BatchConfig.class : RecordConfig.class);
+        context.refresh();
+
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        Map<String, Object> producerProps = KafkaTestUtils.producerProps(broker);
+        producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerFactory = new DefaultKafkaProducerFactory<>(producerProps);
+        kafkaTemplate = new KafkaTemplate<>(producerFactory);
+
+        containers = context.getBean(KafkaListenerEndpointRegistry.class)
+                .getListenerContainers();
+        // 等待所有分区分配完成, 否则暂停时没有可暂停的分区
+        for (MessageListenerContainer container : containers) {
+            while (assignedPartitions(container) < PARTITIONS) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    /**
+     * <h2>暂停消费, 插入本次测量的优惠券并写入消息</h2>
+     * 每次使用新的优惠券, 而不是把已经更新的优惠券恢复为可用状态: 状态只能前进,
+     * 消费端会跳过最近已经更新过的优惠券
+     * */
+    @Setup(Level.Invocation)
+    public void prepare() throws InterruptedException {
+
+        for (MessageListenerContainer container : containers) {
+            container.pause();
+            while (!container.isContainerPaused()) {
+                Thread.sleep(1);
+            }
+        }
+
+        base = jdbcTemplate.queryForObject(
+                "select coalesce(max(id), 0) from coupon", Integer.class);
+        List<Object[]> coupons = new ArrayList<>(MESSAGES * IDS_PER_MESSAGE);
+        for (int i = 0; i < MESSAGES * IDS_PER_MESSAGE; ++i) {
+            coupons.add(new Object[]{base + i + 1, 1, userId(i / IDS_PER_MESSAGE),
+                    "benchmark" + (base + i), new Date(), CouponStatus.USABLE.getCode()});
+        }
+        jdbcTemplate.batchUpdate("insert into coupon (id, template_id, user_id, "
+                + "coupon_code, assign_time, status) values (?, ?, ?, ?, ?, ?)", coupons);
+
+        for (int i = 0; i < MESSAGES; ++i) {
+            List<Integer> ids = new ArrayList<>(IDS_PER_MESSAGE);
+            for (int j = 1; j <= IDS_PER_MESSAGE; ++j) {
+                ids.add(base + i * IDS_PER_MESSAGE + j);
+            }
+            CouponStatus status = i % 2 == 0 ? CouponStatus.USED : CouponStatus.EXPIRED;
+            long userId = userId(i);
+            kafkaTemplate.send(Constant.Kafka.TOPIC, String.valueOf(userId),
+                    JSON.toJSONString(new CouponKafkaMessage(status.getCode(), ids, userId)));
+        }
+        kafkaTemplate.flush();
+    }
+
+    @Benchmark
+    public int consume() throws InterruptedException {
+
+        containers.forEach(MessageListenerContainer::resume);
+        int usable;
+        while ((usable = usableCount()) > 0) {
+            Thread.sleep(1);
+        }
+        return usable;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        producerFactory.destroy();
+        context.close();
+        broker.after();
+    }
+
+    private static int assignedPartitions(MessageListenerContainer container) {
+        return CollectionUtils.size(((ConcurrentMessageListenerContainer<?, ?>)
+                container).getAssignedPartitions());
+    }
+
+    private static long userId(int message) {
+        return 10001L + message % USERS;
+    }
+
+    private int usableCount() {
+        return jdbcTemplate.queryForObject("select count(*) from coupon "
+                + "where id > ? and status = ?", Integer.class, base,
+                CouponStatus.USABLE.getCode());
+    }
+
+    /**
+     * <h2>H2 + JPA, 只扫描 Coupon 和 CouponDao</h2>
+     * */
+    @Configuration
+    @EnableKafka
+    @EnableJpaRepositories(basePackageClasses = CouponDao.class)
+    static class StorageConfig {
+
+        @Bean
+        public DataSource dataSource() {
+            return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                    .generateUniqueName(true).build();
+        }
+
+        @Bean
+        public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory(
+                DataSource dataSource) {
+
+            LocalContainerEntityManagerFactoryBean factory =
+                    new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource);
+            factory.setPackagesToScan(Coupon.class.getPackage().getName());
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            Properties properties = new Properties();
+            properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+            factory.setJpaProperties(properties);
+            return factory;
+        }
+
+        @Bean
+        public JpaTransactionManager transactionManager(EntityManagerFactory emf) {
+            return new JpaTransactionManager(emf);
+        }
+
+        /**
+         * <h2>缩短 poll 超时, 暂停的容器恢复后尽快开始消费</h2>
+         * */
+        @Bean
+        public static BeanPostProcessor pollTimeoutPostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof AbstractKafkaListenerContainerFactory) {
+                        ((AbstractKafkaListenerContainerFactory<?, ?, ?>) bean)
+                                .getContainerProperties().setPollTimeout(10);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    /**
+     * <h2>批量消费: KafkaServiceImpl</h2>
+     * */
+    @Configuration
+    @Import({KafkaConsumerConfig.class, KafkaConsumerProperties.class,
+            KafkaTopicProperties.class, KafkaServiceImpl.class})
+    static class BatchConfig {
+    }
+
+    /**
+     * <h2>逐条消费: 原来的 KafkaServiceImpl 实现</h2>
+     * */
+    @Configuration
+    static class RecordConfig {
+
+        @Bean
+        public ConcurrentKafkaListenerContainerFactory<Object, Object> kafkaListenerContainerFactory(
+                KafkaProperties kafkaProperties) {
+
+            ConcurrentKafkaListenerContainerFactory<Object, Object> factory =
+                    new ConcurrentKafkaListenerContainerFactory<>();
+            factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(
+                    kafkaProperties.buildConsumerProperties()));
+            return factory;
+        }
+
+        @Bean
+        public RecordListener recordListener() {
+            return new RecordListener();
+        }
+    }
+
+    static class RecordListener {
+
+        @Autowired
+        private CouponDao couponDao;
+
+        @KafkaListener(topics = {Constant.Kafka.TOPIC}, groupId = "imooc-coupon-record")
+        public void consumeCouponKafkaMessage(ConsumerRecord<?, ?> record) {
+
+            CouponKafkaMessage message = JSON.parseObject(record.value().toString(),
+                    CouponKafkaMessage.class);
+            CouponStatus status = CouponStatus.of(message.getStatus());
+            List<Coupon> coupons = couponDao.findAllById(message.getIds());
+            coupons.forEach(c -> c.setStatus(status));
+            couponDao.saveAll(coupons);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(KafkaConsumeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.imooc.coupon.benchmark;
+
+import com.imooc.coupon.util.MoneyUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>金额计算基准测试</h1>
+ * 商品总价 -> 满减 -> 折扣 -> 最小支付费用, 比较原来的 double + BigDecimal 保留小数
+ * 与 long 分的计算方式; 加 -prof gc 可以看到 cents 不分配内存
+ * 运行: java -jar coupon-benchmarks/target/benchmarks.jar MoneyBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class MoneyBenchmark {
+
+    private double[] prices = {120.5, 35.8, 9.9, 0.35, 1999.99};
+
+    private int[] counts = {2, 3, 10, 7, 1};
+
+    private int base = 200;
+
+    private int quota = 20;
+
+    private int percent = 85;
+
+    @Benchmark
+    public double bigDecimal() {
+        double goodsSum = 0;
+        for (int i = 0; i < prices.length; ++i) {
+            goodsSum += prices[i] * counts[i];
+        }
+        goodsSum = retain2Decimals(goodsSum);
+        double cost = goodsSum >= base ? goodsSum - quota : goodsSum;
+        cost = retain2Decimals(cost * (percent * 1.0 / 100));
+        return cost > 0.1 ? cost : 0.1;
+    }
+
+    @Benchmark
+    public double cents() {
+        long goodsSum = 0;
+        for (int i = 0; i < prices.length; ++i) {
+            goodsSum += MoneyUtils.multiply(prices[i], counts[i]);
+        }
+        long cost = goodsSum >= MoneyUtils.yuanToCents(base)
+                ? goodsSum - MoneyUtils.yuanToCents(quota) : goodsSum;
+        cost = MoneyUtils.discount(cost, percent);
+        return MoneyUtils.toYuan(Math.max(cost, 10L));
+    }
+
+    private static double retain2Decimals(double value) {
+        return new BigDecimal(value).setScale(2, BigDecimal.ROUND_HALF_UP).doubleValue();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MoneyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,204 @@
+package com.imooc.coupon.benchmark;
+
+import ch.qos.logback.classic.Level;
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.constant.CouponCategory;
+import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.executor.ExecuteManager;
+import com.imooc.coupon.executor.impl.LiJianExecutor;
+import com.imooc.coupon.executor.impl.ManJianExecutor;
+import com.imooc.coupon.executor.impl.ZheKouExecutor;
+import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.GoodsInfo;
+import com.imooc.coupon.vo.SettlementInfo;
+import com.imooc.coupon.vo.TemplateRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>优惠券结算基准测试</h1>
+ * 每个场景分别在 small(3 种商品) 和 large(50 种商品) 两种购物车上运行:
+ * 1. manJianDirect: 直接调用满减执行器, 即不经过 ExecuteManager 分发的单张优惠券结算
+ * 2. manJian / zheKou / liJian: 经过 ExecuteManager 分发的单张优惠券结算
+ * 3. manJianZheKou: 满减 + 折扣两张优惠券叠加结算
+ * 4. stacked: 满减 + 立减 + 折扣三张优惠券叠加结算
+ * 5. goodsTypeMismatch: 优惠券与商品类型不匹配, 返回商品原价
+ * 吞吐量之外, 加 -prof gc 可以看到每次结算分配的内存(gc.alloc.rate.norm)
+ * 运行: java -jar coupon-benchmarks/target/benchmarks.jar SettlementBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1)
+@State(Scope.Benchmark)
+public class SettlementBenchmark {
+
+    /** 优惠券可以使用的商品类型 */
+    private static final List<Integer> GOODS_TYPES = Arrays.asList(1, 2, 3);
+
+    /** 大购物车的商品种类数 */
+    private static final int LARGE_CART_SIZE = 50;
+
+    /** 购物车规模 */
+    @Param({"small", "large"})
+    private String cart;
+
+    private ExecuteManager executeManager;
+
+    private ManJianExecutor manJianExecutor;
+
+    private List<GoodsInfo> goodsInfos;
+
+    private List<SettlementInfo.CouponAndTemplateInfo> manJian;
+
+    private List<SettlementInfo.CouponAndTemplateInfo> zheKou;
+
+    private List<SettlementInfo.CouponAndTemplateInfo> liJian;
+
+    private List<SettlementInfo.CouponAndTemplateInfo> manJianZheKou;
+
+    private List<SettlementInfo.CouponAndTemplateInfo> stacked;
+
+    private List<SettlementInfo.CouponAndTemplateInfo> mismatch;
+
+    @Setup
+    public void setup() {
+
+        // 执行器中的 debug 日志会掩盖结算本身的耗时
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(
+                org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        manJianExecutor = new ManJianExecutor();
+        executeManager = new ExecuteManager();
+        executeManager.postProcessBeforeInitialization(manJianExecutor, "manJian");
+        executeManager.postProcessBeforeInitialization(new LiJianExecutor(), "liJian");
+        executeManager.postProcessBeforeInitialization(new ZheKouExecutor(), "zheKou");
+
+        goodsInfos = "large".equals(cart) ? largeCart() : Arrays.asList(
+                new GoodsInfo(120.5, 2, 1),
+                new GoodsInfo(35.8, 3, 2),
+                new GoodsInfo(9.9, 10, 3)
+        );
+
+        String weight = JSON.toJSONString(Arrays.asList(
+                "1001201908010001", "1003201908010002", "1002201908010003"));
+        SettlementInfo.CouponAndTemplateInfo manJianCoupon = couponAndTemplate(1,
+                CouponCategory.MANJIAN, "100120190801", 200, 20, weight, GOODS_TYPES);
+        SettlementInfo.CouponAndTemplateInfo liJianCoupon = couponAndTemplate(2,
+                CouponCategory.LIJIAN, "100320190801", 1, 10, weight, GOODS_TYPES);
+        SettlementInfo.CouponAndTemplateInfo zheKouCoupon = couponAndTemplate(3,
+                CouponCategory.ZHEKOU, "100220190801", 1, 85, weight, GOODS_TYPES);
+        SettlementInfo.CouponAndTemplateInfo mismatchCoupon = couponAndTemplate(4,
+                CouponCategory.MANJIAN, "100120190802", 200, 20, weight,
+                Collections.singletonList(9));
+
+        manJian = Collections.singletonList(manJianCoupon);
+        zheKou = Collections.singletonList(zheKouCoupon);
+        liJian = Collections.singletonList(liJianCoupon);
+        manJianZheKou = Arrays.asList(zheKouCoupon, manJianCoupon);
+        stacked = Arrays.asList(zheKouCoupon, manJianCoupon, liJianCoupon);
+        mismatch = Collections.singletonList(mismatchCoupon);
+    }
+
+    @Benchmark
+    public SettlementInfo manJianDirect() {
+        return manJianExecutor.computeRule(settlement(manJian));
+    }
+
+    @Benchmark
+    public SettlementInfo manJian() throws CouponException {
+        return executeManager.computeRule(settlement(manJian));
+    }
+
+    @Benchmark
+    public SettlementInfo zheKou() throws CouponException {
+        return executeManager.computeRule(settlement(zheKou));
+    }
+
+    @Benchmark
+    public SettlementInfo liJian() throws CouponException {
+        return executeManager.computeRule(settlement(liJian));
+    }
+
+    @Benchmark
+    public SettlementInfo manJianZheKou() throws CouponException {
+        return executeManager.computeRule(settlement(manJianZheKou));
+    }
+
+    @Benchmark
+    public SettlementInfo stacked() throws CouponException {
+        return executeManager.computeRule(settlement(stacked));
+    }
+
+    @Benchmark
+    public SettlementInfo goodsTypeMismatch() throws CouponException {
+        return executeManager.computeRule(settlement(mismatch));
+    }
+
+    /**
+     * <h2>每次结算使用新的 SettlementInfo, 结算会修改 cost 和优惠券列表</h2>
+     * */
+    private SettlementInfo settlement(
+            List<SettlementInfo.CouponAndTemplateInfo> ctInfos) {
+        return new SettlementInfo(10001L, goodsInfos, ctInfos, false, 0.0);
+    }
+
+    /**
+     * <h2>大购物车: 价格和数量按下标确定, 商品类型轮流取 1, 2, 3</h2>
+     * */
+    private static List<GoodsInfo> largeCart() {
+
+        List<GoodsInfo> goodsInfos = new ArrayList<>(LARGE_CART_SIZE);
+        for (int i = 0; i < LARGE_CART_SIZE; ++i) {
+            double price = (i * 3779 % 50000 + 99) / 100.0;
+            goodsInfos.add(new GoodsInfo(price, 1 + i % 5,
+                    GOODS_TYPES.get(i % GOODS_TYPES.size())));
+        }
+        return goodsInfos;
+    }
+
+    private static SettlementInfo.CouponAndTemplateInfo couponAndTemplate(
+            Integer id, CouponCategory category, String key,
+            int base, int quota, String weight, List<Integer> goodsTypes) {
+
+        TemplateRule rule = new TemplateRule(
+                new TemplateRule.Expiration(1, 1, Long.MAX_VALUE),
+                new TemplateRule.Discount(quota, base),
+                1,
+                new TemplateRule.Usage("安徽省", "桐城市",
+                        JSON.toJSONString(goodsTypes)),
+                weight
+        );
+        CouponTemplateSDK template = new CouponTemplateSDK(id, "benchmark",
+                "logo", "desc", category.getCode(), 1, key, 1, rule, 1, 1L);
+        return new SettlementInfo.CouponAndTemplateInfo(id, template);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SettlementBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -1,6 +1,7 @@
 package com.imooc.coupon.conf;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -16,6 +17,8 @@ public class WebConfiguration implements WebMvcConfigurer  {
     @Override
     public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
         converters.clear();
+        //预先序列化好的响应(byte[])直接输出
+        converters.add(new ByteArrayHttpMessageConverter());
         //直接指定使用哪种消息转换器,而不需要springboot为我们挑选合适的转换器
         converters.add(new MappingJackson2HttpMessageConverter());
     }
@@ -16,15 +16,44 @@ public class Constant {
         public static final String TOPIC = "imooc_user_coupon_op";
     }
 
+    /**
+     * <h2>Redis 发布/订阅 channel 定义</h2>
+     * */
+    public static class RedisChannel {
+
+        /** 优惠券模板变更, 消息为模板 id */
+        public static final String TEMPLATE_CHANGE =
+                "imooc_coupon_template_change";
+    }
+
     /**
      * <h2>Redis Key 前缀定义</h2>
      * */
     public static class RedisPrefix {
 
-        /** 优惠券码 key 前缀 */
+        /**
+         * 优惠券码 key 前缀, key 为 前缀 + {模板 id}, 分片时再加上 _ + 分片序号;
+         * {} 是 Redis Cluster 的 hash tag, 同一模板的优惠券码与领取计数在同一个 slot
+         */
         public static final String COUPON_TEMPLATE =
                 "imooc_coupon_template_code_";
 
+        /** 优惠券码生成游标 key 前缀, key 为 前缀 + {模板 id}, 值为已推送的优惠券码序号上界 */
+        public static final String COUPON_TEMPLATE_CURSOR =
+                "imooc_coupon_template_cursor_";
+
+        /** 优惠券模板 SDK 缓存 key 前缀 */
+        public static final String COUPON_TEMPLATE_SDK =
+                "imooc_coupon_template_sdk_";
+
+        /** 定时任务租约 key 前缀, 值为持有租约的实例 id */
+        public static final String JOB_LEASE =
+                "imooc_coupon_job_lease_";
+
+        /** 执行定时任务的存活实例 zset key, score 为最近一次心跳时间 */
+        public static final String JOB_MEMBERS =
+                "imooc_coupon_job_members";
+
         /** 用户当前所有可用的优惠券 key 前缀 */
         public static final String USER_COUPON_USABLE =
                 "imooc_user_coupon_usable_";
@@ -36,5 +65,13 @@ public class Constant {
         /** 用户当前所有已过期的优惠券 key 前缀 */
         public static final String USER_COUPON_EXPIRED =
                 "imooc_user_coupon_expired_";
+
+        /** 发送失败的优惠券状态消息重试列表 key, 值为 CouponKafkaMessage 的 JSON */
+        public static final String COUPON_STATUS_RETRY =
+                "imooc_coupon_status_retry";
+
+        /** 模板领取计数 key 前缀, key 为 前缀 + {模板 id}, hash field 为 userId */
+        public static final String COUPON_TEMPLATE_CLAIM =
+                "imooc_coupon_template_claim_";
     }
 }
@@ -0,0 +1,88 @@
+package com.imooc.coupon.util;
+
+/**
+ * <h1>金额计算工具类</h1>
+ * 金额在计算过程中统一使用 long 表示的"分", 只在输入和输出时与 double 表示的"元"转换:
+ * 1. 加减、乘以数量都是精确的整数运算
+ * 2. 按百分比折扣时四舍五入(ROUND_HALF_UP)到分
+ * 3. 不创建任何对象, 溢出时抛出 ArithmeticException
+ * 输入的金额最多两位小数时, 结果与按十进制(BigDecimal.valueOf)计算的结果一致
+ */
+public final class MoneyUtils {
+
+    /** 1 元 = 100 分 */
+    public static final long CENTS_PER_YUAN = 100L;
+
+    private MoneyUtils() {
+    }
+
+    /**
+     * <h2>元 -> 分, 四舍五入</h2>
+     * @param yuan 金额(元)
+     * @return 金额(分)
+     */
+    public static long toCents(double yuan) {
+        return yuan < 0 ? -Math.round(-yuan * CENTS_PER_YUAN)
+                : Math.round(yuan * CENTS_PER_YUAN);
+    }
+
+    /**
+     * <h2>分 -> 元</h2>
+     * @param cents 金额(分)
+     * @return 与 cents / 100 最接近的 double
+     */
+    public static double toYuan(long cents) {
+        return cents / (double) CENTS_PER_YUAN;
+    }
+
+    /**
+     * <h2>整数元 -> 分, 用于优惠券的额度和门槛</h2>
+     * @param yuan 金额(元)
+     * @return 金额(分)
+     */
+    public static long yuanToCents(int yuan) {
+        return yuan * CENTS_PER_YUAN;
+    }
+
+    /**
+     * <h2>单价 * 数量</h2>
+     * @param price 单价(元)
+     * @param count 数量
+     * @return 总价(分)
+     */
+    public static long multiply(double price, int count) {
+        return Math.multiplyExact(toCents(price), (long) count);
+    }
+
+    /**
+     * <h2>按百分比折扣, 四舍五入到分</h2>
+     * @param cents 金额(分)
+     * @param percent 折扣: 85 代表 85 折
+     * @return 折扣后的金额(分)
+     */
+    public static long discount(long cents, int percent) {
+        return divideHalfUp(Math.multiplyExact(cents, (long) percent), 100L);
+    }
+
+    /**
+     * <h2>保留 2 位小数, 四舍五入</h2>
+     * 替代 new BigDecimal(value).setScale(2, ROUND_HALF_UP).doubleValue()
+     * @param value 金额(元)
+     * @return 金额(元)
+     */
+    public static double retain2Decimals(double value) {
+        return toYuan(toCents(value));
+    }
+
+    /**
+     * <h2>整数除法, 四舍五入(远离 0)</h2>
+     * */
+    private static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (Math.abs(remainder) * 2 >= divisor) {
+            quotient += dividend < 0 ? -1 : 1;
+        }
+        return quotient;
+    }
+}
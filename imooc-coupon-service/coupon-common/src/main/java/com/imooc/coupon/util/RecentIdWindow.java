@@ -0,0 +1,120 @@
+package com.imooc.coupon.util;
+
+import java.util.Arrays;
+
+/**
+ * <h1>最近出现过的 id 窗口</h1>
+ * 由两代开放寻址哈希表(线性探测, int[] 存储)组成:
+ * 当前代写满 capacity 个 id 后淘汰上一代, 当前代成为上一代, 再写入新的一代
+ * 因此窗口内至少保留最近的 capacity 个 id, 至多 2 * capacity 个
+ * 每个 id 约占 8 字节(负载因子不超过 0.5), 添加和查找都不创建对象; 非线程安全
+ */
+public final class RecentIdWindow {
+
+    /** 每一代最多保存的 id 个数 */
+    private final int capacity;
+
+    private Generation current;
+
+    private Generation previous;
+
+    public RecentIdWindow(int capacity) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.current = new Generation(capacity);
+        this.previous = new Generation(capacity);
+    }
+
+    /**
+     * <h2>id 是否在窗口内</h2>
+     * */
+    public boolean contains(int id) {
+        return current.contains(id) || previous.contains(id);
+    }
+
+    /**
+     * <h2>把 id 加入窗口, 已经在窗口内时不做处理</h2>
+     * */
+    public void add(int id) {
+
+        if (contains(id)) {
+            return;
+        }
+        if (current.size == capacity) {
+            Generation evicted = previous;
+            previous = current;
+            evicted.clear();
+            current = evicted;
+        }
+        current.add(id);
+    }
+
+    /**
+     * <h2>一代 id: 0 作为空槽, id 为 0 时单独记录</h2>
+     */
+    private static final class Generation {
+
+        private final int[] slots;
+
+        private final int mask;
+
+        private boolean hasZero;
+
+        private int size;
+
+        private Generation(int capacity) {
+            int length = Integer.highestOneBit(Math.max(capacity * 2 - 1, 1)) << 1;
+            this.slots = new int[length];
+            this.mask = length - 1;
+        }
+
+        private boolean contains(int id) {
+
+            if (id == 0) {
+                return hasZero;
+            }
+            for (int i = index(id); ; i = (i + 1) & mask) {
+                if (slots[i] == id) {
+                    return true;
+                }
+                if (slots[i] == 0) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * <h2>调用方保证 id 不在这一代中, 且 size < capacity</h2>
+         * */
+        private void add(int id) {
+
+            ++size;
+            if (id == 0) {
+                hasZero = true;
+                return;
+            }
+            int i = index(id);
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id;
+        }
+
+        private void clear() {
+            Arrays.fill(slots, 0);
+            hasZero = false;
+            size = 0;
+        }
+
+        /**
+         * <h2>自增 id 是连续的, 乘以黄金分割常数并混入高位, 避免聚集</h2>
+         * */
+        private int index(int id) {
+            int h = id * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
@@ -34,4 +34,10 @@ public class CouponTemplateSDK {
 
     /** 优惠券规则 */
     private TemplateRule rule;
+
+    /** 优惠券码分片个数 */
+    private Integer codeShards;
+
+    /** 优惠券模板最近一次变更的版本号 */
+    private Long version;
 }
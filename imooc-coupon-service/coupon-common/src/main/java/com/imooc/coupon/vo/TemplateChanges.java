@@ -0,0 +1,26 @@
+package com.imooc.coupon.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * <h1>优惠券模板的增量变更</h1>
+ * 客户端保存 version, 下次以 since = version 请求, 即可只获取之后的变更
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TemplateChanges {
+
+    /** 本次变更中最大的版本号, 没有变更时等于请求的 since */
+    private Long version;
+
+    /** 发生变更且当前可用的优惠券模板 */
+    private List<CouponTemplateSDK> usable;
+
+    /** 发生变更且当前不可用(未生成完优惠券码或已过期)的优惠券模板 ids */
+    private List<Integer> removed;
+}
@@ -0,0 +1,91 @@
+package com.imooc.coupon.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+/**
+ * <h1>金额计算工具类测试</h1>
+ * 随机生成金额(固定种子, 可复现), 与按十进制 BigDecimal 计算的结果比较
+ */
+public class MoneyUtilsTest {
+
+    private static final int ROUNDS = 200000;
+
+    /** 最大金额: 100 亿元 */
+    private static final long MAX_CENTS = 1_000_000_000_000L;
+
+    private final Random random = new Random(20190801L);
+
+    @Test
+    public void testCentsRoundTrip() {
+
+        for (int i = 0; i < ROUNDS; ++i) {
+            long cents = randomCents();
+            double yuan = BigDecimal.valueOf(cents, 2).doubleValue();
+            Assert.assertEquals(cents, MoneyUtils.toCents(yuan));
+            Assert.assertEquals(yuan, MoneyUtils.toYuan(cents), 0.0);
+            Assert.assertEquals(-cents, MoneyUtils.toCents(-yuan));
+        }
+    }
+
+    @Test
+    public void testMultiply() {
+
+        for (int i = 0; i < ROUNDS; ++i) {
+            long cents = random.nextInt(100_000_000);
+            int count = random.nextInt(1000);
+            double price = BigDecimal.valueOf(cents, 2).doubleValue();
+            Assert.assertEquals(cents * count, MoneyUtils.multiply(price, count));
+        }
+    }
+
+    @Test
+    public void testDiscount() {
+
+        for (int i = 0; i < ROUNDS; ++i) {
+            long cents = randomCents();
+            int percent = 1 + random.nextInt(100);
+            long expected = BigDecimal.valueOf(cents)
+                    .multiply(BigDecimal.valueOf(percent))
+                    .divide(BigDecimal.valueOf(100), 0, BigDecimal.ROUND_HALF_UP)
+                    .longValueExact();
+            Assert.assertEquals(expected, MoneyUtils.discount(cents, percent));
+            Assert.assertEquals(-expected, MoneyUtils.discount(-cents, percent));
+        }
+    }
+
+    @Test
+    public void testDiscountHalfUp() {
+
+        // 1.15 * 0.9 = 1.035, double 计算得到 1.0349999..., new BigDecimal(double) 舍入为 1.03
+        Assert.assertEquals(104L, MoneyUtils.discount(115L, 90));
+        Assert.assertEquals(1L, MoneyUtils.discount(1L, 50));
+        Assert.assertEquals(0L, MoneyUtils.discount(1L, 49));
+    }
+
+    @Test
+    public void testRetain2Decimals() {
+
+        for (int i = 0; i < ROUNDS; ++i) {
+            long cents = randomCents();
+            double yuan = BigDecimal.valueOf(cents, 2).doubleValue();
+            Assert.assertEquals(yuan, MoneyUtils.retain2Decimals(yuan), 0.0);
+
+            // 多次 double 运算累积的误差不影响结果
+            double sum = yuan * 3 - yuan - yuan;
+            Assert.assertEquals(yuan, MoneyUtils.retain2Decimals(sum), 0.0);
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testOverflow() {
+        MoneyUtils.discount(Long.MAX_VALUE / 10, 85);
+    }
+
+    private long randomCents() {
+        return (random.nextLong() & Long.MAX_VALUE) % MAX_CENTS;
+    }
+}
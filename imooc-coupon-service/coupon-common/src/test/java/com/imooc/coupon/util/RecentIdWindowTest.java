@@ -0,0 +1,86 @@
+package com.imooc.coupon.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * <h1>最近出现过的 id 窗口测试</h1>
+ */
+public class RecentIdWindowTest {
+
+    @Test
+    public void testKeepsLatestCapacityIds() {
+
+        int capacity = 1000;
+        RecentIdWindow window = new RecentIdWindow(capacity);
+        for (int id = 1; id <= 10 * capacity; ++id) {
+            window.add(id);
+            // 最近的 capacity 个 id 一定在窗口内
+            for (int recent = Math.max(1, id - capacity + 1); recent <= id; recent += 97) {
+                Assert.assertTrue(window.contains(recent));
+            }
+        }
+        // 超过 2 * capacity 之前的 id 一定已经淘汰
+        for (int id = 1; id <= 8 * capacity; ++id) {
+            Assert.assertFalse(window.contains(id));
+        }
+        Assert.assertTrue(window.contains(10 * capacity - capacity + 1));
+    }
+
+    @Test
+    public void testDuplicatesDoNotEvict() {
+
+        RecentIdWindow window = new RecentIdWindow(2);
+        window.add(1);
+        window.add(2);
+        for (int i = 0; i < 100; ++i) {
+            window.add(1);
+            window.add(2);
+        }
+        window.add(3);
+        Assert.assertTrue(window.contains(1));
+        Assert.assertTrue(window.contains(2));
+        Assert.assertTrue(window.contains(3));
+    }
+
+    @Test
+    public void testRandomIdsAgainstHashSet() {
+
+        int capacity = 4096;
+        RecentIdWindow window = new RecentIdWindow(capacity);
+        Random random = new Random(20190801L);
+        Set<Integer> latest = new HashSet<>();
+        for (int i = 0; i < capacity; ++i) {
+            int id = random.nextInt();
+            window.add(id);
+            latest.add(id);
+        }
+        for (Integer id : latest) {
+            Assert.assertTrue(window.contains(id));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; ++i) {
+            int id = random.nextInt();
+            if (!latest.contains(id) && window.contains(id)) {
+                ++falsePositives;
+            }
+        }
+        Assert.assertEquals(0, falsePositives);
+    }
+
+    @Test
+    public void testZeroAndNegativeIds() {
+
+        RecentIdWindow window = new RecentIdWindow(4);
+        Assert.assertFalse(window.contains(0));
+        window.add(0);
+        window.add(-1);
+        Assert.assertTrue(window.contains(0));
+        Assert.assertTrue(window.contains(-1));
+        Assert.assertFalse(window.contains(1));
+    }
+}
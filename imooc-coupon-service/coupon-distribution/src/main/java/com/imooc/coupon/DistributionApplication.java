@@ -8,6 +8,7 @@ import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -18,6 +19,7 @@ import org.springframework.web.client.RestTemplate;
 @EnableFeignClients    // 开启 feign ,允许应用访问其它微服务
 @EnableCircuitBreaker  //开启断路器
 @EnableJpaAuditing     //开启JPA的审计功能
+@EnableScheduling      //开启定时任务
 public class DistributionApplication {
     public static void main(String[] args) {
         SpringApplication.run(DistributionApplication.class,args);
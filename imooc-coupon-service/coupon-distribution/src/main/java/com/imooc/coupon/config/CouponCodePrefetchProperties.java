@@ -0,0 +1,21 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>优惠券码预取配置</h1>
+ * 开启后, 每次从 Redis 中取出一段优惠券码放到本地缓冲区, 领取时优先从缓冲区获取
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.code.prefetch")
+public class CouponCodePrefetchProperties {
+
+    /** 是否开启优惠券码预取 */
+    private boolean enabled = true;
+
+    /** 每次从 Redis 中取出的优惠券码个数 */
+    private int size = 100;
+}
@@ -0,0 +1,70 @@
+package com.imooc.coupon.config;
+
+import com.imooc.coupon.serialization.CouponKafkaMessageDeserializer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.kafka.listener.SeekToCurrentBatchErrorHandler;
+
+import java.util.Map;
+
+/**
+ * <h1>优惠券 Kafka 消息批量消费的监听容器</h1>
+ * 1. 批量监听: 一次 poll 的所有消息交给监听方法处理
+ * 2. 手动提交 offset: 监听方法在 DB 事务提交之后确认
+ * 3. 处理失败时回退到本批次的起始 offset, 下次 poll 重新消费整批消息(更新状态是幂等的)
+ * 4. 并发消费: 每个线程一个 consumer, 线程数不超过分区数(多出的 consumer 分不到分区)
+ * 5. 消息值反序列化为 CouponKafkaMessage, 同时支持二进制和 JSON 两种格式
+ */
+@Slf4j
+@Configuration
+public class KafkaConsumerConfig {
+
+    /** 批量消费的监听容器工厂 */
+    public static final String BATCH_FACTORY = "batchKafkaListenerContainerFactory";
+
+    @Bean(BATCH_FACTORY)
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            KafkaProperties kafkaProperties, KafkaConsumerProperties properties,
+            KafkaTopicProperties topicProperties) {
+
+        Map<String, Object> configs = kafkaProperties.buildConsumerProperties();
+        configs.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        configs.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, properties.getMaxPollRecords());
+        configs.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configs.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+                CouponKafkaMessageDeserializer.class);
+
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(configs));
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency(properties, topicProperties));
+        factory.getContainerProperties().setAckMode(
+                AbstractMessageListenerContainer.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setBatchErrorHandler(
+                new SeekToCurrentBatchErrorHandler());
+        return factory;
+    }
+
+    /**
+     * <h2>消费线程数, 超过分区数时取分区数</h2>
+     * */
+    private static int concurrency(KafkaConsumerProperties properties,
+                                   KafkaTopicProperties topicProperties) {
+
+        int concurrency = Math.max(1, properties.getConcurrency());
+        if (concurrency > topicProperties.getPartitions()) {
+            log.warn("Kafka Consumer Concurrency {} Exceeds Partitions {}",
+                    concurrency, topicProperties.getPartitions());
+            concurrency = topicProperties.getPartitions();
+        }
+        return concurrency;
+    }
+}
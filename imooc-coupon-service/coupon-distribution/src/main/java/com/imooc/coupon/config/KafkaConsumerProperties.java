@@ -0,0 +1,27 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>优惠券 Kafka 消息批量消费配置</h1>
+ * 一次拉取多条消息, 按目标状态合并优惠券 id 后批量更新 DB
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.kafka.consumer")
+public class KafkaConsumerProperties {
+
+    /** 消费线程数, 不超过 Topic 的分区数; 同一分区只由一个线程消费, 同一用户的消息按顺序处理 */
+    private int concurrency = 4;
+
+    /** 每次拉取的最大消息条数 */
+    private int maxPollRecords = 500;
+
+    /** 每条 update ... where id in (...) 语句包含的最大 id 个数 */
+    private int updateChunkSize = 1000;
+
+    /** 去重窗口至少保留的最近变为终态的优惠券 id 个数 */
+    private int dedupeWindowSize = 100000;
+}
@@ -0,0 +1,29 @@
+package com.imooc.coupon.config;
+
+import com.imooc.coupon.serialization.CouponKafkaMessageSerializer;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+/**
+ * <h1>优惠券 Kafka 消息的发送模板</h1>
+ * key 为 userId 字符串, 值由 CouponKafkaMessageSerializer 编码,
+ * 其余配置(压缩, 重试等)沿用 spring.kafka.producer
+ */
+@Configuration
+public class KafkaProducerConfig {
+
+    @Bean
+    public KafkaTemplate<String, CouponKafkaMessage> couponKafkaTemplate(
+            KafkaProperties kafkaProperties, KafkaProducerProperties properties) {
+
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                kafkaProperties.buildProducerProperties(),
+                new StringSerializer(),
+                new CouponKafkaMessageSerializer(properties.isBinaryFormat())));
+    }
+}
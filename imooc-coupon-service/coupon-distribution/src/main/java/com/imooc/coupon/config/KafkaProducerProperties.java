@@ -0,0 +1,42 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>优惠券状态消息合并发送配置</h1>
+ * 请求线程只把状态变更放入队列, 由后台线程按(状态, 分区)合并后批量发送
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.kafka.producer")
+public class KafkaProducerProperties {
+
+    /** 合并窗口(毫秒): 从取出窗口内第一个状态变更开始计时 */
+    private long lingerMs = 5;
+
+    /** 同一(状态, 分区)合并的优惠券 id 达到该个数时立即发送 */
+    private int maxIds = 500;
+
+    /** 待发送队列的容量, 也是本实例等待重试的消息数上限 */
+    private int queueCapacity = 100000;
+
+    /** 队列已满时请求线程的最长等待时间(毫秒), 超时后写入 Redis 重试列表 */
+    private long offerTimeoutMs = 50;
+
+    /** 发送失败后第一次重试的等待时间(毫秒), 之后每次翻倍 */
+    private long retryBackoffMs = 100;
+
+    /** 发送失败后重试的最长等待时间(毫秒) */
+    private long maxRetryBackoffMs = 10000;
+
+    /** 从 Redis 重试列表中取消息重新发送的间隔(毫秒) */
+    private long retryPollMs = 1000;
+
+    /** 重新获取 Topic 分区数的间隔(毫秒), 扩容分区后按新的分区数合并 */
+    private long partitionRefreshMs = 60000;
+
+    /** 是否使用二进制编码发送, 所有消费者都升级到能识别二进制编码的版本之后才能设为 true */
+    private boolean binaryFormat = false;
+}
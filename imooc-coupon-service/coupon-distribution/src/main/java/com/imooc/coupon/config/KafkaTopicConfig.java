@@ -0,0 +1,20 @@
+package com.imooc.coupon.config;
+
+import com.imooc.coupon.constant.Constant;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * <h1>优惠券 Kafka Topic</h1>
+ * 启动时由 KafkaAdmin 创建不存在的 Topic, 已经存在的 Topic 不会修改分区数
+ */
+@Configuration
+public class KafkaTopicConfig {
+
+    @Bean
+    public NewTopic couponOpTopic(KafkaTopicProperties properties) {
+        return new NewTopic(Constant.Kafka.TOPIC, properties.getPartitions(),
+                properties.getReplicas());
+    }
+}
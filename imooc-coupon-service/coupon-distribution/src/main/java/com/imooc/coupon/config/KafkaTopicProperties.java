@@ -0,0 +1,21 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>优惠券 Kafka Topic 配置</h1>
+ * 消息以 userId 作为 key, 同一用户的消息进入同一个分区, 分区数决定了消费的最大并行度
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.kafka.topic")
+public class KafkaTopicProperties {
+
+    /** 分区数 */
+    private int partitions = 8;
+
+    /** 副本数 */
+    private short replicas = 1;
+}
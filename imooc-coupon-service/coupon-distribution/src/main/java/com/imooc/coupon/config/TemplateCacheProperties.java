@@ -0,0 +1,30 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>优惠券模板缓存配置</h1>
+ * 一级缓存为进程内 Caffeine, 二级缓存为 Redis, 都未命中时才通过 feign 访问模板微服务
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.template.cache")
+public class TemplateCacheProperties {
+
+    /** 本地缓存的 CouponTemplateSDK 个数上限 */
+    private long maximumSize = 10000;
+
+    /** 写入多少秒后异步刷新 */
+    private long refreshAfterWrite = 60;
+
+    /** 写入多少秒后过期 */
+    private long expireAfterWrite = 600;
+
+    /** Redis 中缓存的 CouponTemplateSDK 过期秒数 */
+    private long redisTtl = 1800;
+
+    /** 增量同步模板变更的间隔(毫秒), 兜底丢失的模板变更消息 */
+    private long syncInterval = 5000;
+}
@@ -0,0 +1,28 @@
+package com.imooc.coupon.config;
+
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.service.impl.TemplateCacheServiceImpl;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * <h1>订阅优惠券模板变更消息</h1>
+ */
+@Configuration
+public class TemplateChangeListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer templateChangeListenerContainer(
+            RedisConnectionFactory connectionFactory,
+            TemplateCacheServiceImpl templateCacheService) {
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(templateCacheService,
+                new ChannelTopic(Constant.RedisChannel.TEMPLATE_CHANGE));
+        return container;
+    }
+}
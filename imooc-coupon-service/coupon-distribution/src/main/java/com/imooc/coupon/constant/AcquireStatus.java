@@ -0,0 +1,43 @@
+package com.imooc.coupon.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * <h1>领取优惠券码的结果状态</h1>
+ * 与 lua/acquire_coupon_code.lua 的返回值一一对应,
+ * OUT_OF_STOCK 代表没有优惠券码, 不记录领取计数
+ */
+@Getter
+@AllArgsConstructor
+public enum AcquireStatus {
+
+    OK("领取成功", "OK"),
+    LIMIT_EXCEEDED("超过模板的领取限制", "LIMIT_EXCEEDED"),
+    OUT_OF_STOCK("优惠券码已领完", "OUT_OF_STOCK"),
+    NEED_SEED("领取计数不在缓存中, 需要先从数据库重建", "NEED_SEED");
+
+    /** 结果状态描述信息 */
+    private String description;
+
+    /** 脚本返回的结果编码 */
+    private String code;
+
+    /**
+     * <h2>根据 code 获取到 AcquireStatus</h2>
+     * */
+    public static AcquireStatus of(String code) {
+
+        Objects.requireNonNull(code);
+
+        return Stream.of(values())
+                .filter(bean -> bean.code.equals(code))
+                .findAny()
+                .orElseThrow(
+                        () -> new IllegalArgumentException(code + " not exists")
+                );
+    }
+}
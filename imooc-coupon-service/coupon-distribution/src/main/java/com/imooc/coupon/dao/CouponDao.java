@@ -3,7 +3,12 @@ package com.imooc.coupon.dao;
 import com.imooc.coupon.constant.CouponStatus;
 import com.imooc.coupon.entity.Coupon;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -16,4 +21,26 @@ public interface CouponDao extends JpaRepository<Coupon, Integer> {
      * where userId = ... and status = ...
      * */
     List<Coupon> findAllByUserIdAndStatus(Long userId, CouponStatus status);
+
+    /**
+     * <h2>统计用户在每个模板下领取过的优惠券个数(包括已使用和已过期的)</h2>
+     * select template_id, count(*) from coupon where user_id = ... group by template_id
+     * @return [templateId, count]s
+     * */
+    @Query("select c.templateId, count(c) from Coupon c " +
+            "where c.userId = :userId group by c.templateId")
+    List<Object[]> countAllByUserIdGroupByTemplateId(@Param("userId") Long userId);
+
+    /**
+     * <h2>批量更新优惠券状态, 只更新当前状态为 from 的记录</h2>
+     * update coupon set status = ... where id in (...) and status = ...
+     * @return 更新的记录数
+     * */
+    @Modifying
+    @Transactional
+    @Query("update Coupon c set c.status = :to "
+            + "where c.id in :ids and c.status = :from")
+    int transferStatusByIds(@Param("from") CouponStatus from,
+                            @Param("to") CouponStatus to,
+                            @Param("ids") Collection<Integer> ids);
 }
@@ -1,5 +1,6 @@
 package com.imooc.coupon.entity;
 
+import com.alibaba.fastjson.annotation.JSONField;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.imooc.coupon.constant.CouponStatus;
@@ -64,8 +65,9 @@ public class Coupon {
     @Convert(converter = CouponStatusConverter.class)
     private CouponStatus status;
 
-    /** 用户优惠券对应的模板信息 */
+    /** 用户优惠券对应的模板信息, 不写入缓存, 读取后再填充 */
     @Transient
+    @JSONField(serialize = false)
     private CouponTemplateSDK templateSDK;
 
     /**
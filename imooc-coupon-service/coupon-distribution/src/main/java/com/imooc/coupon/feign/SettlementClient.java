@@ -10,6 +10,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 
+import java.util.List;
+
 /**
  * <h1>优惠券结算微服务 feign 接口定义 </h1>
  */
@@ -25,4 +27,15 @@ public interface SettlementClient {
     @RequestMapping(value = "/coupon-settlement/settlement/compute", method = RequestMethod.POST)
     CommonResponse<SettlementInfo> computeRule(@RequestBody SettlementInfo settlementInfo)
             throws CouponException;
+
+    /**
+     * <h2>批量优惠券结算</h2>
+     * 结果与请求一一对应, 单个结算失败时该项 employ = false, cost = -1
+     * @param settlementInfos 多个子订单的结算信息
+     * @return 与请求顺序一致的结算结果
+     * @throws CouponException
+     */
+    @RequestMapping(value = "/coupon-settlement/settlement/compute/batch", method = RequestMethod.POST)
+    CommonResponse<List<SettlementInfo>> computeRuleBatch(@RequestBody List<SettlementInfo> settlementInfos)
+            throws CouponException;
 }
@@ -4,6 +4,7 @@ import com.imooc.coupon.feign.hystrix.TemplateClientHystrix;
 import com.imooc.coupon.feign.hystrix.TemplateClientHystrixFallbackFactory;
 import com.imooc.coupon.vo.CommonResponse;
 import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.TemplateChanges;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -31,4 +32,10 @@ public interface TemplateClient {
      * */
     @RequestMapping(value = "/coupon-template/template/sdk/infos",method = RequestMethod.GET)
     CommonResponse<Map<Integer, CouponTemplateSDK>> findIds2TemplateSDK(@RequestParam("ids") Collection<Integer> ids);
+
+    /**
+     * <h2>获取版本号大于 since 的优惠券模板变更</h2>
+     * */
+    @RequestMapping(value = "/coupon-template/template/sdk/changes",method = RequestMethod.GET)
+    CommonResponse<TemplateChanges> findTemplateChanges(@RequestParam("since") Long since);
 }
@@ -7,6 +7,8 @@ import com.imooc.coupon.vo.SettlementInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * <h1>结算微服务 feign接口 的熔断降级策略</h1>
  */
@@ -28,4 +30,21 @@ public class SettlementClientHystrix implements SettlementClient {
                 "[eureka--client-coupon-settlemet] computeRule request error",
                 settlementInfo);
     }
+
+    /**
+     * <h2>批量优惠券结算</h2>
+     * 所有结算都标记为失败
+     * @param settlementInfos
+     */
+    @Override
+    public CommonResponse<List<SettlementInfo>> computeRuleBatch(List<SettlementInfo> settlementInfos) throws CouponException {
+        log.error("[eureka--client-coupon-settlemet] computeRuleBatch request error");
+        settlementInfos.forEach(s -> {
+            s.setEmploy(false);
+            s.setCost(-1.0);
+        });
+        return new CommonResponse<>(-1,
+                "[eureka--client-coupon-settlemet] computeRuleBatch request error",
+                settlementInfos);
+    }
 }
@@ -3,6 +3,7 @@ package com.imooc.coupon.feign.hystrix;
 import com.imooc.coupon.feign.TemplateClient;
 import com.imooc.coupon.vo.CommonResponse;
 import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.TemplateChanges;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.stereotype.Component;
@@ -42,4 +43,18 @@ public class TemplateClientHystrix implements TemplateClient {
                 Collections.emptyMap()
         );
     }
+
+    /**
+     * <h2>获取版本号大于 since 的优惠券模板变更</h2>
+     * @param since
+     */
+    @Override
+    public CommonResponse<TemplateChanges> findTemplateChanges(Long since) {
+        log.error("[eureka-client-coupon-template] findTemplateChanges request error");
+        return new CommonResponse<>(
+                -1,
+                "[eureka-client-coupon-template] findTemplateChanges request error",
+                new TemplateChanges(since, Collections.emptyList(), Collections.emptyList())
+        );
+    }
 }
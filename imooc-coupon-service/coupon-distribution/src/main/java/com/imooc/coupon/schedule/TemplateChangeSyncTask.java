@@ -0,0 +1,32 @@
+package com.imooc.coupon.schedule;
+
+import com.imooc.coupon.service.ITemplateCacheService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>定时增量同步优惠券模板变更</h1>
+ * 模板变更消息通过 Redis 发布/订阅送达, 订阅断开期间的消息会丢失, 由增量同步兜底
+ */
+@Slf4j
+@Component
+public class TemplateChangeSyncTask {
+
+    private final ITemplateCacheService templateCacheService;
+
+    @Autowired
+    public TemplateChangeSyncTask(ITemplateCacheService templateCacheService) {
+        this.templateCacheService = templateCacheService;
+    }
+
+    @Scheduled(fixedDelayString = "${coupon.template.cache.sync-interval:5000}")
+    public void syncTemplateChanges() {
+        try {
+            templateCacheService.syncTemplateChanges();
+        } catch (Exception ex) {
+            log.error("Sync Template Changes Error: {}", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.imooc.coupon.serialization;
+
+import com.imooc.coupon.vo.CouponKafkaMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1>优惠券 Kafka 消息的二进制编码</h1>
+ * 合并后的消息包含大量相近的优惠券 id, JSON 中每个 id 要占 8 ~ 11 个字节, 二进制格式:
+ * [魔数 1B][版本 1B][状态 1B][标志 1B][userId: zigzag varint, 标志 bit0 为 1 时存在]
+ * [id 个数: varint][第一个 id: zigzag varint][相邻 id 的差值: varint...]
+ * id 排序后按差值编码, 连续发放的优惠券每个 id 只占 1 ~ 2 个字节;
+ * 消费者不依赖 id 的顺序, 解码后的 id 是有序的
+ * 魔数不是合法 JSON 的首字节, 消费者据此区分旧的 JSON 消息
+ */
+public final class CouponKafkaMessageCodec {
+
+    /** 二进制消息的首字节 */
+    public static final byte MAGIC = (byte) 0xC5;
+
+    /** 当前的编码版本 */
+    public static final byte VERSION = 1;
+
+    /** 标志: 包含 userId */
+    private static final int FLAG_USER_ID = 1;
+
+    /** 魔数, 版本, 状态, 标志 */
+    private static final int HEADER_SIZE = 4;
+
+    /** varint 编码一个 long 的最大字节数 */
+    private static final int MAX_VARINT_SIZE = 10;
+
+    private CouponKafkaMessageCodec() {
+    }
+
+    /**
+     * <h2>是否是二进制编码的消息</h2>
+     * */
+    public static boolean isBinary(byte[] data) {
+        return null != data && data.length > 0 && data[0] == MAGIC;
+    }
+
+    /**
+     * <h2>编码</h2>
+     * @param message {@link CouponKafkaMessage} ids 中不能有 null
+     * */
+    public static byte[] encode(CouponKafkaMessage message) {
+
+        int[] ids = sortedIds(message.getIds());
+        byte[] buffer = new byte[HEADER_SIZE + MAX_VARINT_SIZE * (3 + ids.length)];
+
+        buffer[0] = MAGIC;
+        buffer[1] = VERSION;
+        buffer[2] = null == message.getStatus() ? 0 : message.getStatus().byteValue();
+        buffer[3] = (byte) (null == message.getUserId() ? 0 : FLAG_USER_ID);
+        int position = HEADER_SIZE;
+        if (null != message.getUserId()) {
+            position = writeVarLong(buffer, position, zigzag(message.getUserId()));
+        }
+
+        position = writeVarLong(buffer, position, ids.length);
+        if (ids.length > 0) {
+            position = writeVarLong(buffer, position, zigzag(ids[0]));
+            for (int i = 1; i < ids.length; ++i) {
+                // 用 long 计算差值, 首尾 id 跨越 0 时也不会溢出
+                position = writeVarLong(buffer, position, (long) ids[i] - ids[i - 1]);
+            }
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * <h2>解码</h2>
+     * @throws IllegalArgumentException 不是二进制消息, 版本不支持或者数据不完整
+     * */
+    public static CouponKafkaMessage decode(byte[] data) {
+
+        if (!isBinary(data) || data.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Not A Binary Coupon Kafka Message");
+        }
+        if (data[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported Coupon Kafka Message Version: "
+                    + data[1]);
+        }
+
+        Reader reader = new Reader(data, HEADER_SIZE);
+        Integer status = 0 == data[2] ? null : (int) data[2];
+        Long userId = (data[3] & FLAG_USER_ID) == 0 ? null : unzigzag(reader.readVarLong());
+
+        long count = reader.readVarLong();
+        // 每个 id 至少占一个字节, 防止错误的个数导致分配过大的 List
+        if (count < 0 || count > data.length - reader.position) {
+            throw new IllegalArgumentException("Invalid Coupon Id Count: " + count);
+        }
+        List<Integer> ids = new ArrayList<>((int) count);
+        if (count > 0) {
+            long id = unzigzag(reader.readVarLong());
+            ids.add((int) id);
+            for (int i = 1; i < count; ++i) {
+                id += reader.readVarLong();
+                ids.add((int) id);
+            }
+        }
+        return new CouponKafkaMessage(status, ids, userId);
+    }
+
+    private static int[] sortedIds(List<Integer> ids) {
+
+        if (null == ids) {
+            return new int[0];
+        }
+        int[] sorted = new int[ids.size()];
+        for (int i = 0; i < sorted.length; ++i) {
+            sorted[i] = ids.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static int writeVarLong(byte[] buffer, int position, long value) {
+
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * <h2>按顺序读取 varint</h2>
+     */
+    private static final class Reader {
+
+        private final byte[] data;
+
+        private int position;
+
+        private Reader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        private long readVarLong() {
+
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length) {
+                    throw new IllegalArgumentException("Truncated Coupon Kafka Message");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed Varint In Coupon Kafka Message");
+        }
+    }
+}
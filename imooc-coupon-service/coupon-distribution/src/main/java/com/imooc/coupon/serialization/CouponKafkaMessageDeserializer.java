@@ -0,0 +1,49 @@
+package com.imooc.coupon.serialization;
+
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * <h1>优惠券 Kafka 消息反序列化器</h1>
+ * 按首字节区分二进制消息和旧的 JSON 消息, 灰度发布期间两种格式同时存在
+ * 反序列化在 poll 中执行, 抛出异常会导致容器反复拉取同一条消息,
+ * 因此无法解析的消息记录日志后返回 null, 由监听方法跳过
+ */
+@Slf4j
+public class CouponKafkaMessageDeserializer implements Deserializer<CouponKafkaMessage> {
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public CouponKafkaMessage deserialize(String topic, byte[] data) {
+
+        if (null == data) {
+            return null;
+        }
+        try {
+            if (CouponKafkaMessageCodec.isBinary(data)) {
+                return CouponKafkaMessageCodec.decode(data);
+            }
+            return JSON.parseObject(new String(data, StandardCharsets.UTF_8),
+                    CouponKafkaMessage.class);
+        } catch (Exception ex) {
+            log.error("can't deserialize couponKafkaMessage: {}, {}",
+                    CouponKafkaMessageCodec.isBinary(data)
+                            ? data.length + " bytes"
+                            : new String(data, StandardCharsets.UTF_8),
+                    ex.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,46 @@
+package com.imooc.coupon.serialization;
+
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * <h1>优惠券 Kafka 消息序列化器</h1>
+ * 默认发送 JSON: 旧版本的消费者只能读 JSON, 所有消费者都升级到能识别二进制编码的版本之后,
+ * 再打开二进制编码
+ */
+public class CouponKafkaMessageSerializer implements Serializer<CouponKafkaMessage> {
+
+    /** 是否使用二进制编码 */
+    private final boolean binary;
+
+    public CouponKafkaMessageSerializer() {
+        this(false);
+    }
+
+    public CouponKafkaMessageSerializer(boolean binary) {
+        this.binary = binary;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(String topic, CouponKafkaMessage message) {
+
+        if (null == message) {
+            return null;
+        }
+        return binary
+                ? CouponKafkaMessageCodec.encode(message)
+                : JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,20 @@
+package com.imooc.coupon.service;
+
+import com.imooc.coupon.constant.CouponStatus;
+
+import java.util.List;
+
+/**
+ * <h1>优惠券状态消息发送服务接口定义</h1>
+ */
+public interface IKafkaProducerService {
+
+    /**
+     * <h2>发送优惠券状态变更, 异步合并发送</h2>
+     * 队列已满时有限等待, 之后写入 Redis 重试列表, 都失败时抛出异常, 不会静默丢弃
+     * @param userId 用户 id, 决定消息所在的分区
+     * @param status {@link CouponStatus} 变更后的状态
+     * @param ids 优惠券 id
+     * */
+    void sendCouponStatus(Long userId, CouponStatus status, List<Integer> ids);
+}
@@ -1,6 +1,9 @@
 package com.imooc.coupon.service;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.List;
 
 /**
  * <h1>Kafka 相关的服务接口定义</h1>
@@ -9,8 +12,10 @@ import org.apache.kafka.clients.consumer.ConsumerRecord;
 public interface IKafkaService {
 
     /**
-     * <h2>消费优惠券 Kafka 消息</h2>
-     * @param record {@link ConsumerRecord}
+     * <h2>批量消费优惠券 Kafka 消息</h2>
+     * @param records {@link ConsumerRecord} 一次 poll 拉取到的消息
+     * @param ack {@link Acknowledgment} DB 更新提交之后确认 offset
      * */
-    void consumeCouponKafkaMessage(ConsumerRecord<?, ?> record);
+    void consumeCouponKafkaMessage(List<ConsumerRecord<?, ?>> records,
+                                   Acknowledgment ack);
 }
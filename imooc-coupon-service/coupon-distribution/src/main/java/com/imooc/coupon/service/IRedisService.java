@@ -2,8 +2,12 @@ package com.imooc.coupon.service;
 
 import com.imooc.coupon.entity.Coupon;
 import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.vo.AcquireCouponCodeResult;
+import com.imooc.coupon.vo.CouponTemplateSDK;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <h1>Redis 相关的操作服务接口定义</h1>
@@ -30,10 +34,46 @@ public interface IRedisService {
 
     /**
      * <h2>尝试从 Cache 中获取一个优惠券码</h2>
-     * @param templateId 优惠券模板主键
-     * @return 优惠券码
+     * 一次往返原子地检查领取限制, 取出优惠券码并记录领取计数, 没有优惠券码时不记录;
+     * 按 userId 选择分片, 分片为空时依次尝试下一个分片
+     * @param userId 用户 id
+     * @param template {@link CouponTemplateSDK} 优惠券模板
+     * @param seed 领取计数不在缓存中时, 用于初始化的数据库统计结果, 为 null 时返回 NEED_SEED
+     * @return {@link AcquireCouponCodeResult}
+     * */
+    AcquireCouponCodeResult tryToAcquireCouponCodeFromCache(Long userId,
+                                                            CouponTemplateSDK template,
+                                                            Integer seed);
+
+    /**
+     * <h2>获取用户在每个模板下的领取计数</h2>
+     * @param userId 用户 id
+     * @param templateIds 优惠券模板 ids
+     * @return 模板 id -> 领取个数, 缓存中没有的模板不在结果中
+     * */
+    Map<Integer, Integer> getCouponClaims(Long userId, Collection<Integer> templateIds);
+
+    /**
+     * <h2>领取计数不在缓存中时, 用数据库中的统计结果初始化, 已经存在时不覆盖</h2>
+     * @param userId 用户 id
+     * @param claims 数据库中统计的模板 id -> 领取个数
+     * @return 缓存中的模板 id -> 领取个数
+     * */
+    Map<Integer, Integer> seedCouponClaims(Long userId, Map<Integer, Integer> claims);
+
+    /**
+     * <h2>归还优惠券码并撤销一次领取计数</h2>
+     * @param userId 用户 id
+     * @param template {@link CouponTemplateSDK} 优惠券模板
+     * @param couponCode 优惠券码
+     * */
+    void returnCouponCode(Long userId, CouponTemplateSDK template, String couponCode);
+
+    /**
+     * <h2>将不再可用的优惠券模板在本地缓冲区中的优惠券码归还到 Cache</h2>
+     * @param usableTemplateIds 当前可用的优惠券模板 ids
      * */
-    String tryToAcquireCouponCodeFromCache(Integer templateId);
+    void releaseCouponCodeBuffer(Collection<Integer> usableTemplateIds);
 
     /**
      * <h2>将优惠券保存到 Cache 中</h2>
@@ -0,0 +1,39 @@
+package com.imooc.coupon.service;
+
+import com.imooc.coupon.vo.CouponTemplateSDK;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>优惠券模板缓存服务接口定义</h1>
+ * 代替直接调用 {@link com.imooc.coupon.feign.TemplateClient}, 只有缓存未命中时才访问模板微服务
+ */
+public interface ITemplateCacheService {
+
+    /**
+     * <h2>查找所有可用的优惠券模板</h2>
+     * @return {@link CouponTemplateSDK}s
+     */
+    List<CouponTemplateSDK> findAllUsableTemplate();
+
+    /**
+     * <h2>获取模板 ids 到 CouponTemplateSDK 的映射</h2>
+     * @param ids 模板 ids
+     * @return Map<key: 模板 id, value: CouponTemplateSDK>, 不存在的模板不在结果中
+     */
+    Map<Integer, CouponTemplateSDK> findIds2TemplateSDK(Collection<Integer> ids);
+
+    /**
+     * <h2>使优惠券模板的本地缓存失效</h2>
+     * @param templateId 优惠券模板主键
+     */
+    void evictTemplate(Integer templateId);
+
+    /**
+     * <h2>增量同步上次同步之后的模板变更</h2>
+     * 订阅断开期间丢失的模板变更消息, 在下一次同步时补上
+     */
+    void syncTemplateChanges();
+}
@@ -0,0 +1,480 @@
+package com.imooc.coupon.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.config.KafkaProducerProperties;
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.constant.CouponStatus;
+import com.imooc.coupon.service.IKafkaProducerService;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>优惠券状态消息发送服务实现</h1>
+ * 请求线程只把状态变更放入有界队列, 后台线程在 lingerMs 窗口内合并:
+ * 1. 按(状态, 分区)合并优惠券 id, 分区与以 userId 为 key 时 Kafka 默认分区器的结果一致(murmur2),
+ *    因此同一用户的状态变更仍然在同一个分区内按顺序消费
+ * 2. 同一张优惠券在一个窗口内只保留第一个状态
+ * 3. 某个(状态, 分区)的 id 达到 maxIds 时立即发送, 窗口结束时发送剩余的
+ * 4. 每隔 partitionRefreshMs 在窗口开始前重新获取分区数, Topic 扩容后与默认分区器保持一致
+ * 状态变更不能丢失, 否则 DB 中已使用的优惠券仍然可用, 缓存过期后可以再次使用:
+ * 1. 队列已满时请求线程最多等待 offerTimeoutMs, 仍然放不进去或者服务已经关闭时写入 Redis 重试列表
+ * 2. 发送失败的消息按指数退避重新发送, 等待重试的消息过多或者服务关闭时写入 Redis 重试列表
+ * 3. 合并线程每隔 retryPollMs 从 Redis 重试列表中取出消息重新发送, 所有实例共用一个列表
+ * 消费者按状态条件更新, 重复发送是安全的
+ * 消息的编码和压缩由 KafkaProducerConfig 配置
+ */
+@Slf4j
+@Service
+public class KafkaProducerServiceImpl implements IKafkaProducerService {
+
+    /** 取队列的超时时间(毫秒), 用于检查是否关闭和处理重试 */
+    private static final long POLL_TIMEOUT = 100;
+
+    private final KafkaTemplate<String, CouponKafkaMessage> kafkaTemplate;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final KafkaProducerProperties properties;
+
+    /** 待合并的状态变更 */
+    private final BlockingQueue<StatusEvent> queue;
+
+    /** 当前窗口内待发送的优惠券 id: 状态 -> 分区 -> ids, 只由合并线程访问 */
+    private final Map<CouponStatus, List<List<Integer>>> pending =
+            new EnumMap<>(CouponStatus.class);
+
+    /** 当前窗口内已经出现过的优惠券 id, 只由合并线程访问 */
+    private final Set<Integer> windowIds = new HashSet<>();
+
+    /** 合并线程 */
+    private final Thread coalescer;
+
+    /** 发送失败等待重试的消息, 按下一次重试的时间排序 */
+    private final DelayQueue<RetryMessage> retries = new DelayQueue<>();
+
+    /** 下一次从 Redis 重试列表中取消息的时间(System.nanoTime) */
+    private long nextPersistedPoll;
+
+    /** Topic 的分区数, 合并线程在第一次发送前获取, 之后定期刷新 */
+    private int partitions = 0;
+
+    /** 下一次刷新分区数的时间(System.nanoTime) */
+    private long nextPartitionRefresh;
+
+    private volatile boolean running = true;
+
+    /** 状态 -> 发送到 Broker 确认的耗时 */
+    private final Map<CouponStatus, Timer> sendLatency = new EnumMap<>(CouponStatus.class);
+
+    /** 每条合并消息包含的优惠券个数 */
+    private final DistributionSummary batchIds;
+
+    /** 发送失败的合并消息数 */
+    private final Counter sendFailed;
+
+    /** 等待之后队列仍然已满的状态变更数 */
+    private final Counter rejected;
+
+    /** 写入 Redis 重试列表的消息数 */
+    private final Counter persisted;
+
+    @Autowired
+    public KafkaProducerServiceImpl(KafkaTemplate<String, CouponKafkaMessage> kafkaTemplate,
+                                    StringRedisTemplate redisTemplate,
+                                    KafkaProducerProperties properties,
+                                    MeterRegistry registry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.queue = new LinkedBlockingQueue<>(properties.getQueueCapacity());
+        this.coalescer = new Thread(this::run, "coupon-status-coalescer");
+        this.coalescer.setDaemon(true);
+
+        Gauge.builder("coupon.kafka.producer.queue.depth", queue, BlockingQueue::size)
+                .register(registry);
+        for (CouponStatus status : CouponStatus.values()) {
+            sendLatency.put(status, Timer.builder("coupon.kafka.producer.send")
+                    .tag("status", status.name()).register(registry));
+        }
+        this.batchIds = DistributionSummary.builder("coupon.kafka.producer.batch.ids")
+                .register(registry);
+        this.sendFailed = Counter.builder("coupon.kafka.producer.failed")
+                .register(registry);
+        this.rejected = Counter.builder("coupon.kafka.producer.rejected")
+                .register(registry);
+        this.persisted = Counter.builder("coupon.kafka.producer.persisted")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        coalescer.start();
+    }
+
+    /**
+     * <h2>服务关闭时, 发送队列中剩余的状态变更, 没有发送成功的写入 Redis 重试列表</h2>
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        coalescer.join(TimeUnit.SECONDS.toMillis(5));
+
+        List<StatusEvent> events = new ArrayList<>();
+        queue.drainTo(events);
+        events.forEach(e -> persist(new CouponKafkaMessage(
+                e.status.getCode(), e.ids, e.userId)));
+        List<RetryMessage> failed = new ArrayList<>(retries);
+        retries.clear();
+        failed.forEach(r -> persist(r.message));
+    }
+
+    /**
+     * <h2>发送优惠券状态变更</h2>
+     * 队列已满时最多等待 offerTimeoutMs, 仍然放不进去时写入 Redis 重试列表;
+     * Redis 也写入失败时抛出异常, 由调用方感知, 不会静默丢弃
+     * */
+    @Override
+    public void sendCouponStatus(Long userId, CouponStatus status, List<Integer> ids) {
+
+        if (CollectionUtils.isEmpty(ids)) {
+            return;
+        }
+        StatusEvent event = new StatusEvent(userId, status, ids);
+        try {
+            if (running && (queue.offer(event) || queue.offer(event,
+                    properties.getOfferTimeoutMs(), TimeUnit.MILLISECONDS))) {
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        log.warn("Coupon Status Queue Is Full, Persist For Retry: {}, {}", userId, status);
+        persist(new CouponKafkaMessage(status.getCode(), ids, userId));
+    }
+
+    /**
+     * <h2>合并线程</h2>
+     * */
+    private void run() {
+
+        awaitPartitions();
+        nextPartitionRefresh = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(properties.getPartitionRefreshMs());
+        while (running || !queue.isEmpty()) {
+            try {
+                refreshPartitions();
+                resendDueRetries();
+                resendPersisted();
+                StatusEvent first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (null == first) {
+                    continue;
+                }
+                if (0 == partitions) {
+                    send(new CouponKafkaMessage(first.status.getCode(),
+                            first.ids, first.userId), null, 0);
+                    continue;
+                }
+                long deadline = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(properties.getLingerMs());
+                add(first);
+                for (long remaining = deadline - System.nanoTime(); remaining > 0;
+                     remaining = deadline - System.nanoTime()) {
+                    StatusEvent event = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (null == event) {
+                        break;
+                    }
+                    add(event);
+                }
+                flush();
+            } catch (Exception ex) {
+                log.error("Coalesce Coupon Status Error: {}", ex.getMessage(), ex);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * <h2>获取 Topic 的分区数, 失败时每秒重试, 状态变更在队列中等待</h2>
+     * */
+    private void awaitPartitions() {
+
+        while (running && 0 == partitions) {
+            try {
+                partitions = kafkaTemplate.partitionsFor(Constant.Kafka.TOPIC).size();
+            } catch (Exception ex) {
+                log.error("Get Partitions Of {} Error: {}", Constant.Kafka.TOPIC, ex.getMessage());
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * <h2>到期时重新获取 Topic 的分区数, 只在窗口之间调用, 此时没有待发送的 id</h2>
+     * 获取失败时继续使用原来的分区数
+     * */
+    private void refreshPartitions() {
+
+        long now = System.nanoTime();
+        if (0 == partitions || now - nextPartitionRefresh < 0) {
+            return;
+        }
+        nextPartitionRefresh = now
+                + TimeUnit.MILLISECONDS.toNanos(properties.getPartitionRefreshMs());
+        try {
+            int count = kafkaTemplate.partitionsFor(Constant.Kafka.TOPIC).size();
+            if (count != partitions) {
+                log.info("Partitions Of {} Changed: {} -> {}",
+                        Constant.Kafka.TOPIC, partitions, count);
+                partitions = count;
+                // 按分区数创建的列表, 下次合并时重新创建
+                pending.clear();
+            }
+        } catch (Exception ex) {
+            log.error("Refresh Partitions Of {} Error: {}",
+                    Constant.Kafka.TOPIC, ex.getMessage());
+        }
+    }
+
+    /**
+     * <h2>把状态变更合并到当前窗口</h2>
+     * */
+    private void add(StatusEvent event) {
+
+        int partition = partitionOf(event.userId);
+        List<Integer> ids = pending.computeIfAbsent(event.status, s -> {
+            List<List<Integer>> lists = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; ++i) {
+                lists.add(new ArrayList<>());
+            }
+            return lists;
+        }).get(partition);
+
+        for (Integer id : event.ids) {
+            if (windowIds.add(id)) {
+                ids.add(id);
+            }
+        }
+        if (ids.size() >= properties.getMaxIds()) {
+            send(event.status, partition, ids);
+        }
+    }
+
+    /**
+     * <h2>窗口结束, 发送所有合并的状态变更</h2>
+     * */
+    private void flush() {
+
+        pending.forEach((status, lists) -> {
+            for (int partition = 0; partition < lists.size(); ++partition) {
+                if (!lists.get(partition).isEmpty()) {
+                    send(status, partition, lists.get(partition));
+                }
+            }
+        });
+        windowIds.clear();
+    }
+
+    /**
+     * <h2>发送一条合并消息, 发送后清空 ids</h2>
+     * */
+    private void send(CouponStatus status, int partition, List<Integer> ids) {
+
+        CouponKafkaMessage message = new CouponKafkaMessage(
+                status.getCode(), new ArrayList<>(ids), null);
+        batchIds.record(ids.size());
+        ids.clear();
+        send(message, partition, 0);
+    }
+
+    /**
+     * <h2>发送消息, 失败时按指数退避重试</h2>
+     * @param partition 为 null 时以 userId 为 key 发送(userId 也为 null 时由 Kafka 选择分区)
+     * @param attempts 已经失败的次数
+     * */
+    private void send(CouponKafkaMessage message, Integer partition, int attempts) {
+
+        CouponStatus status = CouponStatus.of(message.getStatus());
+        long start = System.nanoTime();
+        try {
+            ListenableFuture<SendResult<String, CouponKafkaMessage>> future =
+                    null == partition
+                            ? kafkaTemplate.send(Constant.Kafka.TOPIC,
+                                    null == message.getUserId()
+                                            ? null : String.valueOf(message.getUserId()),
+                                    message)
+                            : kafkaTemplate.send(Constant.Kafka.TOPIC, partition, null, message);
+            future.addCallback(
+                    result -> sendLatency.get(status).record(
+                            System.nanoTime() - start, TimeUnit.NANOSECONDS),
+                    ex -> retry(message, partition, attempts + 1, ex));
+        } catch (Exception ex) {
+            // 获取元数据超时等情况下 send 直接抛出异常
+            retry(message, partition, attempts + 1, ex);
+        }
+    }
+
+    /**
+     * <h2>发送失败, 等待退避时间之后重试; 服务关闭或者等待重试的消息过多时写入 Redis 重试列表</h2>
+     * */
+    private void retry(CouponKafkaMessage message, Integer partition, int attempts,
+                       Throwable ex) {
+
+        sendFailed.increment();
+        log.error("Send Coupon Status Error, Attempts: {}, {}, {}",
+                attempts, message, ex.getMessage());
+        if (!running || retries.size() >= properties.getQueueCapacity()) {
+            persist(message);
+            return;
+        }
+        long backoff = Math.min(properties.getMaxRetryBackoffMs(),
+                properties.getRetryBackoffMs() << Math.min(attempts - 1, 20));
+        retries.offer(new RetryMessage(message, partition, attempts,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff)));
+    }
+
+    /**
+     * <h2>重新发送退避时间已到的消息</h2>
+     * */
+    private void resendDueRetries() {
+
+        for (RetryMessage retry = retries.poll(); null != retry; retry = retries.poll()) {
+            send(retry.message, retry.partition, retry.attempts);
+        }
+    }
+
+    /**
+     * <h2>每隔 retryPollMs 从 Redis 重试列表中取出消息重新发送, 每次最多 maxIds 条</h2>
+     * 再次失败时进入本实例的重试队列
+     * */
+    private void resendPersisted() {
+
+        long now = System.nanoTime();
+        if (now - nextPersistedPoll < 0) {
+            return;
+        }
+        nextPersistedPoll = now
+                + TimeUnit.MILLISECONDS.toNanos(properties.getRetryPollMs());
+        try {
+            for (int i = 0; i < properties.getMaxIds(); ++i) {
+                String value = redisTemplate.opsForList().leftPop(
+                        Constant.RedisPrefix.COUPON_STATUS_RETRY);
+                if (null == value) {
+                    return;
+                }
+                send(JSON.parseObject(value, CouponKafkaMessage.class), null, 0);
+            }
+        } catch (Exception ex) {
+            log.error("Resend Persisted Coupon Status Error: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * <h2>写入 Redis 重试列表, 由任意实例的合并线程重新发送</h2>
+     * 写入失败时抛出异常
+     * */
+    private void persist(CouponKafkaMessage message) {
+
+        persisted.increment();
+        try {
+            redisTemplate.opsForList().rightPush(
+                    Constant.RedisPrefix.COUPON_STATUS_RETRY, JSON.toJSONString(message));
+        } catch (RuntimeException ex) {
+            log.error("Persist Coupon Status Error: {}, {}", message, ex.getMessage());
+            throw ex;
+        }
+    }
+
+    /**
+     * <h2>与 Kafka 默认分区器对 String 类型 key 的计算方式一致</h2>
+     * */
+    private int partitionOf(Long userId) {
+        byte[] key = String.valueOf(userId).getBytes(StandardCharsets.UTF_8);
+        return Utils.toPositive(Utils.murmur2(key)) % partitions;
+    }
+
+    /**
+     * <h2>一条等待重试的消息</h2>
+     */
+    private static class RetryMessage implements Delayed {
+
+        private final CouponKafkaMessage message;
+
+        private final Integer partition;
+
+        private final int attempts;
+
+        /** 下一次重试的时间(System.nanoTime) */
+        private final long due;
+
+        private RetryMessage(CouponKafkaMessage message, Integer partition,
+                             int attempts, long due) {
+            this.message = message;
+            this.partition = partition;
+            this.attempts = attempts;
+            this.due = due;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS),
+                    other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * <h2>一次优惠券状态变更</h2>
+     */
+    private static class StatusEvent {
+
+        private final Long userId;
+
+        private final CouponStatus status;
+
+        private final List<Integer> ids;
+
+        private StatusEvent(Long userId, CouponStatus status, List<Integer> ids) {
+            this.userId = userId;
+            this.status = status;
+            this.ids = ids;
+        }
+    }
+}
@@ -1,25 +1,38 @@
 package com.imooc.coupon.service.impl;
 
 import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.config.KafkaConsumerConfig;
+import com.imooc.coupon.config.KafkaConsumerProperties;
 import com.imooc.coupon.constant.Constant;
 import com.imooc.coupon.constant.CouponStatus;
 import com.imooc.coupon.dao.CouponDao;
-import com.imooc.coupon.entity.Coupon;
 import com.imooc.coupon.service.IKafkaService;
+import com.imooc.coupon.util.RecentIdWindow;
 import com.imooc.coupon.vo.CouponKafkaMessage;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.TreeSet;
 
 /**
  * <h1>kafka相关服务实现</h1>
  * 核心思想: 将 cache  中的优惠券状态同步到 DB 中
+ * 一次处理一批消息: 按目标状态合并优惠券 id, 每个状态一条 update ... where id in (...),
+ * 所有更新在同一个事务中提交, 提交成功后才确认 offset
+ * 状态只能从 USABLE 变为 USED 或 EXPIRED, 重复投递和乱序的消息不会回退状态;
+ * 最近更新过的优惠券 id 记录在窗口中, 重复的消息直接跳过, 不访问 DB
  */
 @Service
 @Slf4j
@@ -27,71 +40,177 @@ public class KafkaServiceImpl implements IKafkaService {
     
     
     private final CouponDao couponDao;
+
+    private final KafkaConsumerProperties properties;
+
+    private final TransactionTemplate transactionTemplate;
+
+    /** 最近已经变为终态(USED/EXPIRED)的优惠券 id, 消费线程共享, 访问时加锁 */
+    private final RecentIdWindow finishedWindow;
     
     @Autowired
-    public KafkaServiceImpl(CouponDao couponDao) {
+    public KafkaServiceImpl(CouponDao couponDao,
+                            KafkaConsumerProperties properties,
+                            PlatformTransactionManager transactionManager) {
         this.couponDao = couponDao;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.finishedWindow = new RecentIdWindow(properties.getDedupeWindowSize());
     }
 
 
     /**
-     * <h2>消费优惠券 Kafka 消息</h2>
-     *
-     * @param record {@link ConsumerRecord}
+     * <h2>批量消费优惠券 Kafka 消息</h2>
+     * 同一张优惠券在一批消息中出现多次时, 以第一条消息的状态为准, 与逐条条件更新的结果一致
+     * @param records {@link ConsumerRecord} 一次 poll 拉取到的消息
+     * @param ack {@link Acknowledgment} DB 更新提交之后确认 offset
      */
     @Override
-    @KafkaListener(topics = {Constant.Kafka.TOPIC}, groupId = "imooc-coupon-1")
-    public void consumeCouponKafkaMessage(ConsumerRecord<?, ?> record) {
-        Optional<?> kafkaMessage = Optional.ofNullable(record.value());
-        if (kafkaMessage.isPresent()){
-            Object messsage = kafkaMessage.get();
-            CouponKafkaMessage couponKafkaMessage = JSON.parseObject(messsage.toString(), CouponKafkaMessage.class);
-            log.info("receive couponKafkaMessage: {}",messsage.toString());
+    @KafkaListener(topics = {Constant.Kafka.TOPIC}, groupId = "imooc-coupon-1",
+            containerFactory = KafkaConsumerConfig.BATCH_FACTORY)
+    public void consumeCouponKafkaMessage(List<ConsumerRecord<?, ?>> records,
+                                          Acknowledgment ack) {
+
+        // 优惠券 id -> 第一条消息中的状态
+        Map<Integer, CouponStatus> id2Status = new HashMap<>();
+        int duplicated = 0;
+        for (ConsumerRecord<?, ?> record : records) {
+            CouponKafkaMessage couponKafkaMessage = parseMessage(record);
+            if (null == couponKafkaMessage
+                    || CollectionUtils.isEmpty(couponKafkaMessage.getIds())) {
+                continue;
+            }
             CouponStatus couponStatus = CouponStatus.of(couponKafkaMessage.getStatus());
-            switch (couponStatus){
-                case USABLE: //此状态无需处理
-                    break;
-                case USED: processUsedCoupons(couponKafkaMessage,couponStatus);
-                    break;
-                case EXPIRED: processExpiredCoupons(couponKafkaMessage,couponStatus);
-                    break;
+            if (couponStatus == CouponStatus.USABLE) { //此状态无需处理
+                continue;
+            }
+            synchronized (finishedWindow) {
+                for (Integer id : couponKafkaMessage.getIds()) {
+                    if (null == id) {
+                        continue;
+                    }
+                    if (finishedWindow.contains(id)) {
+                        ++duplicated;
+                    } else {
+                        id2Status.putIfAbsent(id, couponStatus);
+                    }
+                }
+            }
+        }
+
+        // 目标状态 -> 优惠券 id, id 有序以减少并发更新时的锁冲突
+        Map<CouponStatus, TreeSet<Integer>> status2Ids = new EnumMap<>(CouponStatus.class);
+        id2Status.forEach((id, status) ->
+                status2Ids.computeIfAbsent(status, s -> new TreeSet<>()).add(id));
+
+        if (!status2Ids.isEmpty()) {
+            transactionTemplate.execute(transactionStatus -> {
+                status2Ids.forEach((status, ids) -> {
+                    switch (status) {
+                        case USED: processUsedCoupons(ids, status);
+                            break;
+                        case EXPIRED: processExpiredCoupons(ids, status);
+                            break;
+                    }
+                });
+                return null;
+            });
+            // 事务提交之后, 这些优惠券在 DB 中都已经是终态
+            synchronized (finishedWindow) {
+                id2Status.keySet().forEach(finishedWindow::add);
+            }
+        }
+        log.info("consume couponKafkaMessage: records: {}, coupons: {}, duplicated: {}",
+                records.size(), id2Status.size(), duplicated);
+        ack.acknowledge();
+    }
+
+    /**
+     * <h2>解析优惠券 Kafka 消息, 无法解析的消息记录日志后跳过, 避免整批反复重试</h2>
+     * 监听容器已经用 CouponKafkaMessageDeserializer 反序列化, 字符串消息按 JSON 解析;
+     * 状态缺失或者未知(包括二进制消息中的状态 0)的消息同样跳过, 重试也无法处理
+     */
+    private CouponKafkaMessage parseMessage(ConsumerRecord<?, ?> record) {
+
+        if (null == record.value()) {
+            return null;
+        }
+        CouponKafkaMessage message;
+        if (record.value() instanceof CouponKafkaMessage) {
+            message = (CouponKafkaMessage) record.value();
+        } else {
+            try {
+                message = JSON.parseObject(record.value().toString(),
+                        CouponKafkaMessage.class);
+            } catch (Exception ex) {
+                log.error("can't parse couponKafkaMessage: {}, {}",
+                        record.value(), ex.getMessage());
+                return null;
             }
         }
+        if (null == message) {
+            return null;
+        }
+
+        if (null == message.getStatus()) {
+            log.error("couponKafkaMessage without status: {}", record.value());
+            return null;
+        }
+        try {
+            CouponStatus.of(message.getStatus());
+        } catch (IllegalArgumentException ex) {
+            log.error("couponKafkaMessage with unknown status: {}, {}",
+                    record.value(), ex.getMessage());
+            return null;
+        }
+        return message;
     }
 
     /**
      * <h2>处理用户已使用的优惠券</h2>
      */
-    private void processUsedCoupons(CouponKafkaMessage kafkaMessage ,CouponStatus status){
+    private void processUsedCoupons(TreeSet<Integer> ids ,CouponStatus status){
         //TODO 发短信或其它
-        processCouponByStatus(kafkaMessage,status);
+        processCouponByStatus(ids,status);
     }
 
     /**
      * <h2>处理用户已过期的优惠券</h2>
      * 重新包装一层,可以对不同的优惠券做不同的处理
      */
-    private void processExpiredCoupons(CouponKafkaMessage kafkaMessage ,CouponStatus status){
+    private void processExpiredCoupons(TreeSet<Integer> ids ,CouponStatus status){
         //TODO 发推送消息或其它
-        processCouponByStatus(kafkaMessage,status);
+        processCouponByStatus(ids,status);
     }
 
     /**
-     * <h2>根据状态处理优惠券信息</h2>
-     * @param kafkaMessage {@link CouponKafkaMessage} 优惠券 kafka 消息对象
+     * <h2>根据状态批量更新优惠券</h2>
+     * 只把可用的优惠券更新为 status, 已经是终态的优惠券保持不变;
+     * 每 updateChunkSize 个 id 一条 update 语句
+     * @param ids 优惠券 id
      * @param status {@link CouponStatus} 优惠券状态
      */
-    private void processCouponByStatus(CouponKafkaMessage kafkaMessage, CouponStatus status) {
-        List<Coupon> coupons = couponDao.findAllById(kafkaMessage.getIds());
-        if (CollectionUtils.isEmpty(coupons)
-                || coupons.size() != kafkaMessage.getIds().size()){
-            log.error("can't find right coupon info:{}",JSON.toJSONString(kafkaMessage));
-            //TODO 发送邮件
-            return;
+    private void processCouponByStatus(TreeSet<Integer> ids, CouponStatus status) {
+
+        int updated = 0;
+        List<Integer> chunk = new ArrayList<>(Math.min(ids.size(),
+                properties.getUpdateChunkSize()));
+        for (Integer id : ids) {
+            chunk.add(id);
+            if (chunk.size() == properties.getUpdateChunkSize()) {
+                updated += couponDao.transferStatusByIds(
+                        CouponStatus.USABLE, status, chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            updated += couponDao.transferStatusByIds(
+                    CouponStatus.USABLE, status, chunk);
         }
-        coupons.forEach(c->c.setStatus(status));
-        log.info("couponKafkaMessage op coupon count: {}",
-                couponDao.saveAll(coupons).size());
+
+        // 没有更新的优惠券已经是终态(重复或乱序的消息), 或者不存在
+        log.info("couponKafkaMessage op coupon count: {}, {}, skipped: {}",
+                status, updated, ids.size() - updated);
     }
 
 
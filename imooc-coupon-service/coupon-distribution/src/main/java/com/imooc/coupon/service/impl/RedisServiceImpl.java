@@ -1,38 +1,88 @@
 package com.imooc.coupon.service.impl;
 
 import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.config.CouponCodePrefetchProperties;
+import com.imooc.coupon.constant.AcquireStatus;
 import com.imooc.coupon.constant.Constant;
 import com.imooc.coupon.constant.CouponStatus;
 import com.imooc.coupon.entity.Coupon;
 import com.imooc.coupon.exception.CouponException;
 import com.imooc.coupon.service.IRedisService;
+import com.imooc.coupon.vo.AcquireCouponCodeResult;
+import com.imooc.coupon.vo.CouponTemplateSDK;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.RandomUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * redis相关的操作服务接口
+ * 优惠券码预取: 领取脚本(LRANGE + LTRIM)一次取出一段优惠券码, 放到每个模板的无锁队列中,
+ * 领取时优先从队列中获取; 模板不再可用或服务关闭时, 未发出的优惠券码归还到 Redis
  */
 @Service
 @Slf4j
 public class RedisServiceImpl implements IRedisService {
 
+    /** 原子地检查领取限制, 取出优惠券码并记录领取计数的脚本 */
+    private static final RedisScript<List> ACQUIRE_SCRIPT =
+            script("lua/acquire_coupon_code.lua");
+
+    /** 原子地归还优惠券码并撤销领取计数的脚本 */
+    private static final RedisScript<List> RETURN_SCRIPT =
+            script("lua/return_coupon_code.lua");
+
+    /** 领取计数不存在时用数据库中的统计结果初始化的脚本 */
+    private static final RedisScript<List> SEED_CLAIMS_SCRIPT =
+            script("lua/seed_coupon_claims.lua");
 
     private final StringRedisTemplate redisTemplate;
 
+    private final CouponCodePrefetchProperties prefetch;
+
+    /** 优惠券模板 id -> 本地优惠券码缓冲区 */
+    private final ConcurrentMap<Integer, CodeBuffer> codeBuffers = new ConcurrentHashMap<>();
+
+    /** 从本地缓冲区获取到优惠券码的次数 */
+    private final Counter bufferHit;
+
+    /** 本地缓冲区为空, 需要访问 Redis 的次数 */
+    private final Counter bufferMiss;
+
     @Autowired
-    public RedisServiceImpl(StringRedisTemplate redisTemplate) {
+    public RedisServiceImpl(StringRedisTemplate redisTemplate,
+                            CouponCodePrefetchProperties prefetch,
+                            MeterRegistry registry) {
         this.redisTemplate = redisTemplate;
+        this.prefetch = prefetch;
+        this.bufferHit = Counter.builder("coupon.code.buffer")
+                .tag("result", "hit").register(registry);
+        this.bufferMiss = Counter.builder("coupon.code.buffer")
+                .tag("result", "miss").register(registry);
+        Gauge.builder("coupon.code.buffer.size", codeBuffers,
+                buffers -> buffers.values().stream()
+                        .mapToInt(b -> b.codes.size()).sum())
+                .register(registry);
     }
 
     /**
@@ -89,18 +139,163 @@ public class RedisServiceImpl implements IRedisService {
 
     /**
      * <h2>尝试从 Cache 中获取一个优惠券码</h2>
-     *
-     * @param templateId 优惠券模板主键
-     * @return 优惠券码
+     * 通过 Lua 脚本在一次往返中原子地检查用户的领取计数, 取出优惠券码并记录领取,
+     * 没有优惠券码时不记录; 领取计数与优惠券码分片使用同一个 hash tag {模板 id},
+     * Redis Cluster 下在同一个 slot, 不会出现 CROSSSLOT.
+     * 开启预取时优先使用本地缓冲区中的优惠券码, 脚本只检查并记录领取计数, 领取失败时放回缓冲区;
+     * 缓冲区为空时脚本一次取出一段优惠券码, 多出的放入缓冲区.
+     * 不同用户从不同的分片开始取优惠券码, 分片为空时依次尝试下一个分片
+     * @param userId 用户 id
+     * @param template {@link CouponTemplateSDK} 优惠券模板
+     * @param seed 领取计数不在缓存中时, 用于初始化的数据库统计结果(该模板的领取个数),
+     *             为 null 时脚本返回 NEED_SEED
+     * @return {@link AcquireCouponCodeResult}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public AcquireCouponCodeResult tryToAcquireCouponCodeFromCache(Long userId,
+                                                                   CouponTemplateSDK template,
+                                                                   Integer seed) {
+        Integer templateId = template.getId();
+        int shards = shards(template);
+        int start = startShard(userId, shards);
+
+        CodeBuffer buffer = prefetch.isEnabled()
+                ? codeBuffers.computeIfAbsent(templateId, id -> new CodeBuffer(shards))
+                : null;
+        String buffered = null == buffer ? null : buffer.codes.poll();
+
+        List<String> keys = new ArrayList<>(shards + 1);
+        keys.add(claimKey(templateId));
+        if (null == buffered) {
+            for (int i = 0; i < shards; ++i) {
+                keys.add(codeKey(templateId, shards, (start + i) % shards));
+            }
+        }
+        List<String> result = redisTemplate.execute(ACQUIRE_SCRIPT, keys,
+                userId.toString(),
+                template.getRule().getLimitation().toString(),
+                getRandomExpirationTime(1, 2).toString(),
+                null == seed ? "" : seed.toString(),
+                String.valueOf(null == buffer ? 1 : prefetch.getSize()));
+        AcquireStatus status = AcquireStatus.of(result.get(0));
+
+        String couponCode = null;
+        if (null != buffered) {
+            bufferHit.increment();
+            if (status == AcquireStatus.OK) {
+                couponCode = buffered;
+            } else if (!buffer.offerAll(Collections.singletonList(buffered))) {
+                returnCouponCodes(templateId, shards, Collections.singletonList(buffered));
+            }
+        } else if (status == AcquireStatus.OK) {
+            couponCode = result.get(1);
+            if (null != buffer) {
+                List<String> rest = result.subList(2, result.size());
+                if (!buffer.offerAll(rest)) {
+                    returnCouponCodes(templateId, shards, rest);
+                }
+            }
+        }
+        if (null != buffer && null == buffered) {
+            bufferMiss.increment();
+        }
+        log.info("acquire coupon code, userId: {}, templateId: {}, result: {}, couponCode: {}",
+                userId, templateId, status, couponCode);
+        return new AcquireCouponCodeResult(status, couponCode);
+    }
+
+    /**
+     * <h2>获取用户在每个模板下的领取计数</h2>
+     * 通过 pipeline 一次读取每个模板领取计数 hash 中用户的 field
+     * @param userId 用户 id
+     * @param templateIds 优惠券模板 ids
+     * @return 模板 id -> 领取个数, 缓存中没有的模板不在结果中, 需要从数据库重建
      */
     @Override
-    public String tryToAcquireCouponCodeFromCache(Integer templateId) {
-        String redisKey = String.format("%s%s",Constant.RedisPrefix.COUPON_TEMPLATE,templateId.toString());
-        //左边pop 或 右边 pop没有影响
-        String couponCode = redisTemplate.opsForList().leftPop(redisKey);
-        log.info("acquire coupon code, templateId: {}, couponCode: {} ,redisKey: {}",
-                templateId,couponCode,redisKey);
-        return couponCode;
+    @SuppressWarnings("all")
+    public Map<Integer, Integer> getCouponClaims(Long userId, Collection<Integer> templateIds) {
+        List<Integer> ids = new ArrayList<>(templateIds);
+        SessionCallback<Object> sessionCallback = new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                ids.forEach(id -> operations.opsForHash().get(
+                        claimKey(id), userId.toString()));
+                return null;
+            }
+        };
+        List<Object> counts = ids.isEmpty()
+                ? Collections.emptyList()
+                : redisTemplate.executePipelined(sessionCallback);
+
+        Map<Integer, Integer> result = new HashMap<>(ids.size());
+        for (int i = 0; i < counts.size(); ++i) {
+            if (null != counts.get(i)) {
+                result.put(ids.get(i), Integer.valueOf(counts.get(i).toString()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <h2>领取计数不在缓存中时, 用数据库中的统计结果初始化</h2>
+     * 通过 Lua 脚本原子地判断 field 是否存在, 已经存在时不覆盖: 其中可能有并发领取
+     * 已经记录但优惠券还没有提交到数据库的计数
+     * @param userId 用户 id
+     * @param claims 数据库中统计的模板 id -> 领取个数
+     * @return 缓存中的模板 id -> 领取个数
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Integer, Integer> seedCouponClaims(Long userId, Map<Integer, Integer> claims) {
+        Map<Integer, Integer> result = new HashMap<>(claims.size());
+        claims.forEach((templateId, count) -> {
+            List<String> seeded = redisTemplate.execute(SEED_CLAIMS_SCRIPT,
+                    Collections.singletonList(claimKey(templateId)),
+                    userId.toString(), count.toString(),
+                    getRandomExpirationTime(1, 2).toString());
+            result.put(templateId, Integer.valueOf(seeded.get(0)));
+        });
+        log.info("seed coupon claims: {} {}", userId, JSON.toJSONString(result));
+        return result;
+    }
+
+    /**
+     * <h2>归还优惠券码并撤销一次领取计数</h2>
+     * 领取成功但优惠券保存失败时调用, 通过 Lua 脚本原子地完成,
+     * 优惠券码放回用户领取时最先尝试的分片头部
+     * @param userId 用户 id
+     * @param template {@link CouponTemplateSDK} 优惠券模板
+     * @param couponCode 优惠券码
+     */
+    @Override
+    public void returnCouponCode(Long userId, CouponTemplateSDK template, String couponCode) {
+        int shards = shards(template);
+        redisTemplate.execute(RETURN_SCRIPT,
+                Arrays.asList(claimKey(template.getId()),
+                        codeKey(template.getId(), shards, startShard(userId, shards))),
+                userId.toString(), couponCode);
+        log.info("return coupon code, userId: {}, templateId: {}, couponCode: {}",
+                userId, template.getId(), couponCode);
+    }
+
+    /**
+     * <h2>将不再可用的优惠券模板在本地缓冲区中的优惠券码归还到 Cache</h2>
+     * @param usableTemplateIds 当前可用的优惠券模板 ids
+     */
+    @Override
+    public void releaseCouponCodeBuffer(Collection<Integer> usableTemplateIds) {
+        new ArrayList<>(codeBuffers.keySet()).stream()
+                .filter(id -> !usableTemplateIds.contains(id))
+                .forEach(this::releaseCouponCodeBuffer);
+    }
+
+    /**
+     * <h2>服务关闭时, 归还所有本地缓冲区中的优惠券码</h2>
+     */
+    @PreDestroy
+    public void releaseAllCouponCodeBuffer() {
+        new ArrayList<>(codeBuffers.keySet()).forEach(this::releaseCouponCodeBuffer);
     }
 
     /**
@@ -283,6 +478,87 @@ public class RedisServiceImpl implements IRedisService {
         return rediskey;
     }
 
+    /**
+     * <h2>将一个模板本地缓冲区中的优惠券码放回到各个分片的头部</h2>
+     * 缓冲区先从 codeBuffers 中移除再关闭, 关闭之后放入的优惠券码由放入方归还
+     */
+    private void releaseCouponCodeBuffer(Integer templateId) {
+        CodeBuffer buffer = codeBuffers.remove(templateId);
+        if (null == buffer) {
+            return;
+        }
+        List<String> codes = buffer.close();
+        returnCouponCodes(templateId, buffer.shards, codes);
+        log.info("release coupon code buffer, templateId: {}, count: {}",
+                templateId, codes.size());
+    }
+
+    /**
+     * <h2>将优惠券码轮流放回到各个分片的头部</h2>
+     * 第 i 个优惠券码放回第 i % shards 个分片, 不会都堆积到同一个分片上;
+     * 所有分片在同一个 slot, 通过 pipeline 一次发送
+     */
+    @SuppressWarnings("all")
+    private void returnCouponCodes(Integer templateId, int shards, List<String> codes) {
+        if (CollectionUtils.isEmpty(codes)) {
+            return;
+        }
+        List<List<String>> shardCodes = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; ++shard) {
+            shardCodes.add(new ArrayList<>(codes.size() / shards + 1));
+        }
+        for (int i = 0; i < codes.size(); ++i) {
+            shardCodes.get(i % shards).add(codes.get(i));
+        }
+        SessionCallback<Object> sessionCallback = new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for (int shard = 0; shard < shards; ++shard) {
+                    if (!shardCodes.get(shard).isEmpty()) {
+                        operations.opsForList().leftPushAll(
+                                codeKey(templateId, shards, shard), shardCodes.get(shard));
+                    }
+                }
+                return null;
+            }
+        };
+        redisTemplate.executePipelined(sessionCallback);
+    }
+
+    /**
+     * <h2>模板领取计数的 Redis Key</h2>
+     * imooc_coupon_template_claim_{1}, 与优惠券码分片使用同一个 hash tag
+     */
+    private String claimKey(Integer templateId) {
+        return String.format("%s{%s}", Constant.RedisPrefix.COUPON_TEMPLATE_CLAIM, templateId);
+    }
+
+    /**
+     * <h2>优惠券码分片的 Redis Key</h2>
+     * 不分片时为 imooc_coupon_template_code_{1}, 分片时为 imooc_coupon_template_code_{1}_0
+     */
+    private String codeKey(Integer templateId, int shards, int shard) {
+        return shards == 1
+                ? String.format("%s{%s}", Constant.RedisPrefix.COUPON_TEMPLATE, templateId)
+                : String.format("%s{%s}_%s", Constant.RedisPrefix.COUPON_TEMPLATE,
+                templateId, shard);
+    }
+
+    /**
+     * <h2>模板的优惠券码分片个数</h2>
+     */
+    private static int shards(CouponTemplateSDK template) {
+        Integer codeShards = template.getCodeShards();
+        return null == codeShards || codeShards < 1 ? 1 : codeShards;
+    }
+
+    /**
+     * <h2>用户最先尝试的分片, 不同用户分散到不同的分片</h2>
+     */
+    private static int startShard(Long userId, int shards) {
+        return Math.floorMod(Long.hashCode(userId), shards);
+    }
+
     /**
      * <h2>获取一个随机的过期时间</h2>
      * 避免缓存雪崩: redis key 在同一时间失效
@@ -297,4 +573,53 @@ public class RedisServiceImpl implements IRedisService {
         }
         return RandomUtils.nextLong(min * 60 * 60, max * 60 * 60);
     }
+
+    private static RedisScript<List> script(String path) {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(
+                new ClassPathResource(path)));
+        script.setResultType(List.class);
+        return script;
+    }
+
+    /**
+     * <h2>一个优惠券模板的本地优惠券码缓冲区</h2>
+     * 取优惠券码不加锁; 放入和关闭互斥, 关闭之后不再接受新的优惠券码, 避免归还之后放入的优惠券码丢失
+     */
+    private static class CodeBuffer {
+
+        /** 优惠券码分片个数, 归还时使用 */
+        private final int shards;
+
+        private final Queue<String> codes = new ConcurrentLinkedQueue<>();
+
+        private boolean closed = false;
+
+        private CodeBuffer(int shards) {
+            this.shards = shards;
+        }
+
+        /**
+         * <h2>放入优惠券码, 缓冲区已经关闭时返回 false</h2>
+         */
+        private synchronized boolean offerAll(Collection<String> couponCodes) {
+            if (closed) {
+                return false;
+            }
+            codes.addAll(couponCodes);
+            return true;
+        }
+
+        /**
+         * <h2>关闭缓冲区, 取出剩余的优惠券码</h2>
+         */
+        private synchronized List<String> close() {
+            closed = true;
+            List<String> remaining = new ArrayList<>(codes.size());
+            for (String code = codes.poll(); null != code; code = codes.poll()) {
+                remaining.add(code);
+            }
+            return remaining;
+        }
+    }
 }
@@ -0,0 +1,314 @@
+package com.imooc.coupon.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.imooc.coupon.config.TemplateCacheProperties;
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.feign.TemplateClient;
+import com.imooc.coupon.service.ITemplateCacheService;
+import com.imooc.coupon.vo.CommonResponse;
+import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.TemplateChanges;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.MapUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * <h1>优惠券模板缓存服务实现</h1>
+ * 1. 一级缓存: Caffeine, 限制个数, 写入一段时间后异步刷新(刷新期间仍然返回旧值)
+ * 2. 二级缓存: Redis 中每个模板一个 key, 多个节点共享, 只有二级缓存未命中的模板才通过 feign 获取
+ * 3. 模板变更时, 模板微服务删除二级缓存并发布变更消息, 各个节点收到后清理一级缓存
+ * 4. 一级缓存未命中时, 相同模板 ids 的并发请求共享同一次加载(singleflight)
+ * 5. 避免把变更之前通过 feign 获取的旧模板写回二级缓存: 加载期间收到过变更消息时不写,
+ *    写入时已经缓存了更新的版本也不覆盖
+ * 6. 定时按版本号增量获取模板变更, 订阅断开期间丢失的变更消息在下一次同步时补上
+ */
+@Slf4j
+@Service
+public class TemplateCacheServiceImpl implements ITemplateCacheService, MessageListener {
+
+    /** 可用模板列表在一级缓存中的 key */
+    private static final String USABLE_KEY = "usable";
+
+    /** 按版本号写入二级缓存的脚本 */
+    private static final RedisScript<Long> SAVE_SDK_SCRIPT = saveSdkScript();
+
+    private final TemplateClient templateClient;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final TemplateCacheProperties properties;
+
+    /** 模板 id -> CouponTemplateSDK */
+    private final LoadingCache<Integer, CouponTemplateSDK> templateCache;
+
+    /** 可用模板列表 */
+    private final LoadingCache<String, List<CouponTemplateSDK>> usableCache;
+
+    /** 正在加载的模板 ids -> 加载结果 */
+    private final ConcurrentMap<Set<Integer>, CompletableFuture<Map<Integer, CouponTemplateSDK>>>
+            inFlight = new ConcurrentHashMap<>();
+
+    /** 收到的模板变更消息个数, 加载前后不同代表加载期间模板有变更 */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /** 已经同步到的模板版本号, -1 代表还没有同步过(第一次为全量) */
+    private final AtomicLong syncedVersion = new AtomicLong(-1);
+
+    /** 访问模板微服务的次数 */
+    private final Counter feignByIds;
+
+    private final Counter feignUsable;
+
+    private final Counter feignChanges;
+
+    @Autowired
+    public TemplateCacheServiceImpl(TemplateClient templateClient,
+                                    StringRedisTemplate redisTemplate,
+                                    TemplateCacheProperties properties,
+                                    MeterRegistry registry) {
+        this.templateClient = templateClient;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+
+        this.templateCache = CaffeineCacheMetrics.monitor(registry,
+                newBuilder().maximumSize(properties.getMaximumSize())
+                        .build(new TemplateLoader()),
+                "coupon.template.sdk");
+        this.usableCache = CaffeineCacheMetrics.monitor(registry,
+                newBuilder().maximumSize(1)
+                        .build(key -> loadUsableTemplate()),
+                "coupon.template.usable");
+        this.feignByIds = Counter.builder("coupon.template.feign")
+                .tag("method", "findIds2TemplateSDK").register(registry);
+        this.feignUsable = Counter.builder("coupon.template.feign")
+                .tag("method", "findAllUsableTemplate").register(registry);
+        this.feignChanges = Counter.builder("coupon.template.feign")
+                .tag("method", "findTemplateChanges").register(registry);
+    }
+
+    /**
+     * <h2>查找所有可用的优惠券模板</h2>
+     * @return {@link CouponTemplateSDK}s
+     */
+    @Override
+    public List<CouponTemplateSDK> findAllUsableTemplate() {
+        try {
+            return usableCache.get(USABLE_KEY);
+        } catch (RuntimeException ex) {
+            log.error("find usable template error: {}", ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * <h2>获取模板 ids 到 CouponTemplateSDK 的映射</h2>
+     * @param ids 模板 ids
+     * @return Map<key: 模板 id, value: CouponTemplateSDK>
+     */
+    @Override
+    public Map<Integer, CouponTemplateSDK> findIds2TemplateSDK(Collection<Integer> ids) {
+
+        Set<Integer> distinctIds = new HashSet<>(ids);
+        Map<Integer, CouponTemplateSDK> present = templateCache.getAllPresent(distinctIds);
+        if (present.size() == distinctIds.size()) {
+            return present;
+        }
+
+        CompletableFuture<Map<Integer, CouponTemplateSDK>> future = new CompletableFuture<>();
+        CompletableFuture<Map<Integer, CouponTemplateSDK>> running =
+                inFlight.putIfAbsent(distinctIds, future);
+        if (null != running) {
+            try {
+                return running.join();
+            } catch (CompletionException ex) {
+                return Collections.emptyMap();
+            }
+        }
+
+        try {
+            Map<Integer, CouponTemplateSDK> result = templateCache.getAll(distinctIds);
+            future.complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            log.error("find template sdk error: {}, {}", JSON.toJSONString(ids), ex.getMessage());
+            future.completeExceptionally(ex);
+            return Collections.emptyMap();
+        } finally {
+            inFlight.remove(distinctIds, future);
+        }
+    }
+
+    /**
+     * <h2>使优惠券模板的本地缓存失效</h2>
+     * @param templateId 优惠券模板主键
+     */
+    @Override
+    public void evictTemplate(Integer templateId) {
+        invalidations.incrementAndGet();
+        templateCache.invalidate(templateId);
+        usableCache.invalidateAll();
+        log.info("evict template cache: {}", templateId);
+    }
+
+    /**
+     * <h2>增量同步上次同步之后的模板变更</h2>
+     * 仍然可用的模板直接替换一级缓存中的旧值(不在缓存中的不加入), 不可用的模板从一级缓存中删除;
+     * 有变更时可用模板列表重新加载. 同步失败(降级)时不前进版本号, 下一次重试
+     */
+    @Override
+    public void syncTemplateChanges() {
+
+        long since = syncedVersion.get();
+        feignChanges.increment();
+        CommonResponse<TemplateChanges> response = templateClient.findTemplateChanges(since);
+        if (null == response.getCode() || response.getCode() != 0) {
+            log.warn("sync template changes error: {}, {}", since, response.getMsg());
+            return;
+        }
+        TemplateChanges changes = response.getData();
+        List<CouponTemplateSDK> usable = changes.getUsable();
+        List<Integer> removed = changes.getRemoved();
+        if (!usable.isEmpty() || !removed.isEmpty()) {
+            invalidations.incrementAndGet();
+            usable.forEach(sdk -> templateCache.asMap().replace(sdk.getId(), sdk));
+            templateCache.invalidateAll(removed);
+            usableCache.invalidateAll();
+        }
+        syncedVersion.accumulateAndGet(changes.getVersion(), Math::max);
+        log.debug("sync template changes: {} -> {}, usable: {}, removed: {}",
+                since, changes.getVersion(), usable.size(), removed.size());
+    }
+
+    /**
+     * <h2>收到模板变更消息</h2>
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        evictTemplate(Integer.valueOf(
+                new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    private Caffeine<Object, Object> newBuilder() {
+        return Caffeine.newBuilder()
+                .refreshAfterWrite(properties.getRefreshAfterWrite(), TimeUnit.SECONDS)
+                .expireAfterWrite(properties.getExpireAfterWrite(), TimeUnit.SECONDS)
+                .recordStats();
+    }
+
+    /**
+     * <h2>通过 feign 获取可用模板列表</h2>
+     * 降级结果不放入缓存, 刷新失败时继续使用旧值
+     */
+    private List<CouponTemplateSDK> loadUsableTemplate() {
+        feignUsable.increment();
+        CommonResponse<List<CouponTemplateSDK>> response = templateClient.findAllUsableTemplate();
+        if (null == response.getCode() || response.getCode() != 0) {
+            throw new IllegalStateException(response.getMsg());
+        }
+        return Collections.unmodifiableList(response.getData());
+    }
+
+    /**
+     * <h2>从 Redis 中批量获取 CouponTemplateSDK, 未命中的通过 feign 获取并写回 Redis</h2>
+     */
+    private Map<Integer, CouponTemplateSDK> loadTemplates(List<Integer> ids) {
+
+        long invalidationsBefore = invalidations.get();
+        Map<Integer, CouponTemplateSDK> result = new HashMap<>(ids.size());
+        List<String> cached = redisTemplate.opsForValue().multiGet(
+                ids.stream().map(this::sdkKey).collect(Collectors.toList()));
+        List<Integer> missed = new ArrayList<>();
+        for (int i = 0; i < ids.size(); ++i) {
+            String json = null == cached ? null : cached.get(i);
+            if (null == json) {
+                missed.add(ids.get(i));
+            } else {
+                result.put(ids.get(i), JSON.parseObject(json, CouponTemplateSDK.class));
+            }
+        }
+        if (missed.isEmpty()) {
+            return result;
+        }
+
+        feignByIds.increment();
+        CommonResponse<Map<Integer, CouponTemplateSDK>> response =
+                templateClient.findIds2TemplateSDK(missed);
+        if (null == response.getCode() || response.getCode() != 0) {
+            throw new IllegalStateException(response.getMsg());
+        }
+        Map<Integer, CouponTemplateSDK> loaded = MapUtils.emptyIfNull(response.getData());
+        if (invalidations.get() == invalidationsBefore) {
+            saveTemplatesToRedis(loaded);
+        } else {
+            log.info("template changed while loading, skip saving to redis: {}", loaded.keySet());
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * <h2>逐个写入二级缓存</h2>
+     * 每个模板一次脚本调用, 没有放到 pipeline 中: 脚本未加载(NOSCRIPT)时需要重新发送脚本
+     */
+    private void saveTemplatesToRedis(Map<Integer, CouponTemplateSDK> templates) {
+        templates.forEach((id, sdk) -> redisTemplate.execute(SAVE_SDK_SCRIPT,
+                Collections.singletonList(sdkKey(id)),
+                JSON.toJSONString(sdk),
+                String.valueOf(null == sdk.getVersion() ? 0L : sdk.getVersion()),
+                String.valueOf(properties.getRedisTtl())));
+    }
+
+    private static RedisScript<Long> saveSdkScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(
+                new ClassPathResource("lua/save_template_sdk.lua")));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    private String sdkKey(Integer templateId) {
+        return String.format("%s%s", Constant.RedisPrefix.COUPON_TEMPLATE_SDK, templateId);
+    }
+
+    /**
+     * <h1>一级缓存未命中时, 批量从二级缓存/模板微服务加载</h1>
+     */
+    private class TemplateLoader implements CacheLoader<Integer, CouponTemplateSDK> {
+
+        @Override
+        public CouponTemplateSDK load(Integer key) {
+            return loadTemplates(Collections.singletonList(key)).get(key);
+        }
+
+        @Override
+        public Map<Integer, CouponTemplateSDK> loadAll(Iterable<? extends Integer> keys) {
+            List<Integer> ids = new ArrayList<>();
+            keys.forEach(ids::add);
+            return loadTemplates(ids);
+        }
+    }
+}
@@ -1,26 +1,25 @@
 package com.imooc.coupon.service.impl;
 
 import com.alibaba.fastjson.JSON;
-import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.constant.AcquireStatus;
 import com.imooc.coupon.constant.CouponStatus;
 import com.imooc.coupon.dao.CouponDao;
 import com.imooc.coupon.entity.Coupon;
 import com.imooc.coupon.exception.CouponException;
 import com.imooc.coupon.feign.SettlementClient;
-import com.imooc.coupon.feign.TemplateClient;
+import com.imooc.coupon.service.IKafkaProducerService;
 import com.imooc.coupon.service.IRedisService;
+import com.imooc.coupon.service.ITemplateCacheService;
 import com.imooc.coupon.service.IUserService;
+import com.imooc.coupon.util.MoneyUtils;
 import com.imooc.coupon.vo.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.function.Function;
@@ -45,27 +44,27 @@ public class UserServiceImpl implements IUserService {
     /** Redis 服务*/
     private final IRedisService redisService;
 
-    /** 模板微服务客户端*/
-    private final TemplateClient templateClient;
+    /** 优惠券模板缓存服务, 未命中时访问模板微服务*/
+    private final ITemplateCacheService templateCacheService;
 
     /** 结算微服务客户端*/
     private final SettlementClient settlementClient;
 
-    /** Kafka 客户端*/
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    /** 优惠券状态消息发送服务*/
+    private final IKafkaProducerService kafkaProducerService;
 
     @Autowired
-    public UserServiceImpl(CouponDao couponDao, IRedisService redisService, TemplateClient templateClient, SettlementClient settlementClient, KafkaTemplate<String, String> kafkaTemplate) {
+    public UserServiceImpl(CouponDao couponDao, IRedisService redisService, ITemplateCacheService templateCacheService, SettlementClient settlementClient, IKafkaProducerService kafkaProducerService) {
         this.couponDao = couponDao;
         this.redisService = redisService;
-        this.templateClient = templateClient;
+        this.templateCacheService = templateCacheService;
         this.settlementClient = settlementClient;
-        this.kafkaTemplate = kafkaTemplate;
+        this.kafkaProducerService = kafkaProducerService;
     }
 
     /**
      * <h2>根据用户 id 和状态查询优惠券记录</h2>
-     *
+     * 缓存中只保存优惠券本身, 读取缓存(或数据库)之后统一填充 templateSDK, 只访问一次模板缓存服务
      * @param userId 用户 id
      * @param status 优惠券状态
      * @return {@link Coupon}s
@@ -73,66 +72,58 @@ public class UserServiceImpl implements IUserService {
     @Override
     public List<Coupon> findCouponsByStatus(Long userId, Integer status) throws CouponException {
         List<Coupon> cachedCoupons = redisService.getCachedCoupons(userId, status);
-        List<Coupon> preTarget;
-        if (CollectionUtils.isNotEmpty(cachedCoupons) &&
-            CollectionUtils.isNotEmpty(
-                    cachedCoupons.stream()
-                            .filter(c->c.getId()!=-1)
-                            .collect(Collectors.toList()))
-        ){
-            preTarget = cachedCoupons.stream()
-                    .filter(c->c.getId()!=-1)
-                    .collect(Collectors.toList());
+        List<Coupon> preTarget = cachedCoupons.stream()
+                .filter(c->c.getId()!=-1)
+                .collect(Collectors.toList());
+        if (CollectionUtils.isNotEmpty(preTarget)){
             log.debug("coupon cache is not empty:{} {} {}",userId,status,JSON.toJSONString(preTarget));
-        }else {
-            log.debug("coupon cache is empty, get coupon from db:{} {}",userId,status);
-            List<Coupon> dbCoupon = couponDao.findAllByUserIdAndStatus(userId, CouponStatus.of(status));
-            if (CollectionUtils.isEmpty(dbCoupon)){
-                log.debug("current user not have coupon in db:{}, {}",userId,status);
-                return dbCoupon;
-            }
-            //填充 dbCoupons 到 templateSdk 字段
-            Map<Integer, CouponTemplateSDK> id2TemplateSDK = templateClient.findIds2TemplateSDK(
-                    dbCoupon.stream()
-                            .map(Coupon::getId)
-                            .collect(Collectors.toList())
-            ).getData();
-            dbCoupon.forEach(c->{
-                c.setTemplateSDK(id2TemplateSDK.get(c.getTemplateId()));
-            });
-            //数据库中存在记录
-            preTarget =dbCoupon;
-            //将记录写入cache
-            redisService.addCouponToCache(userId,preTarget,status);
-            //将无效优惠券剔除
-            preTarget = preTarget.stream()
-                    .filter(pt->pt.getId()!=-1)
-                    .collect(Collectors.toList());
-            //如果当前获取的是可用优惠券,还需对已过期的优惠券做延迟处理
-           if (CouponStatus.of(status).equals(CouponStatus.USABLE)){
-               CouponClassify couponClassify = CouponClassify.classify(preTarget);
-               //如果已过期状态不为空,做延迟处理
-               if (CollectionUtils.isNotEmpty(couponClassify.getExpired())){
-                   log.info("add expired coupon to cache from  findCouponsByStatus: {} {}",userId,status);
-                   redisService.addCouponToCache(userId,couponClassify.getExpired(),CouponStatus.EXPIRED.getCode());
-                   //发送到 kafka 做异步处理 ,更改db
-                   kafkaTemplate.send(Constant.Kafka.TOPIC,
-                           JSON.toJSONString(new CouponKafkaMessage(
-                                   CouponStatus.EXPIRED.getCode(),
-                                   couponClassify.getExpired().stream()
-                                   .map(Coupon::getId)
-                                   .collect(Collectors.toList())
-                           ))
-                   );
+            fillTemplateSDK(preTarget);
+            return preTarget;
+        }
+
+        log.debug("coupon cache is empty, get coupon from db:{} {}",userId,status);
+        List<Coupon> dbCoupon = couponDao.findAllByUserIdAndStatus(userId, CouponStatus.of(status));
+        if (CollectionUtils.isEmpty(dbCoupon)){
+            log.debug("current user not have coupon in db:{}, {}",userId,status);
+            return dbCoupon;
+        }
+        //数据库中存在记录, 将记录写入cache
+        preTarget = dbCoupon;
+        redisService.addCouponToCache(userId,preTarget,status);
+        //填充 templateSdk 字段
+        fillTemplateSDK(preTarget);
+        //如果当前获取的是可用优惠券,还需对已过期的优惠券做延迟处理
+        if (CouponStatus.of(status).equals(CouponStatus.USABLE)){
+            CouponClassify couponClassify = CouponClassify.classify(preTarget);
+            //如果已过期状态不为空,做延迟处理
+            if (CollectionUtils.isNotEmpty(couponClassify.getExpired())){
+                log.info("add expired coupon to cache from  findCouponsByStatus: {} {}",userId,status);
+                redisService.addCouponToCache(userId,couponClassify.getExpired(),CouponStatus.EXPIRED.getCode());
+                //发送到 kafka 做异步处理 ,更改db
+                kafkaProducerService.sendCouponStatus(userId, CouponStatus.EXPIRED,
+                        couponClassify.getExpired().stream()
+                                .map(Coupon::getId)
+                                .collect(Collectors.toList())
+                );
                 return couponClassify.getUsable();
-               }
-           }
+            }
         }
-        List<Integer> templateIds = preTarget.stream().map(Coupon::getTemplateId).collect(Collectors.toList());
+        return preTarget;
+    }
+
+    /**
+     * <h2>填充优惠券的 templateSDK 字段</h2>
+     * 按去重后的模板 ids 批量获取一次
+     * @param coupons {@link Coupon}s
+     */
+    private void fillTemplateSDK(List<Coupon> coupons) {
+        Set<Integer> templateIds = coupons.stream()
+                .map(Coupon::getTemplateId)
+                .collect(Collectors.toSet());
         log.debug("templateIds==> {}",JSON.toJSONString(templateIds));
-        Map<Integer, CouponTemplateSDK> templateSDKMap = this.templateClient.findIds2TemplateSDK(templateIds).getData();
-        preTarget.stream().forEach(c->c.setTemplateSDK(templateSDKMap.get(c.getTemplateId())));
-        return  preTarget;
+        Map<Integer, CouponTemplateSDK> templateSDKMap =
+                templateCacheService.findIds2TemplateSDK(templateIds);
+        coupons.forEach(c->c.setTemplateSDK(templateSDKMap.get(c.getTemplateId())));
     }
 
     /**
@@ -144,7 +135,12 @@ public class UserServiceImpl implements IUserService {
     @Override
     public List<CouponTemplateSDK> findAvailableTemplate(Long userId) throws CouponException {
         long curTime = new Date().getTime();
-        List<CouponTemplateSDK> usableCouponTemplateSDK = templateClient.findAllUsableTemplate().getData();
+        List<CouponTemplateSDK> usableCouponTemplateSDK = templateCacheService.findAllUsableTemplate();
+        //已下线模板的预取优惠券码归还到 cache
+        redisService.releaseCouponCodeBuffer(CollectionUtils.emptyIfNull(usableCouponTemplateSDK)
+                .stream()
+                .map(CouponTemplateSDK::getId)
+                .collect(Collectors.toSet()));
         if (CollectionUtils.isEmpty(usableCouponTemplateSDK)){
             throw new CouponException("usableCouponTemplateSDK is empty");
         }
@@ -158,16 +154,14 @@ public class UserServiceImpl implements IUserService {
                 t->limit2Tmplate.put(t.getId(),Pair.of(t.getRule().getLimitation(),t))
         );
         List<CouponTemplateSDK> result = new ArrayList<>(limit2Tmplate.size());
-        List<Coupon> userCurUsableCoupons = this.findCouponsByStatus(userId, CouponStatus.USABLE.getCode());
-        log.info("current user has usable coupon:{} ,{}",userId, userCurUsableCoupons.size());
-        Map<Integer,List<Coupon>> templateId2Coupon = userCurUsableCoupons.stream()
-                .collect(Collectors.groupingBy(Coupon::getTemplateId));
+        Map<Integer,Integer> templateId2Claim = findCouponClaims(userId, limit2Tmplate.keySet());
+        log.info("current user coupon claims:{} ,{}",userId, JSON.toJSONString(templateId2Claim));
         //根据 template rule 判断是否可领取优惠券
         limit2Tmplate.forEach(
                 (k,v)->{
                     int limitation = v.getLeft();
                     CouponTemplateSDK couponTemplateSDK = v.getRight();
-                    if (templateId2Coupon.containsKey(k) && templateId2Coupon.get(k).size() >= limitation){
+                    if (templateId2Claim.getOrDefault(k, 0) >= limitation){
                         return;
                     }
                     result.add(couponTemplateSDK);
@@ -179,8 +173,9 @@ public class UserServiceImpl implements IUserService {
     /**
      * <h2>用户领取优惠券</h2>
      *  1. 从TemplateClient 拿到对应的优惠券,并检查是否过期
-     *  2. 根据 limiation 判断用户是否可领取
-     *  3. save to db
+     *  2. 通过 Redis 脚本原子地判断 limiation, 获取优惠券码并记录领取计数
+     *     (领取计数不在缓存中时, 带上数据库中的统计结果重试, 由脚本在 field 不存在时初始化)
+     *  3. save to db, 失败时归还优惠券码并撤销领取计数
      *  4. 填充 couponTemplateSDK
      *  5. save to cache
      * @param request {@link AcquireTemplateRequest}
@@ -189,34 +184,44 @@ public class UserServiceImpl implements IUserService {
     @Override
     public Coupon acquireTemplate(AcquireTemplateRequest request) throws CouponException {
         Map<Integer, CouponTemplateSDK> id2TemplateSDK =
-                templateClient.findIds2TemplateSDK(Collections.singleton(request.getTemplateSDK().getId())).getData();
+                templateCacheService.findIds2TemplateSDK(Collections.singleton(request.getTemplateSDK().getId()));
         log.info("打印数据===>{}",JSON.toJSONString(id2TemplateSDK));
         if (id2TemplateSDK.size() <= 0){
             log.error("can not acuiretemplate from templateClient:{}",request.getTemplateSDK().getId());
             throw new CouponException("can not acuiretemplate from templateClient");
         }
-        //用户是否可以领取此张优惠券
-        List<Coupon> userCurUsableCoupons = this.findCouponsByStatus(request.getUserId(), CouponStatus.USABLE.getCode());
-        Map<Integer,List<Coupon>> templateId2Coupons = userCurUsableCoupons.stream()
-                .collect(Collectors.groupingBy(Coupon::getTemplateId));
-        if (templateId2Coupons.containsKey(request.getTemplateSDK().getId())
-        && templateId2Coupons.get(request.getTemplateSDK().getId()).size() >=
-                id2TemplateSDK.get(request.getTemplateSDK().getId()).getRule().getLimitation()){
-            log.error("exceed template assign limitation:{}",
-                    request.getTemplateSDK().getId());
-            throw new CouponException("exceed template assign limitation");
+        CouponTemplateSDK templateSDK = id2TemplateSDK.get(request.getTemplateSDK().getId());
+        //判断用户是否可以领取此张优惠券, 并尝试获取优惠券码
+        AcquireCouponCodeResult acquireResult = redisService.tryToAcquireCouponCodeFromCache(
+                request.getUserId(), templateSDK, null);
+        if (acquireResult.getStatus() == AcquireStatus.NEED_SEED){
+            acquireResult = redisService.tryToAcquireCouponCodeFromCache(
+                    request.getUserId(), templateSDK,
+                    countCouponClaims(request.getUserId()).getOrDefault(templateSDK.getId(), 0));
         }
-        //尝试获取优惠券码
-        String couponCode = redisService.tryToAcquireCouponCodeFromCache(request.getTemplateSDK().getId());
-        if (StringUtils.isEmpty(couponCode)){
-            log.error("can not acquire coupon code: {}",request.getTemplateSDK().getId());
-            throw new CouponException("can not acquire coupon code");
+        switch (acquireResult.getStatus()){
+            case OK:
+                break;
+            case LIMIT_EXCEEDED:
+                log.error("exceed template assign limitation:{}", templateSDK.getId());
+                throw new CouponException("exceed template assign limitation");
+            default:
+                log.error("can not acquire coupon code: {} {}",
+                        templateSDK.getId(), acquireResult.getStatus());
+                throw new CouponException("can not acquire coupon code");
         }
         Coupon newCoupon =
-                new Coupon(request.getTemplateSDK().getId(),request.getUserId(),couponCode,CouponStatus.USABLE);
-        newCoupon = couponDao.save(newCoupon);
-        //填充coupon对象 couponTemplateSDK, 一定放在缓存之前填充
-        newCoupon.setTemplateSDK(request.getTemplateSDK());
+                new Coupon(request.getTemplateSDK().getId(),request.getUserId(),
+                        acquireResult.getCouponCode(),CouponStatus.USABLE);
+        try {
+            newCoupon = couponDao.save(newCoupon);
+        } catch (RuntimeException ex) {
+            redisService.returnCouponCode(request.getUserId(), templateSDK,
+                    acquireResult.getCouponCode());
+            throw ex;
+        }
+        //填充coupon对象 couponTemplateSDK (缓存中不保存 templateSDK)
+        newCoupon.setTemplateSDK(templateSDK);
         //放入缓存中
         redisService.addCouponToCache(request.getUserId(),
                 Collections.singletonList(newCoupon),
@@ -236,12 +241,12 @@ public class UserServiceImpl implements IUserService {
         List<SettlementInfo.CouponAndTemplateInfo> ctInfos = info.getCouponAndTemplateInfos();
         if (CollectionUtils.isEmpty(ctInfos)){
             log.info("empty info from SettlementInfo");
-            double  goodsSum = 0.0;
+            long goodsSum = 0L;
             for (GoodsInfo g: info.getGoodsInfos()){
-                goodsSum += g.getPrice() * g.getCount();
+                goodsSum += MoneyUtils.multiply(g.getPrice(), g.getCount());
             }
             //没有优惠券,也就不存在优惠券的核销, SettlementInfo 其它字段无需修改
-            info.setCost(retain2Decimals(goodsSum));
+            info.setCost(MoneyUtils.toYuan(goodsSum));
         }
         //校验优惠券是否属于用户自己
         List<Coupon> curUserUsableCoupons = findCouponsByStatus(info.getUserId(), CouponStatus.USABLE.getCode());
@@ -264,21 +269,43 @@ public class UserServiceImpl implements IUserService {
             //更新缓存
             redisService.addCouponToCache(info.getUserId(),settleCopons,CouponStatus.USED.getCode());
             //更新 DB
-            kafkaTemplate.send(Constant.Kafka.TOPIC,
-                    JSON.toJSONString(new CouponKafkaMessage(CouponStatus.USED.getCode(),
-                            settleCopons.stream().map(Coupon::getId).collect(Collectors.toList()))
-                    ));
+            kafkaProducerService.sendCouponStatus(info.getUserId(), CouponStatus.USED,
+                    settleCopons.stream().map(Coupon::getId).collect(Collectors.toList()));
         }
         return processedInfo;
     }
 
     /**
-     * <h2>保留2位小数</h2>
-     * @param value double值
-     * @return model:0.00
+     * <h2>获取用户在每个模板下领取过的优惠券个数</h2>
+     * 包括已使用和已过期的优惠券, 缓存中没有的模板从数据库重建
+     * @param userId 用户 id
+     * @param templateIds 优惠券模板 ids
+     * @return 模板 id -> 领取个数
+     */
+    private Map<Integer,Integer> findCouponClaims(Long userId, Collection<Integer> templateIds) {
+        Map<Integer,Integer> claims = redisService.getCouponClaims(userId, templateIds);
+        if (claims.size() < templateIds.size()) {
+            Map<Integer,Integer> counted = countCouponClaims(userId);
+            Map<Integer,Integer> missing = new HashMap<>();
+            templateIds.stream()
+                    .filter(id -> !claims.containsKey(id))
+                    .forEach(id -> missing.put(id, counted.getOrDefault(id, 0)));
+            claims.putAll(redisService.seedCouponClaims(userId, missing));
+        }
+        return claims;
+    }
+
+    /**
+     * <h2>从 coupon 表统计用户的领取计数</h2>
+     * @param userId 用户 id
+     * @return 模板 id -> 领取个数
      */
-    private double retain2Decimals(double value){
-        return new BigDecimal(value).setScale(2,BigDecimal.ROUND_HALF_UP).doubleValue();
-       // return Double.parseDouble(new DecimalFormat("#.00").format(param));
+    private Map<Integer,Integer> countCouponClaims(Long userId) {
+        Map<Integer,Integer> claims = new HashMap<>();
+        couponDao.countAllByUserIdGroupByTemplateId(userId).forEach(
+                row->claims.put((Integer) row[0], ((Long) row[1]).intValue())
+        );
+        return claims;
     }
+
 }
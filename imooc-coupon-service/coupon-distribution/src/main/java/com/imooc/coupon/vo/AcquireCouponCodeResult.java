@@ -0,0 +1,21 @@
+package com.imooc.coupon.vo;
+
+import com.imooc.coupon.constant.AcquireStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <h1>领取优惠券码的结果</h1>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AcquireCouponCodeResult {
+
+    /** 结果状态 */
+    private AcquireStatus status;
+
+    /** 优惠券码, 只有 status 为 OK 时存在 */
+    private String couponCode;
+}
@@ -43,28 +43,6 @@ public class CouponClassify {
         List<Coupon> used = new ArrayList<>(coupons.size());
         List<Coupon> expired = new ArrayList<>(coupons.size());
 
-        coupons.forEach(c->{
-            boolean isTimeExpire;
-            long curTime = new Date().getTime();
-            if (c.getTemplateSDK().getRule().getExpiration().getPeriod().equals(
-                    PeriodType.REGULAR.getCode()
-            )){
-                isTimeExpire = c.getTemplateSDK().getRule().getExpiration().getDeadline() <= curTime;
-            }else{
-                isTimeExpire = DateUtils.addDays(
-                        c.getAssignTime(),
-                        c.getTemplateSDK().getRule().getExpiration().getGap()
-                ).getTime() <= curTime;
-            }
-            if (c.getStatus().equals(CouponStatus.USED)){
-                used.add(c);
-            }else if(c.getStatus().equals(CouponStatus.EXPIRED) || isTimeExpire){
-                expired.add(c);
-            }else {
-                usable.add(c);
-            }
-        });
-
         coupons.forEach(c -> {
 
             // 判断优惠券是否过期
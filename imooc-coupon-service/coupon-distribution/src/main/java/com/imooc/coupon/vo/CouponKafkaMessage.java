@@ -20,4 +20,7 @@ public class CouponKafkaMessage {
 
     /** Coupon 主键 */
     private List<Integer> ids;
+
+    /** 优惠券所属的用户, 同时作为消息的 key, 同一用户的消息进入同一个分区 */
+    private Long userId;
 }
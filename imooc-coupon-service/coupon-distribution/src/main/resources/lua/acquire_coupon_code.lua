@@ -0,0 +1,44 @@
+-- 原子地检查领取限制, 取出优惠券码并记录领取计数, 一次往返完成
+-- 所有 key 使用同一个 hash tag {模板 id}, Redis Cluster 下在同一个 slot
+-- KEYS[1]: 模板领取计数 hash key, field 为 userId
+-- KEYS[2..n]: 优惠券码分片 key, 按尝试的顺序排列;
+--          只有 KEYS[1] 时代表调用方已经从本地缓冲区取到优惠券码, 只检查限制并记录计数
+-- ARGV[1]: userId
+-- ARGV[2]: 模板的领取限制 limitation
+-- ARGV[3]: KEYS[1] 的过期时间(秒)
+-- ARGV[4]: 领取计数不存在时用于初始化的数据库统计结果, 空字符串代表没有初始值;
+--          只在 field 不存在时写入, 不会覆盖并发领取已经记录的计数
+-- ARGV[5]: 最多取出的优惠券码个数, 多出的由调用方放入本地缓冲区
+-- 返回: {'OK', 优惠券码...} / {'LIMIT_EXCEEDED'} / {'OUT_OF_STOCK'} / {'NEED_SEED'}
+local count = redis.call('HGET', KEYS[1], ARGV[1])
+if not count then
+    if ARGV[4] == '' then
+        return {'NEED_SEED'}
+    end
+    count = ARGV[4]
+    redis.call('HSET', KEYS[1], ARGV[1], count)
+    redis.call('EXPIRE', KEYS[1], ARGV[3])
+end
+
+if tonumber(count) >= tonumber(ARGV[2]) then
+    return {'LIMIT_EXCEEDED'}
+end
+
+local result = {'OK'}
+for i = 2, #KEYS do
+    local codes = redis.call('LRANGE', KEYS[i], 0, tonumber(ARGV[5]) - 1)
+    if #codes > 0 then
+        redis.call('LTRIM', KEYS[i], #codes, -1)
+        for _, code in ipairs(codes) do
+            result[#result + 1] = code
+        end
+        break
+    end
+end
+if #KEYS > 1 and #result == 1 then
+    return {'OUT_OF_STOCK'}
+end
+
+redis.call('HINCRBY', KEYS[1], ARGV[1], 1)
+redis.call('EXPIRE', KEYS[1], ARGV[3])
+return result
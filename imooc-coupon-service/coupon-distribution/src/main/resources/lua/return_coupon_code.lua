@@ -0,0 +1,12 @@
+-- 领取成功但优惠券保存失败时, 原子地归还优惠券码并撤销一次领取计数
+-- KEYS[1]: 模板领取计数 hash key, field 为 userId
+-- KEYS[2]: 归还到的优惠券码分片 key, 与 KEYS[1] 使用同一个 hash tag {模板 id}
+-- ARGV[1]: userId
+-- ARGV[2]: 优惠券码
+-- 返回: {撤销之后的领取个数}
+redis.call('LPUSH', KEYS[2], ARGV[2])
+local count = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or 0)
+if count > 0 then
+    count = redis.call('HINCRBY', KEYS[1], ARGV[1], -1)
+end
+return {count}
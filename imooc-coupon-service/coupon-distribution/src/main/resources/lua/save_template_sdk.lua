@@ -0,0 +1,15 @@
+-- 把 CouponTemplateSDK 写入二级缓存, 已经缓存的版本更新时不覆盖
+-- KEYS[1]: CouponTemplateSDK 的 key
+-- ARGV[1]: CouponTemplateSDK 的 json
+-- ARGV[2]: CouponTemplateSDK 的版本号
+-- ARGV[3]: 过期时间(秒)
+-- 返回: 1 写入, 0 已经缓存了更新的版本
+local current = redis.call('GET', KEYS[1])
+if current then
+    local ok, sdk = pcall(cjson.decode, current)
+    if ok and type(sdk.version) == 'number' and sdk.version > tonumber(ARGV[2]) then
+        return 0
+    end
+end
+redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[3])
+return 1
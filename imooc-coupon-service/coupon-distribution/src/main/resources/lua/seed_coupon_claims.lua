@@ -0,0 +1,12 @@
+-- 用数据库中统计的领取计数初始化用户在一个模板下的领取计数, 只在 field 不存在时写入
+-- 已经存在的 field 可能包含还没有提交到数据库的领取, 不能覆盖
+-- KEYS[1]: 模板领取计数 hash key, field 为 userId
+-- ARGV[1]: userId
+-- ARGV[2]: 数据库中统计的领取个数
+-- ARGV[3]: KEYS[1] 没有过期时间时设置的过期时间(秒)
+-- 返回: {初始化之后的领取个数}
+if redis.call('HSETNX', KEYS[1], ARGV[1], ARGV[2]) == 1
+        and redis.call('TTL', KEYS[1]) < 0 then
+    redis.call('EXPIRE', KEYS[1], ARGV[3])
+end
+return {redis.call('HGET', KEYS[1], ARGV[1])}
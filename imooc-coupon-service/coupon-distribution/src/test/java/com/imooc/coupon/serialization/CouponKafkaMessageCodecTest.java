@@ -0,0 +1,108 @@
+package com.imooc.coupon.serialization;
+
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.constant.CouponStatus;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <h1>优惠券 Kafka 消息编码测试</h1>
+ */
+public class CouponKafkaMessageCodecTest {
+
+    @Test
+    public void testRoundTripSortsIds() {
+
+        CouponKafkaMessage message = new CouponKafkaMessage(CouponStatus.USED.getCode(),
+                Arrays.asList(1005, 1001, 1003, 1003, Integer.MAX_VALUE, -7), 10001L);
+        CouponKafkaMessage decoded = CouponKafkaMessageCodec.decode(
+                CouponKafkaMessageCodec.encode(message));
+
+        Assert.assertEquals(CouponStatus.USED.getCode(), decoded.getStatus());
+        Assert.assertEquals(Long.valueOf(10001L), decoded.getUserId());
+        Assert.assertEquals(Arrays.asList(-7, 1001, 1003, 1003, 1005, Integer.MAX_VALUE),
+                decoded.getIds());
+    }
+
+    @Test
+    public void testRoundTripWithoutUserIdAndIds() {
+
+        CouponKafkaMessage decoded = CouponKafkaMessageCodec.decode(
+                CouponKafkaMessageCodec.encode(new CouponKafkaMessage(
+                        CouponStatus.EXPIRED.getCode(), Collections.emptyList(), null)));
+
+        Assert.assertEquals(CouponStatus.EXPIRED.getCode(), decoded.getStatus());
+        Assert.assertNull(decoded.getUserId());
+        Assert.assertTrue(decoded.getIds().isEmpty());
+    }
+
+    @Test
+    public void testRandomRoundTrip() {
+
+        Random random = new Random(0);
+        for (int round = 0; round < 1000; ++round) {
+            List<Integer> ids = new ArrayList<>();
+            for (int i = random.nextInt(50); i > 0; --i) {
+                ids.add(random.nextInt());
+            }
+            Long userId = random.nextBoolean() ? random.nextLong() : null;
+            CouponKafkaMessage decoded = CouponKafkaMessageCodec.decode(
+                    CouponKafkaMessageCodec.encode(new CouponKafkaMessage(
+                            CouponStatus.USED.getCode(), ids, userId)));
+
+            Collections.sort(ids);
+            Assert.assertEquals(ids, decoded.getIds());
+            Assert.assertEquals(userId, decoded.getUserId());
+        }
+    }
+
+    @Test
+    public void testConsecutiveIdsTakeOneByteEach() {
+
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1000000; id < 1000500; ++id) {
+            ids.add(id);
+        }
+        byte[] data = CouponKafkaMessageCodec.encode(
+                new CouponKafkaMessage(CouponStatus.USED.getCode(), ids, null));
+        // 头部 4 字节 + 个数 2 字节 + 第一个 id 3 字节 + 499 个差值
+        Assert.assertEquals(4 + 2 + 3 + 499, data.length);
+    }
+
+    @Test
+    public void testDeserializerReadsBothFormats() {
+
+        CouponKafkaMessage message = new CouponKafkaMessage(CouponStatus.USED.getCode(),
+                Arrays.asList(1, 2, 3), 10001L);
+        CouponKafkaMessageDeserializer deserializer = new CouponKafkaMessageDeserializer();
+
+        Assert.assertEquals(message, deserializer.deserialize("topic",
+                new CouponKafkaMessageSerializer(true).serialize("topic", message)));
+        Assert.assertEquals(message, deserializer.deserialize("topic",
+                new CouponKafkaMessageSerializer(false).serialize("topic", message)));
+        Assert.assertEquals(message, deserializer.deserialize("topic",
+                JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testDeserializerSkipsMalformedMessages() {
+
+        CouponKafkaMessageDeserializer deserializer = new CouponKafkaMessageDeserializer();
+        byte[] data = CouponKafkaMessageCodec.encode(new CouponKafkaMessage(
+                CouponStatus.USED.getCode(), Arrays.asList(1, 2, 3), 10001L));
+
+        Assert.assertNull(deserializer.deserialize("topic", Arrays.copyOf(data, data.length - 1)));
+        data[1] = CouponKafkaMessageCodec.VERSION + 1;
+        Assert.assertNull(deserializer.deserialize("topic", data));
+        Assert.assertNull(deserializer.deserialize("topic",
+                "not json".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,179 @@
+package com.imooc.coupon.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.config.KafkaProducerProperties;
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.constant.CouponStatus;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>优惠券状态消息发送测试</h1>
+ */
+public class KafkaProducerServiceImplTest {
+
+    private KafkaTemplate<String, CouponKafkaMessage> kafkaTemplate;
+
+    private ListOperations<String, String> listOperations;
+
+    private KafkaProducerProperties properties;
+
+    private MeterRegistry registry;
+
+    private KafkaProducerServiceImpl producerService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+
+        kafkaTemplate = Mockito.mock(KafkaTemplate.class);
+        listOperations = Mockito.mock(ListOperations.class);
+        properties = new KafkaProducerProperties();
+        registry = new SimpleMeterRegistry();
+        Mockito.when(kafkaTemplate.send(ArgumentMatchers.anyString(),
+                ArgumentMatchers.anyInt(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> succeeded());
+        Mockito.when(kafkaTemplate.partitionsFor(Constant.Kafka.TOPIC))
+                .thenReturn(partitions(1));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (null != producerService) {
+            producerService.shutdown();
+        }
+    }
+
+    /**
+     * <h2>队列已满时有限等待, 之后写入 Redis 重试列表</h2>
+     */
+    @Test
+    public void testQueueFullPersistsForRetry() {
+
+        properties.setQueueCapacity(1);
+        properties.setOfferTimeoutMs(10);
+        // 不启动合并线程, 队列不会被取走
+        producerService = newService();
+
+        long start = System.nanoTime();
+        producerService.sendCouponStatus(1L, CouponStatus.USED, Collections.singletonList(1));
+        producerService.sendCouponStatus(2L, CouponStatus.USED, Collections.singletonList(2));
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        Mockito.verify(listOperations).rightPush(Constant.RedisPrefix.COUPON_STATUS_RETRY,
+                JSON.toJSONString(new CouponKafkaMessage(CouponStatus.USED.getCode(),
+                        Collections.singletonList(2), 2L)));
+        Assert.assertEquals(1.0, registry.counter("coupon.kafka.producer.rejected").count(), 0.0);
+    }
+
+    /**
+     * <h2>发送失败的合并消息退避之后重新发送到同一个分区</h2>
+     */
+    @Test
+    public void testFailedSendIsRetried() {
+
+        SettableListenableFuture<Object> failed = new SettableListenableFuture<>();
+        failed.setException(new IllegalStateException("broker down"));
+        Mockito.when(kafkaTemplate.send(ArgumentMatchers.anyString(),
+                ArgumentMatchers.anyInt(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> failed)
+                .thenAnswer(invocation -> succeeded());
+        properties.setRetryBackoffMs(10);
+        producerService = newService();
+        producerService.start();
+
+        producerService.sendCouponStatus(1L, CouponStatus.USED, Collections.singletonList(1));
+
+        Mockito.verify(kafkaTemplate, Mockito.timeout(5000).times(2)).send(
+                ArgumentMatchers.eq(Constant.Kafka.TOPIC), ArgumentMatchers.eq(0),
+                ArgumentMatchers.isNull(), ArgumentMatchers.any());
+        Assert.assertEquals(1.0, registry.counter("coupon.kafka.producer.failed").count(), 0.0);
+        Mockito.verify(listOperations, Mockito.never()).rightPush(
+                ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+    }
+
+    /**
+     * <h2>Redis 重试列表中的消息以 userId 为 key 重新发送</h2>
+     */
+    @Test
+    public void testResendPersisted() {
+
+        CouponKafkaMessage message = new CouponKafkaMessage(CouponStatus.USED.getCode(),
+                Collections.singletonList(7), 10001L);
+        Mockito.when(listOperations.leftPop(Constant.RedisPrefix.COUPON_STATUS_RETRY))
+                .thenReturn(JSON.toJSONString(message))
+                .thenReturn(null);
+        Mockito.when(kafkaTemplate.send(ArgumentMatchers.anyString(),
+                ArgumentMatchers.anyString(), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> succeeded());
+        producerService = newService();
+        producerService.start();
+
+        Mockito.verify(kafkaTemplate, Mockito.timeout(5000)).send(
+                Constant.Kafka.TOPIC, "10001", message);
+    }
+
+    /**
+     * <h2>Topic 扩容后按新的分区数合并</h2>
+     */
+    @Test
+    public void testRefreshPartitions() {
+
+        Mockito.when(kafkaTemplate.partitionsFor(Constant.Kafka.TOPIC))
+                .thenReturn(partitions(1))
+                .thenReturn(partitions(4));
+        properties.setPartitionRefreshMs(0);
+        properties.setLingerMs(0);
+        producerService = newService();
+        producerService.start();
+
+        long userId = 10001L;
+        int partition = Utils.toPositive(Utils.murmur2(String.valueOf(userId)
+                .getBytes(StandardCharsets.UTF_8))) % 4;
+        producerService.sendCouponStatus(userId, CouponStatus.USED,
+                Collections.singletonList(1));
+
+        Mockito.verify(kafkaTemplate, Mockito.timeout(5000)).send(
+                ArgumentMatchers.eq(Constant.Kafka.TOPIC), ArgumentMatchers.eq(partition),
+                ArgumentMatchers.isNull(), ArgumentMatchers.any());
+    }
+
+    private KafkaProducerServiceImpl newService() {
+        StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        Mockito.when(redisTemplate.opsForList()).thenReturn(listOperations);
+        return new KafkaProducerServiceImpl(kafkaTemplate, redisTemplate, properties, registry);
+    }
+
+    private static SettableListenableFuture<Object> succeeded() {
+        SettableListenableFuture<Object> future = new SettableListenableFuture<>();
+        future.set(null);
+        return future;
+    }
+
+    private static List<PartitionInfo> partitions(int count) {
+        List<PartitionInfo> infos = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            infos.add(new PartitionInfo(Constant.Kafka.TOPIC, i, null, null, null));
+        }
+        return infos;
+    }
+}
@@ -0,0 +1,69 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.config.KafkaConsumerProperties;
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.constant.CouponStatus;
+import com.imooc.coupon.dao.CouponDao;
+import com.imooc.coupon.serialization.CouponKafkaMessageCodec;
+import com.imooc.coupon.vo.CouponKafkaMessage;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h1>优惠券 Kafka 消息消费测试</h1>
+ */
+public class KafkaServiceImplTest {
+
+    private CouponDao couponDao;
+
+    private KafkaServiceImpl kafkaService;
+
+    @Before
+    public void setUp() {
+
+        couponDao = Mockito.mock(CouponDao.class);
+        kafkaService = new KafkaServiceImpl(couponDao, new KafkaConsumerProperties(),
+                Mockito.mock(PlatformTransactionManager.class));
+    }
+
+    /**
+     * <h2>状态缺失或者未知的消息跳过, 同一批中的其他消息正常处理并确认 offset</h2>
+     */
+    @Test
+    public void testSkipMessagesWithInvalidStatus() {
+
+        // 二进制消息中没有状态时解码为 null
+        CouponKafkaMessage binaryWithoutStatus = CouponKafkaMessageCodec.decode(
+                CouponKafkaMessageCodec.encode(new CouponKafkaMessage(
+                        null, Collections.singletonList(1), 10001L)));
+        List<ConsumerRecord<?, ?>> records = Arrays.asList(
+                record("{\"ids\":[2]}"),
+                record("{\"status\":9,\"ids\":[3]}"),
+                record(binaryWithoutStatus),
+                record(new CouponKafkaMessage(CouponStatus.USED.getCode(),
+                        Collections.singletonList(4), 10001L))
+        );
+        Acknowledgment ack = Mockito.mock(Acknowledgment.class);
+
+        kafkaService.consumeCouponKafkaMessage(records, ack);
+
+        Mockito.verify(couponDao).transferStatusByIds(CouponStatus.USABLE,
+                CouponStatus.USED, Collections.singletonList(4));
+        Mockito.verify(couponDao, Mockito.times(1)).transferStatusByIds(
+                ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+        Mockito.verify(ack).acknowledge();
+    }
+
+    private static ConsumerRecord<?, ?> record(Object value) {
+        return new ConsumerRecord<>(Constant.Kafka.TOPIC, 0, 0L, null, value);
+    }
+}
@@ -0,0 +1,107 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.config.CouponCodePrefetchProperties;
+import com.imooc.coupon.constant.AcquireStatus;
+import com.imooc.coupon.vo.AcquireCouponCodeResult;
+import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.TemplateRule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h1>优惠券码预取与归还测试</h1>
+ */
+public class RedisServiceImplTest {
+
+    private StringRedisTemplate redisTemplate;
+
+    private ListOperations<String, String> listOperations;
+
+    private RedisServiceImpl redisService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+
+        redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        listOperations = Mockito.mock(ListOperations.class);
+        RedisOperations<String, String> operations = Mockito.mock(RedisOperations.class);
+        Mockito.when(operations.opsForList()).thenReturn(listOperations);
+        Mockito.when(redisTemplate.executePipelined(ArgumentMatchers.any(SessionCallback.class)))
+                .thenAnswer(invocation -> {
+                    invocation.<SessionCallback<Object>>getArgument(0).execute(operations);
+                    return Collections.emptyList();
+                });
+
+        CouponCodePrefetchProperties prefetch = new CouponCodePrefetchProperties();
+        prefetch.setSize(6);
+        redisService = new RedisServiceImpl(redisTemplate, prefetch, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReleaseBufferRoundRobin() {
+
+        Mockito.when(redisTemplate.execute(ArgumentMatchers.any(RedisScript.class),
+                ArgumentMatchers.anyList(), ArgumentMatchers.<Object>any()))
+                .thenReturn(Arrays.asList("OK", "c0", "c1", "c2", "c3", "c4", "c5"));
+
+        AcquireCouponCodeResult result = redisService.tryToAcquireCouponCodeFromCache(
+                10001L, template(3), 0);
+        Assert.assertEquals(AcquireStatus.OK, result.getStatus());
+        Assert.assertEquals("c0", result.getCouponCode());
+
+        redisService.releaseCouponCodeBuffer(Collections.emptyList());
+        Mockito.verify(listOperations).leftPushAll("imooc_coupon_template_code_{7}_0",
+                Arrays.asList("c1", "c4"));
+        Mockito.verify(listOperations).leftPushAll("imooc_coupon_template_code_{7}_1",
+                Arrays.asList("c2", "c5"));
+        Mockito.verify(listOperations).leftPushAll("imooc_coupon_template_code_{7}_2",
+                Collections.singletonList("c3"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAcquireKeysShareHashTag() {
+
+        Mockito.when(redisTemplate.execute(ArgumentMatchers.any(RedisScript.class),
+                ArgumentMatchers.anyList(), ArgumentMatchers.<Object>any()))
+                .thenReturn(Collections.singletonList("OUT_OF_STOCK"));
+
+        AcquireCouponCodeResult result = redisService.tryToAcquireCouponCodeFromCache(
+                10001L, template(3), 0);
+        Assert.assertEquals(AcquireStatus.OUT_OF_STOCK, result.getStatus());
+
+        ArgumentCaptor<List> keys = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(redisTemplate).execute(ArgumentMatchers.any(RedisScript.class),
+                keys.capture(), ArgumentMatchers.<Object>any());
+        // 10001 % 3 == 2, 从第 2 个分片开始
+        Assert.assertEquals(Arrays.asList("imooc_coupon_template_claim_{7}",
+                "imooc_coupon_template_code_{7}_2", "imooc_coupon_template_code_{7}_0",
+                "imooc_coupon_template_code_{7}_1"), keys.getValue());
+    }
+
+    private static CouponTemplateSDK template(int shards) {
+        TemplateRule rule = new TemplateRule();
+        rule.setLimitation(1);
+        CouponTemplateSDK template = new CouponTemplateSDK();
+        template.setId(7);
+        template.setRule(rule);
+        template.setCodeShards(shards);
+        return template;
+    }
+}
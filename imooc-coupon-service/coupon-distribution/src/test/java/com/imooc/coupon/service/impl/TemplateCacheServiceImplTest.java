@@ -0,0 +1,96 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.config.TemplateCacheProperties;
+import com.imooc.coupon.feign.TemplateClient;
+import com.imooc.coupon.vo.CommonResponse;
+import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.TemplateChanges;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <h1>优惠券模板缓存增量同步测试</h1>
+ */
+public class TemplateCacheServiceImplTest {
+
+    private TemplateClient templateClient;
+
+    private TemplateCacheServiceImpl cacheService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+
+        templateClient = Mockito.mock(TemplateClient.class);
+        StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = Mockito.mock(ValueOperations.class);
+        Mockito.when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        // 二级缓存总是未命中
+        Mockito.when(valueOperations.multiGet(ArgumentMatchers.anyCollection())).thenAnswer(
+                invocation -> Arrays.asList(new String[
+                        invocation.<Collection<?>>getArgument(0).size()]));
+        cacheService = new TemplateCacheServiceImpl(templateClient, redisTemplate,
+                new TemplateCacheProperties(), new SimpleMeterRegistry());
+
+        Map<Integer, CouponTemplateSDK> loaded = new HashMap<>();
+        loaded.put(1, sdk(1, 1L));
+        loaded.put(2, sdk(2, 1L));
+        Mockito.when(templateClient.findIds2TemplateSDK(ArgumentMatchers.anyCollection()))
+                .thenReturn(new CommonResponse<>(0, "", loaded));
+        Assert.assertEquals(2, cacheService.findIds2TemplateSDK(Arrays.asList(1, 2)).size());
+    }
+
+    @Test
+    public void testSyncReplacesAndRemoves() {
+
+        Mockito.when(templateClient.findTemplateChanges(-1L)).thenReturn(
+                new CommonResponse<>(0, "", new TemplateChanges(5L,
+                        Arrays.asList(sdk(1, 5L), sdk(3, 4L)),
+                        Collections.singletonList(2))));
+        Mockito.when(templateClient.findTemplateChanges(5L)).thenReturn(
+                new CommonResponse<>(0, "", new TemplateChanges(5L,
+                        Collections.emptyList(), Collections.emptyList())));
+
+        cacheService.syncTemplateChanges();
+        cacheService.syncTemplateChanges();
+        Mockito.verify(templateClient).findTemplateChanges(5L);
+
+        // 模板 1 替换为新版本, 模板 2 需要重新加载
+        Map<Integer, CouponTemplateSDK> cached =
+                cacheService.findIds2TemplateSDK(Collections.singletonList(1));
+        Assert.assertEquals(Long.valueOf(5L), cached.get(1).getVersion());
+        cacheService.findIds2TemplateSDK(Collections.singletonList(2));
+        Mockito.verify(templateClient).findIds2TemplateSDK(Collections.singletonList(2));
+    }
+
+    @Test
+    public void testFallbackKeepsVersion() {
+
+        Mockito.when(templateClient.findTemplateChanges(-1L)).thenReturn(
+                new CommonResponse<>(-1, "fallback", new TemplateChanges(-1L,
+                        Collections.emptyList(), Collections.emptyList())));
+
+        cacheService.syncTemplateChanges();
+        cacheService.syncTemplateChanges();
+        Mockito.verify(templateClient, Mockito.times(2)).findTemplateChanges(-1L);
+    }
+
+    private static CouponTemplateSDK sdk(Integer id, Long version) {
+        CouponTemplateSDK sdk = new CouponTemplateSDK();
+        sdk.setId(id);
+        sdk.setVersion(version);
+        return sdk;
+    }
+}
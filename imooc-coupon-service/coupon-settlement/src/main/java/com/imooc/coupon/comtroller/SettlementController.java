@@ -2,7 +2,9 @@ package com.imooc.coupon.comtroller;
 
 import com.alibaba.fastjson.JSON;
 import com.imooc.coupon.exception.CouponException;
-import com.imooc.coupon.executor.ExecuteManager;
+import com.imooc.coupon.executor.BatchExecuteManager;
+import com.imooc.coupon.executor.CouponCombinationOptimizer;
+import com.imooc.coupon.executor.SettlementResultCache;
 import com.imooc.coupon.vo.SettlementInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +12,8 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * <h1>结算服务 Controller</h1>
  */
@@ -17,12 +21,22 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 public class SettlementController {
 
-    /** 结算规则执行管理器 */
-    private final ExecuteManager executeManager;
+    /** 结算结果缓存, 未命中时交给结算规则执行管理器 */
+    private final SettlementResultCache resultCache;
+
+    /** 批量结算管理器 */
+    private final BatchExecuteManager batchExecuteManager;
+
+    /** 最优优惠券组合搜索 */
+    private final CouponCombinationOptimizer optimizer;
 
     @Autowired
-    public SettlementController(ExecuteManager executeManager) {
-        this.executeManager = executeManager;
+    public SettlementController(SettlementResultCache resultCache,
+                                BatchExecuteManager batchExecuteManager,
+                                CouponCombinationOptimizer optimizer) {
+        this.resultCache = resultCache;
+        this.batchExecuteManager = batchExecuteManager;
+        this.optimizer = optimizer;
     }
 
     /**
@@ -34,6 +48,32 @@ public class SettlementController {
     public SettlementInfo computeRule(@RequestBody SettlementInfo settlement)
             throws CouponException {
         log.info("settlement: {}", JSON.toJSONString(settlement));
-        return executeManager.computeRule(settlement);
+        return resultCache.computeRule(settlement);
+    }
+
+    /**
+     * <h2>批量优惠券结算</h2>
+     * 多个子订单并行结算, 结果与请求顺序一致, 单个结算失败时该项 employ = false, cost = -1
+     * 127.0.0.1:7003/coupon-settlement/settlement/compute/batch
+     * 127.0.0.1:9000/imooc/coupon-settlement/settlement/compute/batch
+     * */
+    @PostMapping("/settlement/compute/batch")
+    public List<SettlementInfo> computeRuleBatch(
+            @RequestBody List<SettlementInfo> settlements) throws CouponException {
+        log.info("batch settlement size: {}", settlements.size());
+        return batchExecuteManager.computeRule(settlements);
+    }
+
+    /**
+     * <h2>最优优惠券组合</h2>
+     * 传入用户所有可用的优惠券, 返回结算价格最低的组合及其结算结果
+     * 127.0.0.1:7003/coupon-settlement/settlement/optimize
+     * 127.0.0.1:9000/imooc/coupon-settlement/settlement/optimize
+     * */
+    @PostMapping("/settlement/optimize")
+    public SettlementInfo optimize(@RequestBody SettlementInfo settlement)
+            throws CouponException {
+        log.info("optimize settlement: {}", JSON.toJSONString(settlement));
+        return optimizer.optimize(settlement);
     }
 }
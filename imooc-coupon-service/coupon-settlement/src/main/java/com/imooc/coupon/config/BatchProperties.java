@@ -0,0 +1,20 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>批量结算相关配置</h1>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.settlement.batch")
+public class BatchProperties {
+
+    /** 批量结算线程池(ForkJoinPool)的并行度 */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** 单次批量结算最多包含的结算信息个数 */
+    private int maxSize = 100;
+}
@@ -0,0 +1,17 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>最优优惠券组合搜索相关配置</h1>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.settlement.optimize")
+public class OptimizeProperties {
+
+    /** 单次搜索的时间预算(毫秒), 超时后返回已经找到的最优组合 */
+    private long budget = 50;
+}
@@ -0,0 +1,23 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>结算结果缓存相关配置</h1>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.settlement.cache")
+public class SettlementCacheProperties {
+
+    /** 是否缓存结算结果 */
+    private boolean enabled = true;
+
+    /** 缓存的结算结果个数上限, 超过后按 W-TinyLFU 淘汰 */
+    private long maximumSize = 100000;
+
+    /** 结算结果的缓存时间(秒) */
+    private long expireAfterWrite = 600;
+}
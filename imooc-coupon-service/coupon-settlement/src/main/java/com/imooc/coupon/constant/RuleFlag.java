@@ -11,14 +11,27 @@ import lombok.Getter;
 @AllArgsConstructor
 public enum RuleFlag {
 
-    // 单类别优惠券定义
+    // 单类别优惠券定义, 多类别优惠券由 ExecuteManager 依次使用单类别规则叠加计算
     MANJIAN("满减券的计算规则"),
     ZHEKOU("折扣券的计算规则"),
-    LIJIAN("立减券的计算规则"),
-
-    // 多类别优惠券定义
-    MANJIAN_ZHEKOU("满减券 + 折扣券的计算规则");
+    LIJIAN("立减券的计算规则");
 
     private String description;
 
+    /** 优惠券分类 -> 规则类型, 按 CouponCategory.ordinal 索引 */
+    private static final RuleFlag[] BY_CATEGORY =
+            new RuleFlag[CouponCategory.values().length];
+
+    static {
+        for (CouponCategory category : CouponCategory.values()) {
+            BY_CATEGORY[category.ordinal()] = valueOf(category.name());
+        }
+    }
+
+    /**
+     * <h2>优惠券分类对应的单类别规则类型</h2>
+     * */
+    public static RuleFlag of(CouponCategory category) {
+        return BY_CATEGORY[category.ordinal()];
+    }
 }
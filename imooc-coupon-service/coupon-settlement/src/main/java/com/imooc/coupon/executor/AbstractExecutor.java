@@ -1,14 +1,11 @@
 package com.imooc.coupon.executor;
 
-import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.util.MoneyUtils;
 import com.imooc.coupon.vo.GoodsInfo;
 import com.imooc.coupon.vo.SettlementInfo;
-import org.apache.commons.collections4.CollectionUtils;
 
-import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * <h1>规则执行器抽象类, 定义通用方法</h1>
@@ -23,32 +20,39 @@ public abstract class AbstractExecutor {
      * @param settlement {@link SettlementInfo}
      * @return true or false
      * */
-    @SuppressWarnings("all")
     protected boolean isGoodsTypeSatisfy(SettlementInfo settlement){
 
-        List<Integer> templateGoodsType = JSON.parseObject(settlement.getCouponAndTemplateInfos().get(0)
-        .getTemplate().getRule().getUsage().getGoodsType(),List.class);
-
-        List<Integer> goodsType = settlement.getGoodsInfos().stream()
-                .map(GoodsInfo::getType)
-                .collect(Collectors.toList());
+        CompiledTemplateRule rule = compiledRule(
+                settlement.getCouponAndTemplateInfos().get(0));
+        for (GoodsInfo goods : settlement.getGoodsInfos()) {
+            if (rule.acceptsGoodsType(goods.getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        return CollectionUtils.isNotEmpty(
-                CollectionUtils.intersection(templateGoodsType,goodsType) //取交集
-        );
+    /**
+     * <h2>获取优惠券模板编译后的规则</h2>
+     * @param ct {@link SettlementInfo.CouponAndTemplateInfo}
+     * @return {@link CompiledTemplateRule}
+     * */
+    protected CompiledTemplateRule compiledRule(
+            SettlementInfo.CouponAndTemplateInfo ct) {
+        return CompiledTemplateRule.of(ct.getTemplate());
     }
 
     /**
      * <h2>处理商品类型与优惠券限制不匹配的情况</h2>
      * @param settlement {@link SettlementInfo} 用户传递的结算信息
-     * @param goodsSum 商品总价(原价)
+     * @param goodsSum 商品总价(原价, 分)
      * @return {@link SettlementInfo} 已经修改过的结算信息
      * */
-    protected SettlementInfo processGoodsTypeNotSatisfy(SettlementInfo settlement, double goodsSum){
+    protected SettlementInfo processGoodsTypeNotSatisfy(SettlementInfo settlement, long goodsSum){
         boolean isGoodsTypeSatisfy = isGoodsTypeSatisfy(settlement);
         // 当商品类型不满足时, 直接返回总价, 并清空优惠券
         if (!isGoodsTypeSatisfy){
-            settlement.setCost(goodsSum);
+            settlement.setCost(MoneyUtils.toYuan(goodsSum));
             settlement.setCouponAndTemplateInfos(Collections.emptyList());
             return settlement;
         }
@@ -56,30 +60,33 @@ public abstract class AbstractExecutor {
     }
 
     /**
-     * <h1>商品总价</h1>
+     * <h1>商品总价(分)</h1>
      * @param goodsInfos
      * @return goodsSum
      */
-    protected double goodsCostSum(List<GoodsInfo> goodsInfos){
-        return goodsInfos.stream()
-                .mapToDouble(g->g.getPrice() * g.getCount())
-                .sum();
+    protected long goodsCostSum(List<GoodsInfo> goodsInfos){
+        long goodsSum = 0;
+        for (GoodsInfo g : goodsInfos) {
+            goodsSum = Math.addExact(goodsSum,
+                    MoneyUtils.multiply(g.getPrice(), g.getCount()));
+        }
+        return goodsSum;
     }
 
     /**
-     * <h1>返回最小支付费用</h1>
-     * @return 0.1
+     * <h1>返回最小支付费用(分)</h1>
+     * @return 10, 即 0.1 元
      */
-    protected double minCost(){
-        return 0.1;
+    protected long minCost(){
+        return 10L;
     }
 
     /**
-     * <h1>保留2位小数</h1>
-     * @param value
+     * <h1>使用优惠券之后的价格不低于最小支付费用, 并转换为元</h1>
+     * @param cost 金额(分)
      * @return 0.00
      */
-    protected double retain2Decimals(double value){
-        return new BigDecimal(value).setScale(2,BigDecimal.ROUND_HALF_UP).doubleValue();
+    protected double settleCost(long cost){
+        return MoneyUtils.toYuan(Math.max(cost, minCost()));
     }
 }
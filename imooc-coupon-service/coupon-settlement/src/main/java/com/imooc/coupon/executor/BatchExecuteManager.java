@@ -0,0 +1,88 @@
+package com.imooc.coupon.executor;
+
+import com.imooc.coupon.config.BatchProperties;
+import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.vo.SettlementInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * <h1>批量结算管理器</h1>
+ * 多个子订单的结算在固定并行度的 ForkJoinPool 中并行计算, 每个子订单仍然通过
+ * SettlementResultCache 结算; 结果与请求顺序一致, 单个结算失败不影响其他结算
+ */
+@Slf4j
+@Component
+public class BatchExecuteManager {
+
+    private final SettlementResultCache resultCache;
+
+    private final BatchProperties properties;
+
+    /** 批量结算线程池, 与 Web 容器线程隔离 */
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public BatchExecuteManager(SettlementResultCache resultCache,
+                               BatchProperties properties) {
+        this.resultCache = resultCache;
+        this.properties = properties;
+        this.pool = new ForkJoinPool(properties.getParallelism(), p -> {
+            ForkJoinWorkerThread thread =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("ImoocSettlement_" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * <h2>批量结算</h2>
+     * 单个结算失败时该项 employ = false, cost = -1
+     * @param settlements 多个子订单的结算信息
+     * @return 与请求顺序一致的结算结果
+     * */
+    public List<SettlementInfo> computeRule(List<SettlementInfo> settlements)
+            throws CouponException {
+
+        if (settlements.size() > properties.getMaxSize()) {
+            throw new CouponException("Too Many Settlements In One Batch: "
+                    + settlements.size());
+        }
+
+        List<ForkJoinTask<SettlementInfo>> tasks = new ArrayList<>(settlements.size());
+        settlements.forEach(s -> tasks.add(pool.submit(() -> computeOne(s))));
+
+        List<SettlementInfo> result = new ArrayList<>(settlements.size());
+        tasks.forEach(t -> result.add(t.join()));
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * <h2>结算一个子订单, 失败时标记该项而不是抛出异常</h2>
+     * */
+    private SettlementInfo computeOne(SettlementInfo settlement) {
+
+        try {
+            return resultCache.computeRule(settlement);
+        } catch (Exception ex) {
+            log.error("Batch Settlement Item Error: {}, {}",
+                    settlement.getUserId(), ex.getMessage());
+            settlement.setEmploy(false);
+            settlement.setCost(-1.0);
+            return settlement;
+        }
+    }
+}
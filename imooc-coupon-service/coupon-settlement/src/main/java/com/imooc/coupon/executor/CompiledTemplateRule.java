@@ -0,0 +1,189 @@
+package com.imooc.coupon.executor;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.imooc.coupon.constant.CouponCategory;
+import com.imooc.coupon.util.MoneyUtils;
+import com.imooc.coupon.vo.CouponTemplateSDK;
+import lombok.Getter;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <h1>编译后的优惠券模板规则</h1>
+ * TemplateRule 中的 json 字符串在编译时解析一次, 结算时不再解析:
+ * 1. 商品类型: BitSet, 按商品类型取一位
+ * 2. 可以叠加使用的优惠券编码: HashSet, 包含模板自身的编码
+ * 3. 折扣: 基本类型, 门槛为分
+ * 以参与编译的规则内容为 key 缓存(有个数上限), 内容变化时重新编译;
+ * 不使用请求中携带的模板版本号, 客户端传入错误的版本号也不会取到其他内容编译的规则
+ */
+@Getter
+public final class CompiledTemplateRule {
+
+    /** 缓存的编译结果个数上限 */
+    private static final int MAXIMUM_SIZE = 10000;
+
+    /** 规则内容 -> 编译后的规则 */
+    private static final Cache<RuleSource, CompiledTemplateRule> COMPILED =
+            Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+
+    /** 优惠券模板主键 */
+    private final int templateId;
+
+    /** 优惠券分类 */
+    private final CouponCategory category;
+
+    /** 优惠券模板的唯一编码: key + 4 位模板 id */
+    private final String templateKey;
+
+    /** 折扣基准(分), 需要满多少才可用 */
+    private final long base;
+
+    /** 折扣额度: 满减(20 元), 折扣(85 折), 立减(10 元) */
+    private final int quota;
+
+    /** 满减/立减的额度(分) */
+    private final long quotaCents;
+
+    /** 可以使用的商品类型 */
+    private final BitSet goodsTypes;
+
+    /** 可以叠加使用的优惠券编码, 包含 templateKey */
+    private final Set<String> sharedKeys;
+
+    /** 参与编译的规则内容的 64 位指纹, 结算结果缓存用来区分同一模板的不同规则 */
+    private final long fingerprint;
+
+    @SuppressWarnings("all")
+    private CompiledTemplateRule(CouponTemplateSDK template, RuleSource source) {
+
+        this.templateId = template.getId();
+        this.fingerprint = source.fingerprint();
+        this.category = CouponCategory.of(template.getCategory());
+        this.templateKey = template.getKey()
+                + String.format("%04d", template.getId());
+        this.base = MoneyUtils.yuanToCents(
+                template.getRule().getDiscount().getBase());
+        this.quota = template.getRule().getDiscount().getQuota();
+        this.quotaCents = MoneyUtils.yuanToCents(quota);
+
+        this.goodsTypes = new BitSet();
+        List<Integer> types = JSON.parseObject(
+                template.getRule().getUsage().getGoodsType(), List.class);
+        types.stream().filter(t -> t >= 0).forEach(goodsTypes::set);
+
+        Set<String> keys = new HashSet<>(JSON.parseObject(
+                template.getRule().getWeight(), List.class));
+        keys.add(templateKey);
+        this.sharedKeys = Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * <h2>获取模板编译后的规则</h2>
+     * 缓存中有相同规则内容的编译结果时直接返回, 否则编译并放入缓存
+     * @param template {@link CouponTemplateSDK}
+     * @return {@link CompiledTemplateRule}
+     */
+    public static CompiledTemplateRule of(CouponTemplateSDK template) {
+        return COMPILED.get(new RuleSource(template),
+                source -> new CompiledTemplateRule(template, source));
+    }
+
+    /**
+     * <h2>商品类型是否可以使用该优惠券</h2>
+     * */
+    public boolean acceptsGoodsType(int goodsType) {
+        return goodsType >= 0 && goodsTypes.get(goodsType);
+    }
+
+    /**
+     * <h2>两张优惠券是否可以叠加使用</h2>
+     * 任意一方的 weight 中包含另一方的编码即可
+     * */
+    public boolean canShareWith(CompiledTemplateRule other) {
+        return sharedKeys.contains(other.templateKey)
+                || other.sharedKeys.contains(templateKey);
+    }
+
+    /**
+     * <h2>参与编译的模板字段, 作为编译结果缓存的 key</h2>
+     */
+    private static final class RuleSource {
+
+        private final Integer templateId;
+
+        private final String category;
+
+        private final String key;
+
+        private final Integer base;
+
+        private final Integer quota;
+
+        private final String goodsType;
+
+        private final String weight;
+
+        private final int hash;
+
+        private RuleSource(CouponTemplateSDK template) {
+            this.templateId = template.getId();
+            this.category = template.getCategory();
+            this.key = template.getKey();
+            this.base = template.getRule().getDiscount().getBase();
+            this.quota = template.getRule().getDiscount().getQuota();
+            this.goodsType = template.getRule().getUsage().getGoodsType();
+            this.weight = template.getRule().getWeight();
+            this.hash = Objects.hash(templateId, category, key, base, quota,
+                    goodsType, weight);
+        }
+
+        /**
+         * <h2>规则内容的 FNV-1a 64 位指纹</h2>
+         * */
+        private long fingerprint() {
+            long h = 0xcbf29ce484222325L;
+            for (Object field : new Object[]{templateId, category, key, base, quota,
+                    goodsType, weight}) {
+                String value = String.valueOf(field);
+                for (int i = 0; i < value.length(); ++i) {
+                    h = (h ^ value.charAt(i)) * 0x100000001b3L;
+                }
+                // 字段之间的分隔, 避免 "ab" + "c" 与 "a" + "bc" 相同
+                h = (h ^ 0xFFFF) * 0x100000001b3L;
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RuleSource)) {
+                return false;
+            }
+            RuleSource that = (RuleSource) o;
+            return hash == that.hash
+                    && Objects.equals(templateId, that.templateId)
+                    && Objects.equals(category, that.category)
+                    && Objects.equals(key, that.key)
+                    && Objects.equals(base, that.base)
+                    && Objects.equals(quota, that.quota)
+                    && Objects.equals(goodsType, that.goodsType)
+                    && Objects.equals(weight, that.weight);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.imooc.coupon.executor;
+
+import com.imooc.coupon.config.OptimizeProperties;
+import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.util.MoneyUtils;
+import com.imooc.coupon.vo.GoodsInfo;
+import com.imooc.coupon.vo.SettlementInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>最优优惠券组合搜索</h1>
+ * 从用户所有可用的优惠券中找出结算价格最低的组合, 规则与叠加计算一致:
+ * 每个分类最多一张, 商品类型全部覆盖, 任意两张可以共用, 满减需要满足门槛
+ * 1. 按分类优先级逐层选择: 选一张该分类的优惠券, 或者不选
+ * 2. 同一个模板的优惠券效果相同, 只保留一张; 每层按优惠力度从大到小尝试
+ * 3. 分支限界: 剩余各层都使用力度最大的优惠券也不能优于当前最优解时剪枝
+ * 4. 超过时间预算后停止搜索, 返回已经找到的最优组合
+ * 找到的组合最终交给 ExecuteManager 计算, 结果与 /settlement/compute 一致
+ */
+@Slf4j
+@Component
+public class CouponCombinationOptimizer extends AbstractExecutor {
+
+    private final ExecuteManager executeManager;
+
+    private final OptimizeProperties properties;
+
+    @Autowired
+    public CouponCombinationOptimizer(ExecuteManager executeManager,
+                                      OptimizeProperties properties) {
+        this.executeManager = executeManager;
+        this.properties = properties;
+    }
+
+    /**
+     * <h2>搜索结算价格最低的优惠券组合</h2>
+     * @param settlement {@link SettlementInfo} 包含用户所有可用的优惠券
+     * @return {@link SettlementInfo} 只保留最优组合中的优惠券, 没有可用组合时返回商品原价
+     * */
+    public SettlementInfo optimize(SettlementInfo settlement) throws CouponException {
+
+        long goodsSum = goodsCostSum(settlement.getGoodsInfos());
+
+        List<SettlementInfo.CouponAndTemplateInfo> best = Collections.emptyList();
+        if (CollectionUtils.isNotEmpty(settlement.getCouponAndTemplateInfos())) {
+            Search search = new Search(settlement, goodsSum, System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(properties.getBudget()));
+            search.run();
+            best = search.bestCombination();
+        }
+
+        if (best.isEmpty()) {
+            settlement.setCost(MoneyUtils.toYuan(goodsSum));
+            settlement.setCouponAndTemplateInfos(Collections.emptyList());
+            return settlement;
+        }
+        settlement.setCouponAndTemplateInfos(best);
+        return executeManager.computeRule(settlement);
+    }
+
+    /**
+     * <h2>一张候选优惠券</h2>
+     */
+    private static class Candidate {
+
+        private final SettlementInfo.CouponAndTemplateInfo ct;
+
+        private final CompiledTemplateRule rule;
+
+        private final RuleExecutor executor;
+
+        private Candidate(SettlementInfo.CouponAndTemplateInfo ct,
+                          CompiledTemplateRule rule, RuleExecutor executor) {
+            this.ct = ct;
+            this.rule = rule;
+            this.executor = executor;
+        }
+
+        private long apply(long cost) {
+            return executor.applyRule(cost, rule);
+        }
+    }
+
+    /**
+     * <h2>一次搜索的状态</h2>
+     */
+    private class Search {
+
+        private final List<GoodsInfo> goodsInfos;
+
+        private final long goodsSum;
+
+        private final long deadline;
+
+        /** 每层(分类)的候选优惠券, 按优惠力度从大到小排序 */
+        private final List<List<Candidate>> layers =
+                new ArrayList<>(RuleStackingEngine.PRECEDENCE.length);
+
+        /** 每层力度最大的候选优惠券, 用于计算下界 */
+        private final Candidate[] strongest =
+                new Candidate[RuleStackingEngine.PRECEDENCE.length];
+
+        /** 当前路径上每层选择的优惠券 */
+        private final Candidate[] chosen =
+                new Candidate[RuleStackingEngine.PRECEDENCE.length];
+
+        private Candidate[] best;
+
+        /** 当前最优组合的结算价格(分) */
+        private long bestCost;
+
+        private long nodes = 0;
+
+        private boolean timeout = false;
+
+        private Search(SettlementInfo settlement, long goodsSum, long deadline) {
+
+            this.goodsInfos = settlement.getGoodsInfos();
+            this.goodsSum = goodsSum;
+            this.deadline = deadline;
+            // 不使用优惠券即原价
+            this.bestCost = goodsSum;
+
+            for (int i = 0; i < RuleStackingEngine.PRECEDENCE.length; ++i) {
+                layers.add(new ArrayList<>());
+            }
+            Set<Integer> templateIds = new HashSet<>();
+            for (SettlementInfo.CouponAndTemplateInfo ct :
+                    settlement.getCouponAndTemplateInfos()) {
+                CompiledTemplateRule rule = compiledRule(ct);
+                if (!templateIds.add(rule.getTemplateId())) {
+                    continue;
+                }
+                layers.get(layerOf(rule)).add(new Candidate(ct, rule,
+                        executeManager.executorOf(rule.getCategory())));
+            }
+
+            // 满减/立减/折扣在价格上都是单调的, 按原价下的效果排序即按力度排序
+            for (int i = 0; i < layers.size(); ++i) {
+                List<Candidate> layer = layers.get(i);
+                layer.sort(Comparator.comparingLong(c -> c.apply(goodsSum)));
+                strongest[i] = layer.isEmpty() ? null : layer.get(0);
+            }
+        }
+
+        private void run() {
+
+            search(0, goodsSum, 0);
+            log.debug("Optimize Coupon Combination: nodes: {}, cents: {} -> {}, "
+                    + "timeout: {}", nodes, goodsSum, bestCost, timeout);
+        }
+
+        private List<SettlementInfo.CouponAndTemplateInfo> bestCombination() {
+
+            if (null == best) {
+                return Collections.emptyList();
+            }
+            List<SettlementInfo.CouponAndTemplateInfo> ctInfos = new ArrayList<>();
+            for (Candidate candidate : best) {
+                if (null != candidate) {
+                    ctInfos.add(candidate.ct);
+                }
+            }
+            return ctInfos;
+        }
+
+        /**
+         * <h2>深度优先搜索第 layer 层</h2>
+         * @param cost 前面各层选择的优惠券计算之后的价格(分)
+         * @param count 前面各层选择的优惠券个数
+         * */
+        private void search(int layer, long cost, int count) {
+
+            if (timeout || (++nodes & 0xFF) == 0 && System.nanoTime() > deadline) {
+                timeout = true;
+                return;
+            }
+
+            if (layer == layers.size()) {
+                long finalCost = Math.max(cost, minCost());
+                if (count > 0 && finalCost < bestCost && isGoodsTypeSatisfy()) {
+                    bestCost = finalCost;
+                    best = chosen.clone();
+                }
+                return;
+            }
+
+            if (lowerBound(layer, cost) >= bestCost) {
+                return;
+            }
+
+            for (Candidate candidate : layers.get(layer)) {
+                if (!candidate.executor.isRuleSatisfy(cost, candidate.rule)
+                        || !isTemplateCanShared(candidate)) {
+                    continue;
+                }
+                chosen[layer] = candidate;
+                search(layer + 1, candidate.apply(cost), count + 1);
+                chosen[layer] = null;
+            }
+            // 这一层不选
+            search(layer + 1, cost, count);
+        }
+
+        /**
+         * <h2>剩余各层都使用力度最大的优惠券(忽略门槛和共用限制)之后的价格</h2>
+         * */
+        private long lowerBound(int layer, long cost) {
+
+            for (int i = layer; i < strongest.length; ++i) {
+                if (null != strongest[i]) {
+                    cost = Math.min(cost, strongest[i].apply(cost));
+                }
+            }
+            return Math.max(cost, minCost());
+        }
+
+        /**
+         * <h2>候选优惠券是否可以与已经选择的优惠券共用</h2>
+         * */
+        private boolean isTemplateCanShared(Candidate candidate) {
+
+            for (Candidate c : chosen) {
+                if (null != c && !c.rule.canShareWith(candidate.rule)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * <h2>已选择的优惠券与商品类型是否匹配</h2>
+         * 与 ExecuteManager 一致: 单张优惠券匹配任意商品即可, 多张优惠券需要覆盖所有商品
+         * */
+        private boolean isGoodsTypeSatisfy() {
+
+            int count = 0;
+            Candidate single = null;
+            for (Candidate c : chosen) {
+                if (null != c) {
+                    ++count;
+                    single = c;
+                }
+            }
+
+            if (count == 1) {
+                for (GoodsInfo goods : goodsInfos) {
+                    if (single.rule.acceptsGoodsType(goods.getType())) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            for (GoodsInfo goods : goodsInfos) {
+                boolean accepted = false;
+                for (Candidate c : chosen) {
+                    if (null != c && c.rule.acceptsGoodsType(goods.getType())) {
+                        accepted = true;
+                        break;
+                    }
+                }
+                if (!accepted) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static int layerOf(CompiledTemplateRule rule) {
+        for (int i = 0; i < RuleStackingEngine.PRECEDENCE.length; ++i) {
+            if (RuleStackingEngine.PRECEDENCE[i] == rule.getCategory()) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Unknown Template Category: "
+                + rule.getCategory());
+    }
+}
@@ -11,9 +11,7 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
@@ -25,8 +23,12 @@ import java.util.Map;
 @Component
 public class ExecuteManager implements BeanPostProcessor {
     /** 规则执行器映射 */
-    private static Map<RuleFlag, RuleExecutor> executorIndex =
-            new HashMap<>(RuleFlag.values().length);
+    private static final Map<RuleFlag, RuleExecutor> executorIndex =
+            new EnumMap<>(RuleFlag.class);
+
+    /** 多张优惠券叠加计算, 依次使用 executorIndex 中的单类别规则 */
+    private static final RuleStackingEngine stackingEngine =
+            new RuleStackingEngine(executorIndex);
 
     /**
      * <h2>优惠券结算规则计算入口</h2>
@@ -34,58 +36,27 @@ public class ExecuteManager implements BeanPostProcessor {
      * */
     public SettlementInfo computeRule(SettlementInfo settlement) throws CouponException {
 
-        SettlementInfo result = null;
-
         // 单类优惠券
         if (settlement.getCouponAndTemplateInfos().size() == 1) {
 
             // 获取优惠券的类别
-            CouponCategory category = CouponCategory.of(
-                    settlement.getCouponAndTemplateInfos().get(0)
-                            .getTemplate().getCategory()
-            );
-
-            switch (category) {
-                case MANJIAN:
-                    result = executorIndex.get(RuleFlag.MANJIAN)
-                            .computeRule(settlement);
-                    break;
-                case ZHEKOU:
-                    result = executorIndex.get(RuleFlag.ZHEKOU)
-                            .computeRule(settlement);
-                    break;
-                case LIJIAN:
-                    result = executorIndex.get(RuleFlag.LIJIAN)
-                            .computeRule(settlement);
-                    break;
-            }
-        } else {
-
-            // 多类优惠券
-            List<CouponCategory> categories = new ArrayList<>(
-                    settlement.getCouponAndTemplateInfos().size()
-            );
-
-            settlement.getCouponAndTemplateInfos().forEach(ct ->
-                    categories.add(CouponCategory.of(
-                            ct.getTemplate().getCategory()
-                    )));
-            if (categories.size() != 2) {
-                throw new CouponException("Not Support For More " +
-                        "Template Category");
-            } else {
-                if (categories.contains(CouponCategory.MANJIAN)
-                        && categories.contains(CouponCategory.ZHEKOU)) {
-                    result = executorIndex.get(RuleFlag.MANJIAN_ZHEKOU)
-                            .computeRule(settlement);
-                } else {
-                    throw new CouponException("Not Support For Other " +
-                            "Template Category");
-                }
-            }
+            CouponCategory category = CompiledTemplateRule.of(
+                    settlement.getCouponAndTemplateInfos().get(0).getTemplate()
+            ).getCategory();
+
+            return executorIndex.get(RuleFlag.of(category))
+                    .computeRule(settlement);
         }
 
-        return result;
+        // 多类优惠券
+        return stackingEngine.computeRule(settlement);
+    }
+
+    /**
+     * <h2>获取优惠券分类对应的单类别规则执行器</h2>
+     * */
+    RuleExecutor executorOf(CouponCategory category) {
+        return executorIndex.get(RuleFlag.of(category));
     }
 
     /**
@@ -20,4 +20,23 @@ public interface RuleExecutor {
      * @return {@link SettlementInfo} 修正过的结算信息
      * */
     SettlementInfo computeRule(SettlementInfo settlement);
+
+    /**
+     * <h2>叠加计算时, 当前价格是否满足优惠券的使用条件</h2>
+     * @param cost 前面的优惠券计算之后的价格(分)
+     * @param rule {@link CompiledTemplateRule} 当前优惠券编译后的规则
+     * @return true or false
+     * */
+    default boolean isRuleSatisfy(long cost, CompiledTemplateRule rule) {
+        return true;
+    }
+
+    /**
+     * <h2>叠加计算中的一步: 在当前价格上使用优惠券</h2>
+     * 不做最小支付费用的处理, 由调用方在最后统一处理
+     * @param cost 前面的优惠券计算之后的价格(分)
+     * @param rule {@link CompiledTemplateRule} 当前优惠券编译后的规则
+     * @return 使用当前优惠券之后的价格(分)
+     * */
+    long applyRule(long cost, CompiledTemplateRule rule);
 }
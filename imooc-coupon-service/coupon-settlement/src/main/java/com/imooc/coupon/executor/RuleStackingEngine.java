@@ -0,0 +1,153 @@
+package com.imooc.coupon.executor;
+
+import com.imooc.coupon.constant.CouponCategory;
+import com.imooc.coupon.constant.RuleFlag;
+import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.util.MoneyUtils;
+import com.imooc.coupon.vo.GoodsInfo;
+import com.imooc.coupon.vo.SettlementInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>多张优惠券叠加计算</h1>
+ * 1. 同一类的优惠券不能叠加, 因此每个分类最多一张
+ * 2. 任意两张优惠券都要可以共用(weight), 否则返回商品原价
+ * 3. 按分类优先级依次使用每张优惠券: 满减 -> 立减 -> 折扣,
+ *    满减的门槛按前面的优惠券计算之后的价格判断, 不满足时跳过这张优惠券;
+ *    每一步都以分为单位计算, 折扣四舍五入到分
+ * 4. 所有商品类型都要包含在实际使用的优惠券的商品类型中, 即差集为空,
+ *    跳过的满减券不参与校验, 否则返回商品原价
+ */
+@Slf4j
+public class RuleStackingEngine extends AbstractExecutor {
+
+    /** 叠加计算时优惠券分类的先后顺序 */
+    static final CouponCategory[] PRECEDENCE = {
+            CouponCategory.MANJIAN, CouponCategory.LIJIAN, CouponCategory.ZHEKOU
+    };
+
+    /** 优惠券分类 -> 在 PRECEDENCE 中的位置, 按 CouponCategory.ordinal 索引 */
+    private static final int[] RANK = new int[CouponCategory.values().length];
+
+    static {
+        for (int i = 0; i < PRECEDENCE.length; ++i) {
+            RANK[PRECEDENCE[i].ordinal()] = i;
+        }
+    }
+
+    /** 单类别规则执行器 */
+    private final Map<RuleFlag, RuleExecutor> executorIndex;
+
+    public RuleStackingEngine(Map<RuleFlag, RuleExecutor> executorIndex) {
+        this.executorIndex = executorIndex;
+    }
+
+    /**
+     * <h2>多张优惠券叠加计算</h2>
+     * @param settlement {@link SettlementInfo} 包含了选择的优惠券
+     * @return {@link SettlementInfo} 修正过的结算信息, 只保留实际使用的优惠券
+     * */
+    public SettlementInfo computeRule(SettlementInfo settlement)
+            throws CouponException {
+
+        // 按分类优先级放到对应的位置上, 相当于排序
+        SettlementInfo.CouponAndTemplateInfo[] ordered =
+                new SettlementInfo.CouponAndTemplateInfo[PRECEDENCE.length];
+        CompiledTemplateRule[] rules = new CompiledTemplateRule[PRECEDENCE.length];
+        for (SettlementInfo.CouponAndTemplateInfo ct :
+                settlement.getCouponAndTemplateInfos()) {
+            CompiledTemplateRule rule = compiledRule(ct);
+            int rank = RANK[rule.getCategory().ordinal()];
+            if (null != ordered[rank]) {
+                throw new CouponException("Template Category Can Not Be Stacked: "
+                        + rule.getCategory());
+            }
+            ordered[rank] = ct;
+            rules[rank] = rule;
+        }
+
+        long goodsSum = goodsCostSum(settlement.getGoodsInfos());
+
+        // 任意两张优惠券不能共用时, 清空优惠券, 返回商品原价
+        if (!isTemplateCanShared(rules)) {
+            log.debug("Stacked Templates Can Not Shared!");
+            settlement.setCost(MoneyUtils.toYuan(goodsSum));
+            settlement.setCouponAndTemplateInfos(Collections.emptyList());
+            return settlement;
+        }
+
+        List<SettlementInfo.CouponAndTemplateInfo> ctInfos =
+                new ArrayList<>(PRECEDENCE.length);
+        long cost = goodsSum;
+        for (int i = 0; i < PRECEDENCE.length; ++i) {
+            if (null == rules[i]) {
+                continue;
+            }
+            RuleExecutor executor = executorIndex.get(RuleFlag.of(PRECEDENCE[i]));
+            if (executor.isRuleSatisfy(cost, rules[i])) {
+                cost = executor.applyRule(cost, rules[i]);
+                ctInfos.add(ordered[i]);
+            }
+        }
+
+        // 商品类型的校验, 只校验实际使用的优惠券
+        settlement.setCouponAndTemplateInfos(ctInfos);
+        SettlementInfo probability = processGoodsTypeNotSatisfy(
+                settlement, goodsSum
+        );
+        if (null != probability) {
+            log.debug("Stacked Templates Are Not Match To GoodsType!");
+            return probability;
+        }
+
+        settlement.setCost(settleCost(cost));
+        log.debug("Use Stacked Coupons Make Goods Cost From {} To {}",
+                MoneyUtils.toYuan(goodsSum), settlement.getCost());
+
+        return settlement;
+    }
+
+    /**
+     * <h2>校验商品类型与优惠券是否匹配</h2>
+     * 多张优惠券叠加时, 每个商品的类型都要至少被一张优惠券包含
+     * @param settlement {@link SettlementInfo} 用户传递的计算信息
+     */
+    @Override
+    protected boolean isGoodsTypeSatisfy(SettlementInfo settlement) {
+
+        for (GoodsInfo goods : settlement.getGoodsInfos()) {
+            boolean accepted = false;
+            for (SettlementInfo.CouponAndTemplateInfo ct :
+                    settlement.getCouponAndTemplateInfos()) {
+                if (compiledRule(ct).acceptsGoodsType(goods.getType())) {
+                    accepted = true;
+                    break;
+                }
+            }
+            if (!accepted) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <h2>任意两张优惠券是否都可以共用</h2>
+     * */
+    private boolean isTemplateCanShared(CompiledTemplateRule[] rules) {
+
+        for (int i = 0; i < rules.length; ++i) {
+            for (int j = i + 1; null != rules[i] && j < rules.length; ++j) {
+                if (null != rules[j] && !rules[i].canShareWith(rules[j])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
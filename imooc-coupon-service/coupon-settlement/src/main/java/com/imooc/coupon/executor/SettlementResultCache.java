@@ -0,0 +1,207 @@
+package com.imooc.coupon.executor;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.imooc.coupon.config.SettlementCacheProperties;
+import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.util.MoneyUtils;
+import com.imooc.coupon.vo.GoodsInfo;
+import com.imooc.coupon.vo.SettlementInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>结算结果缓存</h1>
+ * 用户调整购物车时会反复提交相同的结算请求, 结算结果只取决于:
+ * 商品(价格, 数量, 类型), 优惠券 id, 模板 id 及模板规则内容(指纹);
+ * 不使用请求中携带的模板版本号, 规则变化但版本号不变(或没有版本号)时不会命中旧的结果
+ * 以它们的规范形式(与顺序无关)作为 key, 命中时不再调用 ExecuteManager;
+ * 缓存的只是结算价格和实际使用的优惠券, 返回时作用到本次请求的 SettlementInfo 上
+ * 结算失败(抛出异常)的请求不缓存
+ */
+@Component
+public class SettlementResultCache {
+
+    private final ExecuteManager executeManager;
+
+    private final SettlementCacheProperties properties;
+
+    /** 规范化的结算请求 -> 结算结果 */
+    private final Cache<SettlementKey, CachedSettlement> cache;
+
+    @Autowired
+    public SettlementResultCache(ExecuteManager executeManager,
+                                 SettlementCacheProperties properties,
+                                 MeterRegistry registry) {
+        this.executeManager = executeManager;
+        this.properties = properties;
+        this.cache = CaffeineCacheMetrics.monitor(registry,
+                Caffeine.newBuilder()
+                        .maximumSize(properties.getMaximumSize())
+                        .expireAfterWrite(properties.getExpireAfterWrite(), TimeUnit.SECONDS)
+                        .recordStats()
+                        .<SettlementKey, CachedSettlement>build(),
+                "coupon.settlement.result");
+    }
+
+    /**
+     * <h2>优惠券结算, 相同的请求直接返回缓存的结果</h2>
+     * @param settlement {@link SettlementInfo} 包含了选择的优惠券
+     * @return {@link SettlementInfo} 修正过的结算信息
+     * */
+    public SettlementInfo computeRule(SettlementInfo settlement) throws CouponException {
+
+        if (!properties.isEnabled()) {
+            return executeManager.computeRule(settlement);
+        }
+
+        // 结算会修改 SettlementInfo, key 需要在结算之前生成
+        SettlementKey key = SettlementKey.of(settlement);
+        CachedSettlement cached = cache.getIfPresent(key);
+        if (null != cached) {
+            return cached.applyTo(settlement);
+        }
+
+        SettlementInfo result = executeManager.computeRule(settlement);
+        cache.put(key, CachedSettlement.of(result));
+        return result;
+    }
+
+    /**
+     * <h2>优惠券在请求中的标识: 优惠券 id(高 32 位) + 模板 id(低 32 位)</h2>
+     * */
+    private static long identity(SettlementInfo.CouponAndTemplateInfo ct) {
+        long couponId = null == ct.getId() ? -1 : ct.getId();
+        return couponId << 32 | (ct.getTemplate().getId() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * <h2>规范化的结算请求</h2>
+     * 商品和优惠券分别按 (两个 long) 排序后展开成一个 long 数组:
+     * [商品个数, (价格(分), 数量 << 32 | 类型)..., (优惠券标识, 规则指纹)...]
+     */
+    private static final class SettlementKey {
+
+        private final long[] values;
+
+        private final int hash;
+
+        private SettlementKey(long[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        private static SettlementKey of(SettlementInfo settlement) {
+
+            List<GoodsInfo> goodsInfos = settlement.getGoodsInfos();
+            List<SettlementInfo.CouponAndTemplateInfo> ctInfos =
+                    settlement.getCouponAndTemplateInfos();
+            long[] values = new long[1 + goodsInfos.size() * 2 + ctInfos.size() * 2];
+
+            values[0] = goodsInfos.size();
+            int index = 1;
+            for (GoodsInfo goods : goodsInfos) {
+                values[index++] = MoneyUtils.toCents(goods.getPrice());
+                values[index++] = (long) goods.getCount() << 32
+                        | (goods.getType() & 0xFFFFFFFFL);
+            }
+            sortPairs(values, 1, index);
+
+            int couponStart = index;
+            for (SettlementInfo.CouponAndTemplateInfo ct : ctInfos) {
+                values[index++] = identity(ct);
+                values[index++] = CompiledTemplateRule.of(ct.getTemplate()).getFingerprint();
+            }
+            sortPairs(values, couponStart, index);
+
+            return new SettlementKey(values);
+        }
+
+        /**
+         * <h2>对 [from, to) 中的 (long, long) 对按字典序插入排序, 个数很少</h2>
+         * */
+        private static void sortPairs(long[] values, int from, int to) {
+            for (int i = from + 2; i < to; i += 2) {
+                long first = values[i];
+                long second = values[i + 1];
+                int j = i - 2;
+                while (j >= from && (values[j] > first
+                        || values[j] == first && values[j + 1] > second)) {
+                    values[j + 2] = values[j];
+                    values[j + 3] = values[j + 1];
+                    j -= 2;
+                }
+                values[j + 2] = first;
+                values[j + 3] = second;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof SettlementKey
+                    && hash == ((SettlementKey) o).hash
+                    && Arrays.equals(values, ((SettlementKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * <h2>缓存的结算结果</h2>
+     */
+    private static final class CachedSettlement {
+
+        /** 结算价格 */
+        private final Double cost;
+
+        /** 实际使用的优惠券标识, 按结算结果中的顺序 */
+        private final long[] used;
+
+        private CachedSettlement(Double cost, long[] used) {
+            this.cost = cost;
+            this.used = used;
+        }
+
+        private static CachedSettlement of(SettlementInfo result) {
+            List<SettlementInfo.CouponAndTemplateInfo> ctInfos =
+                    result.getCouponAndTemplateInfos();
+            long[] used = new long[ctInfos.size()];
+            for (int i = 0; i < used.length; ++i) {
+                used[i] = identity(ctInfos.get(i));
+            }
+            return new CachedSettlement(result.getCost(), used);
+        }
+
+        /**
+         * <h2>把缓存的结果作用到本次请求上</h2>
+         * */
+        private SettlementInfo applyTo(SettlementInfo settlement) {
+
+            List<SettlementInfo.CouponAndTemplateInfo> ctInfos =
+                    settlement.getCouponAndTemplateInfos();
+            List<SettlementInfo.CouponAndTemplateInfo> usedInfos =
+                    new ArrayList<>(used.length);
+            for (long u : used) {
+                for (SettlementInfo.CouponAndTemplateInfo ct : ctInfos) {
+                    if (identity(ct) == u) {
+                        usedInfos.add(ct);
+                        break;
+                    }
+                }
+            }
+            settlement.setCouponAndTemplateInfos(usedInfos);
+            settlement.setCost(cost);
+            return settlement;
+        }
+    }
+}
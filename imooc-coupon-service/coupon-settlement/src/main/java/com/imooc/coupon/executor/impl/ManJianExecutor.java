@@ -2,8 +2,9 @@ package com.imooc.coupon.executor.impl;
 
 import com.imooc.coupon.constant.RuleFlag;
 import com.imooc.coupon.executor.AbstractExecutor;
+import com.imooc.coupon.executor.CompiledTemplateRule;
 import com.imooc.coupon.executor.RuleExecutor;
-import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.util.MoneyUtils;
 import com.imooc.coupon.vo.SettlementInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -35,9 +36,7 @@ public class ManJianExecutor extends AbstractExecutor implements RuleExecutor {
     @Override
     @SuppressWarnings("all")
     public SettlementInfo computeRule(SettlementInfo settlement) {
-        double goodsSum = retain2Decimals(
-                goodsCostSum(settlement.getGoodsInfos())
-        );
+        long goodsSum = goodsCostSum(settlement.getGoodsInfos());
         SettlementInfo probability = processGoodsTypeNotSatisfy(
                 settlement, goodsSum
         );
@@ -47,26 +46,38 @@ public class ManJianExecutor extends AbstractExecutor implements RuleExecutor {
         }
 
         // 判断满减是否符合折扣标准
-        CouponTemplateSDK templateSDK = settlement.getCouponAndTemplateInfos()
-                .get(0).getTemplate();
-        double base = (double) templateSDK.getRule().getDiscount().getBase();
-        double quota = (double) templateSDK.getRule().getDiscount().getQuota();
+        CompiledTemplateRule rule = compiledRule(
+                settlement.getCouponAndTemplateInfos().get(0));
 
         // 如果不符合标准, 则直接返回商品总价
-        if (goodsSum < base) {
+        if (!isRuleSatisfy(goodsSum, rule)) {
             log.debug("Current Goods Cost Sum < ManJian Coupon Base!");
-            settlement.setCost(goodsSum);
+            settlement.setCost(MoneyUtils.toYuan(goodsSum));
             settlement.setCouponAndTemplateInfos(Collections.emptyList());
             return settlement;
         }
 
         // 计算使用优惠券之后的价格 - 结算
-        settlement.setCost(retain2Decimals(
-                (goodsSum - quota) > minCost() ? (goodsSum - quota) : minCost()
-        ));
+        settlement.setCost(settleCost(applyRule(goodsSum, rule)));
         log.debug("Use ManJian Coupon Make Goods Cost From {} To {}",
-                goodsSum, settlement.getCost());
+                MoneyUtils.toYuan(goodsSum), settlement.getCost());
 
         return settlement;
     }
+
+    /**
+     * <h2>叠加计算: 满足满减基准才可以使用</h2>
+     * */
+    @Override
+    public boolean isRuleSatisfy(long cost, CompiledTemplateRule rule) {
+        return cost >= rule.getBase();
+    }
+
+    /**
+     * <h2>叠加计算: 满减</h2>
+     * */
+    @Override
+    public long applyRule(long cost, CompiledTemplateRule rule) {
+        return cost - rule.getQuotaCents();
+    }
 }
@@ -2,8 +2,9 @@ package com.imooc.coupon.executor.impl;
 
 import com.imooc.coupon.constant.RuleFlag;
 import com.imooc.coupon.executor.AbstractExecutor;
+import com.imooc.coupon.executor.CompiledTemplateRule;
 import com.imooc.coupon.executor.RuleExecutor;
-import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.util.MoneyUtils;
 import com.imooc.coupon.vo.SettlementInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -31,9 +32,7 @@ public class ZheKouExecutor extends AbstractExecutor implements RuleExecutor {
     @Override
     @SuppressWarnings("all")
     public SettlementInfo computeRule(SettlementInfo settlement) {
-        double goodsSum = retain2Decimals(goodsCostSum(
-                settlement.getGoodsInfos()
-        ));
+        long goodsSum = goodsCostSum(settlement.getGoodsInfos());
         SettlementInfo probability = processGoodsTypeNotSatisfy(
                 settlement, goodsSum
         );
@@ -43,19 +42,22 @@ public class ZheKouExecutor extends AbstractExecutor implements RuleExecutor {
         }
 
         // 折扣优惠券可以直接使用, 没有门槛
-        CouponTemplateSDK templateSDK = settlement.getCouponAndTemplateInfos()
-                .get(0).getTemplate();
-        double quota = (double) templateSDK.getRule().getDiscount().getQuota();
+        long cost = applyRule(goodsSum, compiledRule(
+                settlement.getCouponAndTemplateInfos().get(0)));
 
         // 计算使用优惠券之后的价格
-        settlement.setCost(
-                retain2Decimals((goodsSum * (quota * 1.0 / 100))) > minCost() ?
-                        retain2Decimals((goodsSum * (quota * 1.0 / 100)))
-                        : minCost()
-        );
+        settlement.setCost(settleCost(cost));
         log.debug("Use ZheKou Coupon Make Goods Cost From {} To {}",
-                goodsSum, settlement.getCost());
+                MoneyUtils.toYuan(goodsSum), settlement.getCost());
 
         return settlement;
     }
+
+    /**
+     * <h2>叠加计算: 折扣, 四舍五入到分</h2>
+     * */
+    @Override
+    public long applyRule(long cost, CompiledTemplateRule rule) {
+        return MoneyUtils.discount(cost, rule.getQuota());
+    }
 }
@@ -0,0 +1,44 @@
+package com.imooc.coupon.executor;
+
+import com.imooc.coupon.constant.CouponCategory;
+import com.imooc.coupon.vo.CouponTemplateSDK;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.imooc.coupon.executor.SettlementFixtures.coupon;
+import static com.imooc.coupon.executor.SettlementFixtures.nextTemplateId;
+
+/**
+ * <h1>编译后的优惠券模板规则缓存测试</h1>
+ */
+public class CompiledTemplateRuleTest {
+
+    /**
+     * <h2>相同的模板 id 和版本号, 规则内容不同时不会取到其他内容编译的规则</h2>
+     */
+    @Test
+    public void testSameVersionWithDifferentRule() {
+
+        int templateId = nextTemplateId();
+        CouponTemplateSDK manJian = coupon(templateId, CouponCategory.MANJIAN, 20, 100,
+                Arrays.asList(1, 2), Collections.emptyList()).getTemplate();
+        CouponTemplateSDK forged = coupon(templateId, CouponCategory.MANJIAN, 90, 100,
+                Collections.singletonList(3), Collections.emptyList()).getTemplate();
+        Assert.assertEquals(manJian.getVersion(), forged.getVersion());
+
+        CompiledTemplateRule compiled = CompiledTemplateRule.of(manJian);
+        CompiledTemplateRule compiledForged = CompiledTemplateRule.of(forged);
+        Assert.assertEquals(20, compiled.getQuota());
+        Assert.assertTrue(compiled.acceptsGoodsType(1));
+        Assert.assertEquals(90, compiledForged.getQuota());
+        Assert.assertFalse(compiledForged.acceptsGoodsType(1));
+
+        // 规则内容相同时复用编译结果
+        Assert.assertSame(compiled, CompiledTemplateRule.of(coupon(templateId,
+                CouponCategory.MANJIAN, 20, 100, Arrays.asList(1, 2),
+                Collections.emptyList()).getTemplate()));
+    }
+}
@@ -0,0 +1,192 @@
+package com.imooc.coupon.executor;
+
+import com.imooc.coupon.config.OptimizeProperties;
+import com.imooc.coupon.constant.CouponCategory;
+import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.util.MoneyUtils;
+import com.imooc.coupon.vo.GoodsInfo;
+import com.imooc.coupon.vo.SettlementInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.imooc.coupon.executor.SettlementFixtures.coupon;
+import static com.imooc.coupon.executor.SettlementFixtures.executeManager;
+import static com.imooc.coupon.executor.SettlementFixtures.goods;
+import static com.imooc.coupon.executor.SettlementFixtures.nextTemplateId;
+import static com.imooc.coupon.executor.SettlementFixtures.settlement;
+import static com.imooc.coupon.executor.SettlementFixtures.templateKey;
+
+/**
+ * <h1>最优优惠券组合搜索测试</h1>
+ * 随机生成的优惠券与穷举所有组合(经过 ExecuteManager 计算)的结果对比
+ */
+public class CouponCombinationOptimizerTest {
+
+    private static final CouponCategory[] CATEGORIES = CouponCategory.values();
+
+    @Test
+    public void testMatchesBruteForce() throws CouponException {
+
+        CouponCombinationOptimizer optimizer = optimizer(10_000L);
+        Random random = new Random(20190801L);
+
+        for (int round = 0; round < 500; ++round) {
+            List<GoodsInfo> cart = randomCart(random);
+            List<SettlementInfo.CouponAndTemplateInfo> ctInfos = randomCoupons(random);
+
+            double expected = bruteForce(cart, ctInfos);
+            SettlementInfo result = optimizer.optimize(settlement(cart, ctInfos));
+
+            String message = "round " + round + ": " + cart + " " + ctInfos;
+            Assert.assertEquals(message, expected, result.getCost(), 0.0);
+            // 返回的组合重新计算也是同样的价格, 即所有优惠券都实际使用
+            if (!result.getCouponAndTemplateInfos().isEmpty()) {
+                SettlementInfo recomputed = executeManager().computeRule(
+                        settlement(cart, result.getCouponAndTemplateInfos()));
+                Assert.assertEquals(message, result.getCost(), recomputed.getCost(), 0.0);
+                Assert.assertEquals(message, result.getCouponAndTemplateInfos(),
+                        recomputed.getCouponAndTemplateInfos());
+            }
+        }
+    }
+
+    @Test
+    public void testNoCouponReturnsGoodsSum() throws CouponException {
+
+        SettlementInfo result = optimizer(50L).optimize(settlement(
+                Arrays.asList(goods(100, 1, 1), goods(12.5, 2, 2)),
+                Collections.emptyList()));
+        Assert.assertEquals(125.0, result.getCost(), 0.0);
+        Assert.assertTrue(result.getCouponAndTemplateInfos().isEmpty());
+    }
+
+    /**
+     * <h2>超过时间预算后返回已经找到的组合</h2>
+     * 优惠券两两不能共用, 最优解是力度最大的折扣券; 满减券在折扣券之前搜索,
+     * 预算为 0 时在搜索到折扣券之前就停止, 只能返回满减券
+     */
+    @Test
+    public void testStopsWhenBudgetExceeded() throws CouponException {
+
+        List<GoodsInfo> cart = Collections.singletonList(goods(1000, 1, 1));
+        List<Integer> types = Collections.singletonList(1);
+        List<SettlementInfo.CouponAndTemplateInfo> ctInfos = new ArrayList<>();
+        for (int i = 1; i <= 200; ++i) {
+            ctInfos.add(coupon(CouponCategory.MANJIAN, i, 1, types));
+            ctInfos.add(coupon(CouponCategory.ZHEKOU, 50, 1, types));
+        }
+
+        SettlementInfo best = optimizer(10_000L).optimize(settlement(cart, ctInfos));
+        Assert.assertEquals(500.0, best.getCost(), 0.0);
+        Assert.assertEquals(CouponCategory.ZHEKOU.getCode(), best
+                .getCouponAndTemplateInfos().get(0).getTemplate().getCategory());
+
+        long start = System.nanoTime();
+        SettlementInfo partial = optimizer(0L).optimize(settlement(cart, ctInfos));
+        Assert.assertTrue(System.nanoTime() - start < 1_000_000_000L);
+
+        // 已经找到的组合是有效的, 但不是最优的
+        Assert.assertEquals(1, partial.getCouponAndTemplateInfos().size());
+        Assert.assertEquals(CouponCategory.MANJIAN.getCode(), partial
+                .getCouponAndTemplateInfos().get(0).getTemplate().getCategory());
+        Assert.assertTrue(partial.getCost() > best.getCost());
+        Assert.assertTrue(partial.getCost() <= 1000.0);
+    }
+
+    private static CouponCombinationOptimizer optimizer(long budget) {
+        OptimizeProperties properties = new OptimizeProperties();
+        properties.setBudget(budget);
+        return new CouponCombinationOptimizer(executeManager(), properties);
+    }
+
+    /**
+     * <h2>穷举: 每个分类最多一张的所有组合都交给 ExecuteManager 计算, 取最低价格</h2>
+     * */
+    private static double bruteForce(List<GoodsInfo> cart,
+                                     List<SettlementInfo.CouponAndTemplateInfo> ctInfos)
+            throws CouponException {
+
+        // 不使用优惠券即原价
+        long goodsSum = 0;
+        for (GoodsInfo g : cart) {
+            goodsSum += MoneyUtils.multiply(g.getPrice(), g.getCount());
+        }
+        double best = MoneyUtils.toYuan(goodsSum);
+
+        for (int mask = 1; mask < 1 << ctInfos.size(); ++mask) {
+            List<SettlementInfo.CouponAndTemplateInfo> chosen = new ArrayList<>();
+            Set<String> categories = new HashSet<>();
+            boolean valid = true;
+            for (int i = 0; i < ctInfos.size() && valid; ++i) {
+                if ((mask & 1 << i) != 0) {
+                    chosen.add(ctInfos.get(i));
+                    valid = categories.add(ctInfos.get(i).getTemplate().getCategory());
+                }
+            }
+            if (valid) {
+                best = Math.min(best, executeManager()
+                        .computeRule(settlement(cart, chosen)).getCost());
+            }
+        }
+        return best;
+    }
+
+    private static List<GoodsInfo> randomCart(Random random) {
+
+        List<GoodsInfo> cart = new ArrayList<>();
+        int size = 1 + random.nextInt(4);
+        for (int i = 0; i < size; ++i) {
+            cart.add(goods(1 + random.nextInt(30000) / 100.0,
+                    1 + random.nextInt(3), 1 + random.nextInt(4)));
+        }
+        return cart;
+    }
+
+    /**
+     * <h2>1 ~ 8 张随机的优惠券, 部分优惠券属于同一个模板</h2>
+     * */
+    private static List<SettlementInfo.CouponAndTemplateInfo> randomCoupons(Random random) {
+
+        int templates = 1 + random.nextInt(6);
+        int[] ids = new int[templates];
+        for (int i = 0; i < templates; ++i) {
+            ids[i] = nextTemplateId();
+        }
+
+        List<SettlementInfo.CouponAndTemplateInfo> ctInfos = new ArrayList<>();
+        for (int i = 0; i < templates; ++i) {
+            CouponCategory category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            int quota = CouponCategory.ZHEKOU == category
+                    ? 50 + random.nextInt(50) : 1 + random.nextInt(100);
+            int base = 1 + random.nextInt(500);
+
+            List<Integer> types = new ArrayList<>();
+            for (int type = 1; type <= 4; ++type) {
+                if (random.nextInt(3) > 0) {
+                    types.add(type);
+                }
+            }
+            List<String> sharedKeys = new ArrayList<>();
+            for (int j = 0; j < templates; ++j) {
+                if (j != i && random.nextBoolean()) {
+                    sharedKeys.add(templateKey(ids[j]));
+                }
+            }
+
+            int copies = random.nextInt(4) == 0 ? 2 : 1;
+            for (int c = 0; c < copies; ++c) {
+                ctInfos.add(coupon(ids[i], category, quota, base, types, sharedKeys));
+            }
+        }
+        Collections.shuffle(ctInfos, random);
+        return ctInfos;
+    }
+}
@@ -0,0 +1,246 @@
+package com.imooc.coupon.executor;
+
+import com.imooc.coupon.constant.CouponCategory;
+import com.imooc.coupon.constant.RuleFlag;
+import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.executor.impl.LiJianExecutor;
+import com.imooc.coupon.executor.impl.ManJianExecutor;
+import com.imooc.coupon.executor.impl.ZheKouExecutor;
+import com.imooc.coupon.vo.GoodsInfo;
+import com.imooc.coupon.vo.SettlementInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.imooc.coupon.executor.SettlementFixtures.coupon;
+import static com.imooc.coupon.executor.SettlementFixtures.goods;
+import static com.imooc.coupon.executor.SettlementFixtures.nextTemplateId;
+import static com.imooc.coupon.executor.SettlementFixtures.settlement;
+import static com.imooc.coupon.executor.SettlementFixtures.templateKey;
+
+/**
+ * <h1>多张优惠券叠加计算测试</h1>
+ */
+public class RuleStackingEngineTest {
+
+    private static final List<Integer> ALL_TYPES = Arrays.asList(1, 2, 3);
+
+    private final RuleStackingEngine engine;
+
+    public RuleStackingEngineTest() {
+        Map<RuleFlag, RuleExecutor> executorIndex = new EnumMap<>(RuleFlag.class);
+        executorIndex.put(RuleFlag.MANJIAN, new ManJianExecutor());
+        executorIndex.put(RuleFlag.ZHEKOU, new ZheKouExecutor());
+        executorIndex.put(RuleFlag.LIJIAN, new LiJianExecutor());
+        this.engine = new RuleStackingEngine(executorIndex);
+    }
+
+    /**
+     * <h2>满减 + 折扣与原来的 ManJianZheKouExecutor 结果一致</h2>
+     * 购物车的金额都不会落在半分上, 两种算法的舍入方式不同只影响半分的情况
+     */
+    @Test
+    public void testManJianZheKouMatchesLegacy() throws CouponException {
+
+        List<List<GoodsInfo>> carts = Arrays.asList(
+                Arrays.asList(goods(120.5, 2, 1), goods(35.8, 3, 2), goods(9.9, 10, 3)),
+                Arrays.asList(goods(19.99, 3, 1), goods(5.01, 1, 2)),
+                Collections.singletonList(goods(10, 1, 1))
+        );
+        int[][] manJians = {{200, 30}, {50, 10}, {10, 10}, {500, 30}};
+        int[] zheKous = {85, 90, 66, 99};
+
+        for (List<GoodsInfo> cart : carts) {
+            for (int[] manJian : manJians) {
+                for (int zheKou : zheKous) {
+                    int manJianId = nextTemplateId();
+                    SettlementInfo.CouponAndTemplateInfo manJianCoupon = coupon(
+                            manJianId, CouponCategory.MANJIAN, manJian[1], manJian[0],
+                            ALL_TYPES, Collections.emptyList());
+                    SettlementInfo.CouponAndTemplateInfo zheKouCoupon = coupon(
+                            CouponCategory.ZHEKOU, zheKou, 1, ALL_TYPES,
+                            templateKey(manJianId));
+
+                    SettlementInfo result = engine.computeRule(settlement(cart,
+                            Arrays.asList(zheKouCoupon, manJianCoupon)));
+
+                    String message = cart + " " + Arrays.toString(manJian) + " " + zheKou;
+                    Assert.assertEquals(message,
+                            legacyManJianZheKou(cart, manJian[0], manJian[1], zheKou),
+                            result.getCost(), 0.0);
+                    boolean manJianUsed = legacyGoodsSum(cart) >= manJian[0];
+                    Assert.assertEquals(message, manJianUsed
+                                    ? Arrays.asList(manJianCoupon, zheKouCoupon)
+                                    : Collections.singletonList(zheKouCoupon),
+                            result.getCouponAndTemplateInfos());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCanNotShareReturnsGoodsSum() throws CouponException {
+
+        List<GoodsInfo> cart = Arrays.asList(goods(100, 1, 1), goods(50, 1, 2));
+
+        SettlementInfo result = engine.computeRule(settlement(cart, Arrays.asList(
+                coupon(CouponCategory.MANJIAN, 20, 100, ALL_TYPES),
+                coupon(CouponCategory.ZHEKOU, 80, 1, ALL_TYPES))));
+        Assert.assertEquals(150.0, result.getCost(), 0.0);
+        Assert.assertTrue(result.getCouponAndTemplateInfos().isEmpty());
+
+        // 满减和立减, 立减和折扣可以共用, 满减和折扣不能共用
+        int manJianId = nextTemplateId();
+        int zheKouId = nextTemplateId();
+        result = engine.computeRule(settlement(cart, Arrays.asList(
+                coupon(manJianId, CouponCategory.MANJIAN, 20, 100, ALL_TYPES,
+                        Collections.emptyList()),
+                coupon(zheKouId, CouponCategory.ZHEKOU, 80, 1, ALL_TYPES,
+                        Collections.emptyList()),
+                coupon(CouponCategory.LIJIAN, 10, 1, ALL_TYPES,
+                        templateKey(manJianId), templateKey(zheKouId)))));
+        Assert.assertEquals(150.0, result.getCost(), 0.0);
+        Assert.assertTrue(result.getCouponAndTemplateInfos().isEmpty());
+    }
+
+    @Test
+    public void testCanShareWhenEitherSideAllows() throws CouponException {
+
+        List<GoodsInfo> cart = Collections.singletonList(goods(150, 1, 1));
+        int manJianId = nextTemplateId();
+
+        SettlementInfo result = engine.computeRule(settlement(cart, Arrays.asList(
+                coupon(manJianId, CouponCategory.MANJIAN, 20, 100, ALL_TYPES,
+                        Collections.emptyList()),
+                coupon(CouponCategory.ZHEKOU, 80, 1, ALL_TYPES,
+                        templateKey(manJianId)))));
+        Assert.assertEquals(104.0, result.getCost(), 0.0);
+        Assert.assertEquals(2, result.getCouponAndTemplateInfos().size());
+    }
+
+    @Test
+    public void testGoodsTypeMustBeCovered() throws CouponException {
+
+        List<GoodsInfo> cart = Arrays.asList(goods(100, 1, 1), goods(50, 1, 2));
+        int manJianId = nextTemplateId();
+        SettlementInfo.CouponAndTemplateInfo manJian = coupon(manJianId,
+                CouponCategory.MANJIAN, 20, 100, Collections.singletonList(1),
+                Collections.emptyList());
+
+        // 商品类型 2 没有被任何优惠券包含
+        SettlementInfo result = engine.computeRule(settlement(cart, Arrays.asList(
+                manJian, coupon(CouponCategory.ZHEKOU, 80, 1,
+                        Collections.singletonList(1), templateKey(manJianId)))));
+        Assert.assertEquals(150.0, result.getCost(), 0.0);
+        Assert.assertTrue(result.getCouponAndTemplateInfos().isEmpty());
+
+        // 两张优惠券合起来包含所有商品类型
+        result = engine.computeRule(settlement(cart, Arrays.asList(
+                manJian, coupon(CouponCategory.ZHEKOU, 80, 1,
+                        Collections.singletonList(2), templateKey(manJianId)))));
+        Assert.assertEquals(104.0, result.getCost(), 0.0);
+        Assert.assertEquals(2, result.getCouponAndTemplateInfos().size());
+    }
+
+    /**
+     * <h2>跳过的满减券不参与商品类型的校验</h2>
+     */
+    @Test
+    public void testSkippedManJianDoesNotCoverGoodsType() throws CouponException {
+
+        List<GoodsInfo> cart = Arrays.asList(goods(100, 1, 1), goods(50, 1, 2));
+        int manJianId = nextTemplateId();
+
+        SettlementInfo result = engine.computeRule(settlement(cart, Arrays.asList(
+                coupon(manJianId, CouponCategory.MANJIAN, 20, 200, ALL_TYPES,
+                        Collections.emptyList()),
+                coupon(CouponCategory.LIJIAN, 10, 1, Collections.singletonList(2),
+                        templateKey(manJianId)))));
+        Assert.assertEquals(150.0, result.getCost(), 0.0);
+        Assert.assertTrue(result.getCouponAndTemplateInfos().isEmpty());
+    }
+
+    @Test(expected = CouponException.class)
+    public void testDuplicateCategoryRejected() throws CouponException {
+
+        int first = nextTemplateId();
+        engine.computeRule(settlement(
+                Collections.singletonList(goods(150, 1, 1)), Arrays.asList(
+                        coupon(first, CouponCategory.MANJIAN, 20, 100, ALL_TYPES,
+                                Collections.emptyList()),
+                        coupon(CouponCategory.MANJIAN, 10, 50, ALL_TYPES,
+                                templateKey(first)))));
+    }
+
+    /**
+     * <h2>三张优惠券按 满减 -> 立减 -> 折扣 的顺序计算, 与传入的顺序无关</h2>
+     */
+    @Test
+    public void testThreeCouponStack() throws CouponException {
+
+        List<GoodsInfo> cart = Arrays.asList(goods(100, 1, 1), goods(25, 2, 2));
+        int manJianId = nextTemplateId();
+        int liJianId = nextTemplateId();
+        SettlementInfo.CouponAndTemplateInfo manJian = coupon(manJianId,
+                CouponCategory.MANJIAN, 20, 100, ALL_TYPES, Collections.emptyList());
+        SettlementInfo.CouponAndTemplateInfo liJian = coupon(liJianId,
+                CouponCategory.LIJIAN, 10, 1, ALL_TYPES,
+                Collections.singletonList(templateKey(manJianId)));
+        SettlementInfo.CouponAndTemplateInfo zheKou = coupon(CouponCategory.ZHEKOU,
+                80, 1, ALL_TYPES, templateKey(manJianId), templateKey(liJianId));
+
+        // (150 - 20 - 10) * 0.8
+        SettlementInfo result = engine.computeRule(settlement(cart,
+                Arrays.asList(zheKou, manJian, liJian)));
+        Assert.assertEquals(96.0, result.getCost(), 0.0);
+        Assert.assertEquals(Arrays.asList(manJian, liJian, zheKou),
+                result.getCouponAndTemplateInfos());
+
+        // 不满足满减门槛时跳过满减: (150 - 10) * 0.8
+        int highBaseId = nextTemplateId();
+        int otherLiJianId = nextTemplateId();
+        SettlementInfo.CouponAndTemplateInfo highBase = coupon(highBaseId,
+                CouponCategory.MANJIAN, 20, 200, ALL_TYPES, Collections.emptyList());
+        SettlementInfo.CouponAndTemplateInfo otherLiJian = coupon(otherLiJianId,
+                CouponCategory.LIJIAN, 10, 1, ALL_TYPES,
+                Collections.singletonList(templateKey(highBaseId)));
+        SettlementInfo.CouponAndTemplateInfo otherZheKou = coupon(CouponCategory.ZHEKOU,
+                80, 1, ALL_TYPES, templateKey(highBaseId), templateKey(otherLiJianId));
+        result = engine.computeRule(settlement(cart,
+                Arrays.asList(otherLiJian, otherZheKou, highBase)));
+        Assert.assertEquals(112.0, result.getCost(), 0.0);
+        Assert.assertEquals(Arrays.asList(otherLiJian, otherZheKou),
+                result.getCouponAndTemplateInfos());
+    }
+
+    /**
+     * <h2>原来的 ManJianZheKouExecutor 的计算方式: double + BigDecimal</h2>
+     */
+    private static double legacyManJianZheKou(List<GoodsInfo> cart, int base,
+                                              int quota, int zheKou) {
+        double targetSum = legacyGoodsSum(cart);
+        if (targetSum >= base) {
+            targetSum -= quota;
+        }
+        targetSum *= zheKou * 1.0 / 100;
+        return legacyRetain2Decimals(targetSum > 0.1 ? targetSum : 0.1);
+    }
+
+    private static double legacyGoodsSum(List<GoodsInfo> cart) {
+        double goodsSum = 0.0;
+        for (GoodsInfo g : cart) {
+            goodsSum += g.getPrice() * g.getCount();
+        }
+        return legacyRetain2Decimals(goodsSum);
+    }
+
+    private static double legacyRetain2Decimals(double value) {
+        return new BigDecimal(value).setScale(2, BigDecimal.ROUND_HALF_UP).doubleValue();
+    }
+}
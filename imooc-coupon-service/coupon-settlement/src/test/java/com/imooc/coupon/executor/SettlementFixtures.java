@@ -0,0 +1,114 @@
+package com.imooc.coupon.executor;
+
+import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.constant.CouponCategory;
+import com.imooc.coupon.executor.impl.LiJianExecutor;
+import com.imooc.coupon.executor.impl.ManJianExecutor;
+import com.imooc.coupon.executor.impl.ZheKouExecutor;
+import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.GoodsInfo;
+import com.imooc.coupon.vo.SettlementInfo;
+import com.imooc.coupon.vo.TemplateRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>结算测试使用的执行器, 优惠券和购物车</h1>
+ * ExecuteManager 的执行器映射是静态的, 同一个规则只能注册一次, 所有测试共用一个实例
+ * 每个模板都分配新的 id, 通过 templateKey 指定可以叠加使用的优惠券
+ */
+final class SettlementFixtures {
+
+    /** 优惠券模板的 key, templateKey = key + 4 位模板 id */
+    static final String TEMPLATE_KEY = "100120190801";
+
+    private static final AtomicInteger TEMPLATE_ID = new AtomicInteger(1000);
+
+    private static final AtomicInteger COUPON_ID = new AtomicInteger(1);
+
+    private static final ExecuteManager EXECUTE_MANAGER = new ExecuteManager();
+
+    static {
+        EXECUTE_MANAGER.postProcessBeforeInitialization(
+                new ManJianExecutor(), "manJianExecutor");
+        EXECUTE_MANAGER.postProcessBeforeInitialization(
+                new ZheKouExecutor(), "zheKouExecutor");
+        EXECUTE_MANAGER.postProcessBeforeInitialization(
+                new LiJianExecutor(), "liJianExecutor");
+    }
+
+    private SettlementFixtures() {
+    }
+
+    static ExecuteManager executeManager() {
+        return EXECUTE_MANAGER;
+    }
+
+    /**
+     * <h2>分配一个新的模板 id</h2>
+     * */
+    static int nextTemplateId() {
+        return TEMPLATE_ID.getAndIncrement();
+    }
+
+    /**
+     * <h2>模板 id 对应的 templateKey, 用于 weight</h2>
+     * */
+    static String templateKey(int templateId) {
+        return TEMPLATE_KEY + String.format("%04d", templateId);
+    }
+
+    /**
+     * <h2>新模板的一张优惠券</h2>
+     * @param quota 满减/立减的金额(元), 折扣的百分比
+     * @param base 满减的门槛(元)
+     * @param goodsTypes 可以使用的商品类型
+     * @param sharedKeys 可以共用的 templateKey
+     * */
+    static SettlementInfo.CouponAndTemplateInfo coupon(CouponCategory category,
+                                                       int quota, int base,
+                                                       List<Integer> goodsTypes,
+                                                       String... sharedKeys) {
+        return coupon(nextTemplateId(), category, quota, base, goodsTypes,
+                Arrays.asList(sharedKeys));
+    }
+
+    /**
+     * <h2>指定模板 id 的一张优惠券, 同一个模板 id 的参数必须一致</h2>
+     * */
+    static SettlementInfo.CouponAndTemplateInfo coupon(int templateId,
+                                                       CouponCategory category,
+                                                       int quota, int base,
+                                                       List<Integer> goodsTypes,
+                                                       List<String> sharedKeys) {
+        TemplateRule rule = new TemplateRule(
+                new TemplateRule.Expiration(1, 1, Long.MAX_VALUE),
+                new TemplateRule.Discount(quota, base), 1,
+                new TemplateRule.Usage("安徽省", "桐城市", JSON.toJSONString(goodsTypes)),
+                JSON.toJSONString(sharedKeys)
+        );
+        CouponTemplateSDK template = new CouponTemplateSDK(templateId, "test",
+                "logo", "desc", category.getCode(), 1, TEMPLATE_KEY, 1, rule, 1, 1L);
+        return new SettlementInfo.CouponAndTemplateInfo(
+                COUPON_ID.getAndIncrement(), template);
+    }
+
+    /**
+     * <h2>商品</h2>
+     * */
+    static GoodsInfo goods(double price, int count, int type) {
+        return new GoodsInfo(price, count, type);
+    }
+
+    /**
+     * <h2>结算信息, 列表会被复制, 结算会修改优惠券列表</h2>
+     * */
+    static SettlementInfo settlement(List<GoodsInfo> goodsInfos,
+                                     List<SettlementInfo.CouponAndTemplateInfo> ctInfos) {
+        return new SettlementInfo(10001L, new ArrayList<>(goodsInfos),
+                new ArrayList<>(ctInfos), false, 0.0);
+    }
+}
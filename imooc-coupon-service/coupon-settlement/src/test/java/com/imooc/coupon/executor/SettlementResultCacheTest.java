@@ -0,0 +1,54 @@
+package com.imooc.coupon.executor;
+
+import com.imooc.coupon.config.SettlementCacheProperties;
+import com.imooc.coupon.constant.CouponCategory;
+import com.imooc.coupon.exception.CouponException;
+import com.imooc.coupon.vo.GoodsInfo;
+import com.imooc.coupon.vo.SettlementInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.imooc.coupon.executor.SettlementFixtures.coupon;
+import static com.imooc.coupon.executor.SettlementFixtures.goods;
+import static com.imooc.coupon.executor.SettlementFixtures.nextTemplateId;
+import static com.imooc.coupon.executor.SettlementFixtures.settlement;
+
+/**
+ * <h1>结算结果缓存测试</h1>
+ */
+public class SettlementResultCacheTest {
+
+    private final SettlementResultCache cache = new SettlementResultCache(
+            SettlementFixtures.executeManager(), new SettlementCacheProperties(),
+            new SimpleMeterRegistry());
+
+    /**
+     * <h2>模板规则变化但版本号不变时, 不会命中旧的结算结果</h2>
+     */
+    @Test
+    public void testRuleChangeWithSameVersion() throws CouponException {
+
+        List<GoodsInfo> cart = Collections.singletonList(goods(100, 1, 1));
+        int templateId = nextTemplateId();
+        SettlementInfo.CouponAndTemplateInfo lijian = coupon(templateId,
+                CouponCategory.LIJIAN, 10, 1, Collections.singletonList(1),
+                Collections.emptyList());
+        SettlementInfo.CouponAndTemplateInfo changed = coupon(templateId,
+                CouponCategory.LIJIAN, 30, 1, Collections.singletonList(1),
+                Collections.emptyList());
+        changed.setId(lijian.getId());
+        Assert.assertEquals(lijian.getTemplate().getVersion(),
+                changed.getTemplate().getVersion());
+
+        Assert.assertEquals(90.0, cache.computeRule(settlement(cart,
+                Collections.singletonList(lijian))).getCost(), 0.0);
+        Assert.assertEquals(70.0, cache.computeRule(settlement(cart,
+                Collections.singletonList(changed))).getCost(), 0.0);
+        Assert.assertEquals(90.0, cache.computeRule(settlement(cart,
+                Collections.singletonList(lijian))).getCost(), 0.0);
+    }
+}
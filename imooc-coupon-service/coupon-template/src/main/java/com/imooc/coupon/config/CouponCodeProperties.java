@@ -0,0 +1,44 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>优惠券码生成相关配置</h1>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.code")
+public class CouponCodeProperties {
+
+    /** 每批生成并推送到 Redis 的优惠券码个数, 每批推送完成后记录一次断点 */
+    private int batchSize = 10000;
+
+    /** 一批优惠券码拆分成多段推送, 每段与游标前进在一个脚本中原子完成, 每段的优惠券码个数 */
+    private int pipelineSize = 1000;
+
+    /** 优惠券码池补充配置 */
+    private Replenish replenish = new Replenish();
+
+    /**
+     * <h2>优惠券码池补充(懒生成)配置</h2>
+     * 开启后, 每个模板在 Redis 中只保留 poolSize 个优惠券码,
+     * 低于 lowWatermark 时后台补充, 总数仍然不超过 template.count
+     * */
+    @Data
+    public static class Replenish {
+
+        /** 是否开启懒生成模式 */
+        private boolean enabled = false;
+
+        /** 每个模板在 Redis 中保留的优惠券码个数 */
+        private int poolSize = 20000;
+
+        /** 剩余优惠券码低于该值时补充 */
+        private int lowWatermark = 5000;
+
+        /** 检查剩余优惠券码的间隔(毫秒) */
+        private long interval = 1000;
+    }
+}
@@ -0,0 +1,26 @@
+package com.imooc.coupon.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>多实例定时任务相关配置</h1>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "coupon.job")
+public class JobProperties {
+
+    /** 任务租约时长(毫秒), 持有者每次执行任务时续期, 应大于单次任务的耗时 */
+    private long leaseTime = 10000;
+
+    /** 实例心跳间隔(毫秒) */
+    private long heartbeatInterval = 3000;
+
+    /** 超过该时长(毫秒)没有心跳的实例不再参与分区 */
+    private long memberTtl = 10000;
+
+    /** 定时任务线程数, 避免长任务阻塞心跳 */
+    private int schedulerPoolSize = 4;
+}
@@ -1,18 +1,21 @@
 package com.imooc.coupon.controller;
 
 import com.alibaba.fastjson.JSON;
+import com.imooc.coupon.annotation.IgnoreResponseAdvice;
 import com.imooc.coupon.entity.CouponTemplate;
 import com.imooc.coupon.exception.CouponException;
 import com.imooc.coupon.service.IBuildTemplateService;
 import com.imooc.coupon.service.ITemplateBaseService;
 import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.TemplateChanges;
 import com.imooc.coupon.vo.TemplateRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -58,12 +61,16 @@ public class CouponTemplateController {
 
     /**
      * <h2>查找所有可用的优惠券模板</h2>
+     * 直接返回快照中预先序列化好的 CommonResponse
      * 127.0.0.1:7001/coupon-template/template/sdk/all
      * */
+    @IgnoreResponseAdvice
     @GetMapping("/template/sdk/all")
-    public List<CouponTemplateSDK> findAllUsableTemplate() {
-        log.info("Find All Usable Template.");
-        return templateBaseService.findAllUsableTemplate();
+    public ResponseEntity<byte[]> findAllUsableTemplate() {
+        log.debug("Find All Usable Template.");
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(templateBaseService.getUsableTemplateSnapshot().getBody());
     }
 
     /**
@@ -77,4 +84,16 @@ public class CouponTemplateController {
         log.info("FindIds2TemplateSDK: {}", JSON.toJSONString(ids));
         return templateBaseService.findIds2TemplateSdk(ids);
     }
+
+    /**
+     * <h2>获取版本号大于 since 的优惠券模板变更</h2>
+     * 127.0.0.1:7001/coupon-template/template/sdk/changes?since=-1
+     * */
+    @GetMapping("/template/sdk/changes")
+    public TemplateChanges findTemplateChanges(
+            @RequestParam(value = "since", defaultValue = "-1") Long since
+    ) {
+        log.info("Find Template Changes Since: {}", since);
+        return templateBaseService.findTemplateChanges(since);
+    }
 }
@@ -2,7 +2,12 @@ package com.imooc.coupon.dao;
 
 import com.imooc.coupon.entity.CouponTemplate;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -30,4 +35,88 @@ public interface CouponTemplateDao extends JpaRepository<CouponTemplate,Integer>
      * */
     List<CouponTemplate> findAllByExpired(Boolean expired);
 
+    /**
+     * <h2>查找优惠券码还没有全部推送到 Redis 的模板</h2>
+     * where expired = false and code_pushed < coupon_count
+     * */
+    @Query("select t from CouponTemplate t "
+            + "where t.expired = false and t.codePushed < t.count")
+    List<CouponTemplate> findAllUnfinishedTemplate();
+
+    /**
+     * <h2>查找一个分区内优惠券码还没有全部推送到 Redis 的模板</h2>
+     * where expired = false and code_pushed < coupon_count and id % total = index
+     * */
+    @Query("select t from CouponTemplate t where t.expired = false "
+            + "and t.codePushed < t.count and mod(t.id, :total) = :index")
+    List<CouponTemplate> findAllUnfinishedTemplateInPartition(
+            @Param("total") Integer total, @Param("index") Integer index
+    );
+
+    /**
+     * <h2>推进优惠券码推送断点, 断点只增不减</h2>
+     * update ... set code_pushed = ... where id = ... and code_pushed < ...
+     * */
+    @Modifying
+    @Transactional
+    @Query("update CouponTemplate t set t.codePushed = :pushed "
+            + "where t.id = :id and t.codePushed < :pushed")
+    int updateCodePushed(@Param("id") Integer id,
+                         @Param("pushed") Integer pushed);
+
+    /**
+     * <h2>将模板标记为可用</h2>
+     * update ... set available = true where id = ...
+     * */
+    @Modifying
+    @Transactional
+    @Query("update CouponTemplate t set t.available = true where t.id = :id")
+    int markAvailable(@Param("id") Integer id);
+
+    /**
+     * <h2>批量将模板标记为过期</h2>
+     * update ... set expired = true where id in (...) and expired = false
+     * */
+    @Modifying
+    @Transactional
+    @Query("update CouponTemplate t set t.expired = true "
+            + "where t.id in :ids and t.expired = false")
+    int markExpired(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * <h2>记录模板最近一次变更的版本号</h2>
+     * update ... set version = ... where id = ... and version < ...
+     * */
+    @Modifying
+    @Transactional
+    @Query("update CouponTemplate t set t.version = :version "
+            + "where t.id = :id and t.version < :version")
+    int updateVersion(@Param("id") Integer id,
+                      @Param("version") Long version);
+
+    /**
+     * <h2>分配 count 个模板变更版本号</h2>
+     * 在调用方的事务中执行, 持有 coupon_template_version 的行锁直到事务提交:
+     * 后分配版本号的变更一定在先分配的变更提交之后才能提交, 增量变更接口不会跳过版本号
+     * update coupon_template_version set version = version + ... where id = 1
+     * */
+    @Modifying
+    @Query(value = "update coupon_template_version set version = version + :count "
+            + "where id = 1", nativeQuery = true)
+    int incrementVersion(@Param("count") Integer count);
+
+    /**
+     * <h2>当前的模板全局版本号</h2>
+     * select version from coupon_template_version where id = 1
+     * */
+    @Query(value = "select version from coupon_template_version where id = 1",
+            nativeQuery = true)
+    Long findCurrentVersion();
+
+    /**
+     * <h2>查找版本号大于 since 的模板</h2>
+     * where version > ...
+     * */
+    List<CouponTemplate> findAllByVersionGreaterThan(Long since);
+
 }
@@ -97,12 +97,24 @@ public class CouponTemplate implements Serializable {
     @Convert(converter = RuleConverter.class)
     private TemplateRule rule;
 
+    /** 已推送到 Redis 的优惠券码个数(断点), 重启后从这里继续生成 */
+    @Column(name = "code_pushed", nullable = false)
+    private Integer codePushed;
+
+    /** 优惠券码分片个数, 优惠券码轮流推送到 codeShards 个 Redis List 中 */
+    @Column(name = "code_shards", nullable = false)
+    private Integer codeShards;
+
+    /** 最近一次变更的版本号, 由模板全局版本号自增得到 */
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     /**
      * <h2>自定义构造函数</h2>
      * */
     public CouponTemplate(String name, String logo, String desc, String category,
                           Integer productLine, Integer count, Long userId,
-                          Integer target, TemplateRule rule) {
+                          Integer target, TemplateRule rule, Integer codeShards) {
 
         this.available = false;
         this.expired = false;
@@ -118,6 +130,9 @@ public class CouponTemplate implements Serializable {
                 new SimpleDateFormat("yyyyMMdd").format(new Date());
         this.target = DistributeTarget.of(target);
         this.rule = rule;
+        this.codePushed = 0;
+        this.codeShards = null == codeShards ? 1 : codeShards;
+        this.version = 0L;
     }
 
 
@@ -0,0 +1,210 @@
+package com.imooc.coupon.generator;
+
+import com.imooc.coupon.entity.CouponTemplate;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>优惠券码生成器</h1>
+ * 优惠券码(对应于每一张优惠券, 18位)
+ *  前四位: 产品线 + 类型
+ *  中间六位: 日期随机(190101)
+ *  后八位: 首位 1 ~ 9, 其余 0 ~ 9, 由序号经过带密钥的置换(Feistel)得到
+ * 同一个模板内, 序号 [0, count) 与后八位一一对应, 所以生成的优惠券码天然不重复,
+ * 不需要 Set 去重, 并且可以按区间分块、并行地生成, 内存只与块大小有关
+ */
+public class CouponCodeGenerator {
+
+    /** 后八位的取值空间: 10000000 ~ 99999999 */
+    public static final int CODE_SPACE = 90_000_000;
+
+    /** 后八位的最小值, 保证首位不为 0 */
+    private static final int SUFFIX_BASE = 10_000_000;
+
+    /** Feistel 置换的半区位数, 2^28 > CODE_SPACE */
+    private static final int HALF_BITS = 14;
+
+    private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+
+    /** 单个 fork-join 任务最少处理的优惠券码个数 */
+    private static final int FORK_THRESHOLD = 4096;
+
+    /** 前四位: 产品线 + 类型 */
+    private final char[] prefix4;
+
+    /** 日期 yyMMdd */
+    private final char[] date6;
+
+    /** 每一轮 Feistel 的子密钥 */
+    private final int[] roundKeys;
+
+    public CouponCodeGenerator(String prefix4, String date6, long key) {
+        if (prefix4.length() != 4 || date6.length() != 6) {
+            throw new IllegalArgumentException(
+                    "CouponCode prefix or date is illegal: " + prefix4 + " " + date6);
+        }
+        this.prefix4 = prefix4.toCharArray();
+        this.date6 = date6.toCharArray();
+        this.roundKeys = new int[4];
+        long seed = key;
+        for (int i = 0; i != roundKeys.length; ++i) {
+            seed = mix64(seed + 0x9E3779B97F4A7C15L);
+            roundKeys[i] = (int) seed;
+        }
+    }
+
+    /**
+     * <h2>根据优惠券模板构造生成器</h2>
+     * 密钥只依赖于模板 id 和模板编码, 同一个模板重复构造得到相同的码序列
+     * */
+    public static CouponCodeGenerator of(CouponTemplate template) {
+        if (template.getCount() > CODE_SPACE) {
+            throw new IllegalArgumentException(
+                    "CouponTemplate Count Is Too Large: " + template.getCount());
+        }
+        String prefix4 = template.getProductLine().getCode().toString()
+                + template.getCategory().getCode();
+        String date6 = new SimpleDateFormat("yyMMdd").format(template.getCreateTime());
+        long key = ((long) template.getId() << 32) ^ template.getKey().hashCode();
+        return new CouponCodeGenerator(prefix4, date6, key);
+    }
+
+    /**
+     * <h2>获取第 index 个优惠券码</h2>
+     * @param index 序号, [0, CODE_SPACE)
+     * @return 18 位优惠券码
+     * */
+    public String codeAt(int index) {
+        if (index < 0 || index >= CODE_SPACE) {
+            throw new IndexOutOfBoundsException("CouponCode index: " + index);
+        }
+        return format(permute(index));
+    }
+
+    /**
+     * <h2>生成序号在 [from, to) 区间内的优惠券码</h2>
+     * 大区间会拆分到 fork-join 线程池中并行生成
+     * @return 按序号排列的优惠券码
+     * */
+    public List<String> generate(int from, int to) {
+        if (from < 0 || to > CODE_SPACE || from > to) {
+            throw new IndexOutOfBoundsException("CouponCode range: " + from + " " + to);
+        }
+        String[] codes = new String[to - from];
+        if (codes.length <= FORK_THRESHOLD) {
+            fill(codes, from, 0, codes.length);
+        } else {
+            ForkJoinPool.commonPool().invoke(new FillTask(codes, from, 0, codes.length));
+        }
+        return Arrays.asList(codes);
+    }
+
+    /**
+     * <h2>顺序生成 codes[lo, hi) 的优惠券码</h2>
+     * */
+    private void fill(String[] codes, int from, int lo, int hi) {
+        for (int i = lo; i != hi; ++i) {
+            codes[i] = format(permute(from + i));
+        }
+    }
+
+    /**
+     * <h2>[0, CODE_SPACE) 上的置换</h2>
+     * 在 [0, 2^28) 上做 Feistel 置换, 落在范围外时继续置换(cycle walking),
+     * 得到的仍然是 [0, CODE_SPACE) 上的一一映射
+     * */
+    private int permute(int index) {
+        int x = index;
+        do {
+            x = feistel(x);
+        } while (x >= CODE_SPACE);
+        return x;
+    }
+
+    private int feistel(int x) {
+        int left = x >>> HALF_BITS;
+        int right = x & HALF_MASK;
+        for (int roundKey : roundKeys) {
+            int tmp = right;
+            right = left ^ (mix32(right ^ roundKey) & HALF_MASK);
+            left = tmp;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    /**
+     * <h2>拼装 18 位优惠券码</h2>
+     * 中间六位是日期数字的一个排列, 由置换结果决定
+     * */
+    private String format(int permuted) {
+        char[] code = new char[18];
+        System.arraycopy(prefix4, 0, code, 0, 4);
+        System.arraycopy(date6, 0, code, 4, 6);
+
+        // 中间六位: 日期数字洗牌(Fisher-Yates)
+        int bits = mix32(permuted);
+        for (int i = 5; i > 0; --i) {
+            int j = (bits & 0x7FFFFFFF) % (i + 1);
+            bits = Integer.rotateRight(bits, 5);
+            char tmp = code[4 + i];
+            code[4 + i] = code[4 + j];
+            code[4 + j] = tmp;
+        }
+
+        // 后八位
+        int suffix = SUFFIX_BASE + permuted;
+        for (int i = 17; i != 9; --i) {
+            code[i] = (char) ('0' + suffix % 10);
+            suffix /= 10;
+        }
+        return new String(code);
+    }
+
+    private static int mix32(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * <h2>按区间拆分的并行生成任务</h2>
+     * */
+    private class FillTask extends RecursiveAction {
+
+        private final String[] codes;
+        private final int from;
+        private final int lo;
+        private final int hi;
+
+        FillTask(String[] codes, int from, int lo, int hi) {
+            this.codes = codes;
+            this.from = from;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= FORK_THRESHOLD) {
+                fill(codes, from, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new FillTask(codes, from, lo, mid),
+                    new FillTask(codes, from, mid, hi));
+        }
+    }
+}
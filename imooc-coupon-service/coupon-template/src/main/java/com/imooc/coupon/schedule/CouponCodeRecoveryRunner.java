@@ -0,0 +1,45 @@
+package com.imooc.coupon.schedule;
+
+import com.imooc.coupon.dao.CouponTemplateDao;
+import com.imooc.coupon.entity.CouponTemplate;
+import com.imooc.coupon.service.IAsyncService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * <h1>启动时恢复中断的优惠券码推送</h1>
+ * 推送过程中进程退出的模板, 重启后从断点继续推送
+ */
+@Slf4j
+@Component
+public class CouponCodeRecoveryRunner implements ApplicationRunner {
+
+    private final CouponTemplateDao templateDao;
+
+    private final IAsyncService asyncService;
+
+    @Autowired
+    public CouponCodeRecoveryRunner(CouponTemplateDao templateDao,
+                                    IAsyncService asyncService) {
+        this.templateDao = templateDao;
+        this.asyncService = asyncService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+
+        List<CouponTemplate> templates = templateDao.findAllUnfinishedTemplate();
+        log.info("Resume Unfinished CouponTemplate Count: {}", templates.size());
+
+        templates.forEach(t -> {
+            log.info("Resume CouponCode Push: {}, {}/{}",
+                    t.getId(), t.getCodePushed(), t.getCount());
+            asyncService.asyncConstructCouponByTemplate(t);
+        });
+    }
+}
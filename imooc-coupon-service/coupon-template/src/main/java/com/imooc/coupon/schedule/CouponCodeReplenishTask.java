@@ -0,0 +1,82 @@
+package com.imooc.coupon.schedule;
+
+import com.imooc.coupon.config.CouponCodeProperties;
+import com.imooc.coupon.dao.CouponTemplateDao;
+import com.imooc.coupon.entity.CouponTemplate;
+import com.imooc.coupon.service.ICouponCodeService;
+import com.imooc.coupon.service.IJobCoordinatorService;
+import com.imooc.coupon.vo.JobPartition;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * <h1>定时补充优惠券码池</h1>
+ * 懒生成模式下, 优惠券码剩余个数低于水位线的模板补充到优惠券码池大小
+ * 多实例时每个实例只检查自己分区内的模板
+ */
+@Slf4j
+@Component
+public class CouponCodeReplenishTask {
+
+    private final CouponTemplateDao templateDao;
+
+    private final ICouponCodeService couponCodeService;
+
+    private final CouponCodeProperties properties;
+
+    private final IJobCoordinatorService jobCoordinatorService;
+
+    @Autowired
+    public CouponCodeReplenishTask(CouponTemplateDao templateDao,
+                                   ICouponCodeService couponCodeService,
+                                   CouponCodeProperties properties,
+                                   IJobCoordinatorService jobCoordinatorService) {
+        this.templateDao = templateDao;
+        this.couponCodeService = couponCodeService;
+        this.properties = properties;
+        this.jobCoordinatorService = jobCoordinatorService;
+    }
+
+    /**
+     * <h2>检查优惠券码剩余个数并补充</h2>
+     * 一次 pipeline 获取本分区所有未推送完成模板的剩余个数
+     */
+    @Scheduled(fixedDelayString = "${coupon.code.replenish.interval:1000}")
+    public void replenishCouponCode() {
+
+        if (!properties.getReplenish().isEnabled()) {
+            return;
+        }
+
+        try {
+            jobCoordinatorService.runPartitioned("code-replenish", this::replenish);
+        } catch (Exception ex) {
+            log.error("Replenish CouponCode Error: {}", ex.getMessage());
+        }
+    }
+
+    private void replenish(JobPartition partition) {
+
+        List<CouponTemplate> templates = templateDao
+                .findAllUnfinishedTemplateInPartition(
+                        partition.getTotal(), partition.getIndex());
+        if (CollectionUtils.isEmpty(templates)) {
+            return;
+        }
+
+        List<Long> remains = couponCodeService.remainCouponCode(templates);
+        for (int i = 0; i < templates.size(); ++i) {
+            try {
+                couponCodeService.replenishCouponCode(templates.get(i), remains.get(i));
+            } catch (Exception ex) {
+                log.error("Replenish CouponCode Error: {}, {}",
+                        templates.get(i).getId(), ex.getMessage());
+            }
+        }
+    }
+}
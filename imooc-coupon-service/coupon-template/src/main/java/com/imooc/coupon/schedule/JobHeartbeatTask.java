@@ -0,0 +1,32 @@
+package com.imooc.coupon.schedule;
+
+import com.imooc.coupon.service.IJobCoordinatorService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>定时上报实例心跳</h1>
+ * 存活实例共同分担分区任务, 超过 coupon.job.member-ttl 没有心跳的实例会被移出
+ */
+@Slf4j
+@Component
+public class JobHeartbeatTask {
+
+    private final IJobCoordinatorService jobCoordinatorService;
+
+    @Autowired
+    public JobHeartbeatTask(IJobCoordinatorService jobCoordinatorService) {
+        this.jobCoordinatorService = jobCoordinatorService;
+    }
+
+    @Scheduled(fixedDelayString = "${coupon.job.heartbeat-interval:3000}")
+    public void heartbeat() {
+        try {
+            jobCoordinatorService.heartbeat();
+        } catch (Exception ex) {
+            log.error("Job Heartbeat Error: {}", ex.getMessage());
+        }
+    }
+}
@@ -1,64 +1,63 @@
 package com.imooc.coupon.schedule;
 
-import com.imooc.coupon.dao.CouponTemplateDao;
-import com.imooc.coupon.entity.CouponTemplate;
-import com.imooc.coupon.vo.TemplateRule;
+import com.imooc.coupon.service.IJobCoordinatorService;
+import com.imooc.coupon.service.ITemplateExpiryService;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
-
 /**
  * <h1>定时清理过期优惠券模板</h1>
+ * 1. 每秒下线已到期的模板, 只检查按过期时间排序的队列头部
+ * 2. 每小时从数据库重新加载未过期的模板, 作为兜底(启动时也会执行一次)
+ * 多实例时只由持有 template-expiry 租约的实例执行, 其他实例清空过期队列
  */
 @Slf4j
 @Component
 public class ScheduledTask {
 
+    /** 下线过期模板任务的租约名称 */
+    private static final String EXPIRY_JOB = "template-expiry";
+
+    private final ITemplateExpiryService templateExpiryService;
 
-    private final CouponTemplateDao templateDao;
+    private final IJobCoordinatorService jobCoordinatorService;
 
     @Autowired
-    public ScheduledTask(CouponTemplateDao templateDao) {
-        this.templateDao = templateDao;
+    public ScheduledTask(ITemplateExpiryService templateExpiryService,
+                         IJobCoordinatorService jobCoordinatorService) {
+        this.templateExpiryService = templateExpiryService;
+        this.jobCoordinatorService = jobCoordinatorService;
     }
 
     /**
-     * <h2>下线已过期的优惠券模板,1分钟执行一次</h2>
-     * 
+     * <h2>下线已过期的优惠券模板,1秒执行一次</h2>
+     *
      */
-    @Scheduled(fixedDelay = 60*60*1000)
-    @SuppressWarnings("all")
+    @Scheduled(fixedDelayString = "${coupon.template.expiry.interval:1000}")
     public void offlineCouponTemplate(){
-        log.info("开始执行 offlineCouponTemplate");
-        List<CouponTemplate> templates = templateDao.findAllByExpired(true);
-        if (CollectionUtils.isEmpty(templates)){
-            log.info("offlineCouponTemplate 执行完成");
-            return;
-        }
-
-        List<CouponTemplate> expiredCouponTemplate = new ArrayList<>(templates.size());
-        Date curDate = new Date();
-        templates.stream()
-        .forEach(
-                t->{
-                    TemplateRule rule = t.getRule();
-                    if (rule.getExpiration().getDeadline()<curDate.getTime()){
-                        t.setExpired(true);
-                        expiredCouponTemplate.add(t);
-                    }
-                }
-        );
-        if (CollectionUtils.isNotEmpty(expiredCouponTemplate)){
-            log.info("Expired CouponTemplate Num: {}",templateDao.saveAll(expiredCouponTemplate));
+        try {
+            if (!jobCoordinatorService.runExclusively(EXPIRY_JOB,
+                    templateExpiryService::expireDueTemplates)) {
+                templateExpiryService.releaseExpiry();
+            }
+        } catch (Exception ex) {
+            log.error("offlineCouponTemplate error: {}", ex.getMessage());
         }
-        log.info("offlineCouponTemplate 执行完成");
+    }
 
+    /**
+     * <h2>重新加载未过期的优惠券模板,1小时执行一次</h2>
+     *
+     */
+    @Scheduled(fixedDelay = 60*60*1000)
+    public void reloadCouponTemplateExpiry(){
+        log.info("开始执行 reloadCouponTemplateExpiry");
+        boolean executed = jobCoordinatorService.runExclusively(EXPIRY_JOB, () -> {
+            templateExpiryService.reloadExpiry();
+            templateExpiryService.expireDueTemplates();
+        });
+        log.info("reloadCouponTemplateExpiry 执行完成: {}", executed);
     }
 }
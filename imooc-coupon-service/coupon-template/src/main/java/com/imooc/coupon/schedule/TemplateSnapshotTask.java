@@ -0,0 +1,32 @@
+package com.imooc.coupon.schedule;
+
+import com.imooc.coupon.service.ITemplateBaseService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * <h1>定时检查模板全局版本号, 版本号变化时重建可用模板快照</h1>
+ * 其他实例上发生的模板变更也能在一个检查间隔内同步到本实例
+ */
+@Slf4j
+@Component
+public class TemplateSnapshotTask {
+
+    private final ITemplateBaseService templateBaseService;
+
+    @Autowired
+    public TemplateSnapshotTask(ITemplateBaseService templateBaseService) {
+        this.templateBaseService = templateBaseService;
+    }
+
+    @Scheduled(fixedDelayString = "${coupon.template.snapshot.interval:1000}")
+    public void refreshUsableTemplateSnapshot() {
+        try {
+            templateBaseService.refreshUsableTemplateSnapshot();
+        } catch (Exception ex) {
+            log.error("Refresh Usable Template Snapshot Error: {}", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.imooc.coupon.service;
+
+import com.imooc.coupon.entity.CouponTemplate;
+
+import java.util.List;
+
+/**
+ * <h1>优惠券码推送服务接口定义</h1>
+ * 负责把优惠券码分批生成并推送到 Redis, 并记录断点
+ */
+public interface ICouponCodeService {
+
+    /**
+     * <h2>分批推送优惠券码, 直到游标到达 limit</h2>
+     * 每批先在 Redis 中分配序号区间再推送, 多个实例同时推送也不会产生重复的优惠券码
+     * @param template {@link CouponTemplate} 优惠券模板实体
+     * @param limit 序号上界, 不超过 template.count
+     * @return 本次推送的优惠券码个数
+     */
+    int pushCouponCode(CouponTemplate template, int limit);
+
+    /**
+     * <h2>根据模板的配置推送优惠券码</h2>
+     * 懒生成模式下只补充到优惠券码池大小, 否则推送全部
+     * @param template {@link CouponTemplate} 优惠券模板实体
+     * @return 本次推送的优惠券码个数
+     */
+    int constructCouponCode(CouponTemplate template);
+
+    /**
+     * <h2>批量获取模板在 Redis 中剩余的优惠券码个数</h2>
+     * 分片的模板返回所有分片的剩余个数之和
+     * @param templates {@link CouponTemplate}s
+     * @return 与 templates 一一对应的剩余个数
+     */
+    List<Long> remainCouponCode(List<CouponTemplate> templates);
+
+    /**
+     * <h2>剩余优惠券码低于水位线时, 补充到优惠券码池大小</h2>
+     * @param template {@link CouponTemplate} 优惠券模板实体
+     * @param remain Redis 中剩余的优惠券码个数
+     * @return 本次推送的优惠券码个数
+     */
+    int replenishCouponCode(CouponTemplate template, long remain);
+}
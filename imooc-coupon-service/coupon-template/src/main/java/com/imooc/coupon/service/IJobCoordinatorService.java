@@ -0,0 +1,40 @@
+package com.imooc.coupon.service;
+
+import com.imooc.coupon.vo.JobPartition;
+
+import java.util.function.Consumer;
+
+/**
+ * <h1>多实例定时任务协调服务接口定义</h1>
+ * 1. 租约: 同一时刻只有一个实例执行的任务
+ * 2. 分区: 按实例心跳把模板 id 空间分给所有存活实例, 大任务并行执行而不是重复执行
+ */
+public interface IJobCoordinatorService {
+
+    /**
+     * <h2>持有租约时执行任务</h2>
+     * 租约由执行的实例持有并在每次执行时续期, 持有者下线后租约到期, 由其他实例接管
+     * @param job 任务名称
+     * @param task 任务
+     * @return 本实例是否执行了任务
+     */
+    boolean runExclusively(String job, Runnable task);
+
+    /**
+     * <h2>只处理本实例负责的分区</h2>
+     * @param job 任务名称
+     * @param task 任务, 参数为本实例负责的 {@link JobPartition}
+     */
+    void runPartitioned(String job, Consumer<JobPartition> task);
+
+    /**
+     * <h2>获取本实例当前负责的分区</h2>
+     * @return {@link JobPartition}
+     */
+    JobPartition currentPartition();
+
+    /**
+     * <h2>上报本实例心跳, 并清理过期的实例</h2>
+     */
+    void heartbeat();
+}
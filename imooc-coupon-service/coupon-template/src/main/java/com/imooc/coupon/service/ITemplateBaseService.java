@@ -3,6 +3,8 @@ package com.imooc.coupon.service;
 import com.imooc.coupon.entity.CouponTemplate;
 import com.imooc.coupon.exception.CouponException;
 import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.TemplateChanges;
+import com.imooc.coupon.vo.UsableTemplateSnapshot;
 
 import java.util.Collection;
 import java.util.List;
@@ -26,6 +28,22 @@ public interface ITemplateBaseService {
      */
     List<CouponTemplateSDK> findAllUsableTemplate();
 
+    /**
+     * <h2>获取可用优惠券模板的快照</h2>
+     * @return {@link UsableTemplateSnapshot}
+     */
+    UsableTemplateSnapshot getUsableTemplateSnapshot();
+
+    /**
+     * <h2>重建可用优惠券模板的快照</h2>
+     */
+    void rebuildUsableTemplateSnapshot();
+
+    /**
+     * <h2>模板全局版本号与快照不一致时, 重建快照</h2>
+     */
+    void refreshUsableTemplateSnapshot();
+
     /**
      * <h2>获取模板ids 到 CouponTemplateSDK 的映射</h2>
      * @param ids 模板 ids
@@ -33,4 +51,11 @@ public interface ITemplateBaseService {
      */
     Map<Integer,CouponTemplateSDK> findIds2TemplateSdk(Collection<Integer> ids);
 
+    /**
+     * <h2>获取版本号大于 since 的优惠券模板变更</h2>
+     * @param since 客户端已同步到的版本号, -1 代表全量
+     * @return {@link TemplateChanges}
+     */
+    TemplateChanges findTemplateChanges(Long since);
+
 }
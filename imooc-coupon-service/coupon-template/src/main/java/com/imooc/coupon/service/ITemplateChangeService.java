@@ -0,0 +1,25 @@
+package com.imooc.coupon.service;
+
+import java.util.Collection;
+
+/**
+ * <h1>优惠券模板变更通知服务接口定义</h1>
+ * 模板创建、变为可用、过期时推进模板的版本号, 并通知各个节点, 使节点上缓存的 CouponTemplateSDK 失效
+ */
+public interface ITemplateChangeService {
+
+    /**
+     * <h2>发布优惠券模板变更</h2>
+     * @param templateId 优惠券模板主键
+     * @return 本次变更的版本号
+     */
+    long publishTemplateChange(Integer templateId);
+
+    /**
+     * <h2>批量发布优惠券模板变更</h2>
+     * 一次分配所有模板的版本号, 只重建一次可用模板快照
+     * @param templateIds 优惠券模板主键
+     * @return 本次变更中最大的版本号
+     */
+    long publishTemplateChanges(Collection<Integer> templateIds);
+}
@@ -0,0 +1,35 @@
+package com.imooc.coupon.service;
+
+import com.imooc.coupon.entity.CouponTemplate;
+
+/**
+ * <h1>优惠券模板过期服务接口定义</h1>
+ * 按 rule.expiration.deadline 排序保存未过期的模板, 到期后批量下线
+ * 多实例时只由持有租约的实例下线, 其他实例不保存过期队列
+ */
+public interface ITemplateExpiryService {
+
+    /**
+     * <h2>登记模板的过期时间</h2>
+     * @param template {@link CouponTemplate} 优惠券模板实体
+     */
+    void scheduleExpiry(CouponTemplate template);
+
+    /**
+     * <h2>从数据库重新加载所有未过期的模板</h2>
+     * @return 加载的模板个数
+     */
+    int reloadExpiry();
+
+    /**
+     * <h2>批量下线已到期的模板</h2>
+     * 队列没有加载时先从数据库加载, 否则先登记其他实例上新建/变更的模板
+     * @return 下线的模板个数
+     */
+    int expireDueTemplates();
+
+    /**
+     * <h2>清空过期队列, 本实例不再负责下线模板时调用</h2>
+     */
+    void releaseExpiry();
+}
@@ -1,26 +1,15 @@
 package com.imooc.coupon.service.impl;
 
-import com.alibaba.fastjson.JSON;
 import com.google.common.base.Stopwatch;
-import com.imooc.coupon.constant.Constant;
-import com.imooc.coupon.dao.CouponTemplateDao;
 import com.imooc.coupon.entity.CouponTemplate;
 import com.imooc.coupon.service.IAsyncService;
+import com.imooc.coupon.service.ICouponCodeService;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.ListOperations;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.text.SimpleDateFormat;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * <h1>异步服务接口实现</h1>
@@ -30,20 +19,19 @@ import java.util.stream.Collectors;
 public class AsyncServiceImpl implements IAsyncService {
 
 
-    private final CouponTemplateDao templateDao;
-
-    /**注入redis模板类*/
-    private final StringRedisTemplate redisTemplate;
+    /** 优惠券码推送服务 */
+    private final ICouponCodeService couponCodeService;
 
     @Autowired
-    public AsyncServiceImpl(CouponTemplateDao templateDao, StringRedisTemplate redisTemplate) {
-        this.templateDao = templateDao;
-        this.redisTemplate = redisTemplate;
+    public AsyncServiceImpl(ICouponCodeService couponCodeService) {
+        this.couponCodeService = couponCodeService;
     }
 
     /**
      * <h2>根据模板异步创建优惠券码</h2>
-     *
+     * 优惠券码分批生成并推送, 第一批推送完成后模板即可用;
+     * 推送中断后再次调用, 会从断点继续推送;
+     * 懒生成模式下只推送一个优惠券码池, 剩余的由后台任务补充
      * @param couponTemplate {@link CouponTemplate} 优惠券模板实体
      */
     @Override
@@ -53,16 +41,8 @@ public class AsyncServiceImpl implements IAsyncService {
 
         Stopwatch watch = Stopwatch.createStarted();
 
-        Set<String> couponCodes = buildCouponCode(template);
-
-        // imooc_coupon_template_code_1
-        String redisKey = String.format("%s%s",
-                Constant.RedisPrefix.COUPON_TEMPLATE, template.getId().toString());
-        log.info("Push CouponCode To Redis: {}",
-                redisTemplate.opsForList().rightPushAll(redisKey, couponCodes));
-
-        template.setAvailable(true);
-        templateDao.save(template);
+        int pushed = couponCodeService.constructCouponCode(template);
+        log.info("Push CouponCode To Redis: {}", pushed);
 
         watch.stop();
         log.info("Construct CouponCode By Template Cost: {}ms",
@@ -71,51 +51,4 @@ public class AsyncServiceImpl implements IAsyncService {
         // TODO 发送短信或者邮件通知优惠券模板已经可用
         log.info("CouponTemplate({}) Is Available!", template.getId());
     }
-
-    /**
-     * <h2>构造优惠券码</h2>
-     * 优惠券码(对应于每一张优惠券, 18位)
-     *  前四位: 产品线 + 类型
-     *  中间六位: 日期随机(190101)
-     *  后八位: 0 ~ 9 随机数构成
-     * @param template {@link CouponTemplate} 实体类
-     * @return Set<String> 与 template.count 相同个数的优惠券码
-     * */
-    @SuppressWarnings("all")
-    private Set<String> buildCouponCode(CouponTemplate template){
-        Stopwatch watch =  Stopwatch.createStarted();
-        Set<String> set = new HashSet<>(template.getCount());
-        String prefix4 = template.getProductLine().getCode().toString()
-                + template.getCategory().getCode();
-        String date = new SimpleDateFormat("yyMMdd").format(template.getCreateTime());
-        for (int i=0;i!=template.getCount();i++){
-            set.add(prefix4
-                    + buildCouponCodeSuffix14(date));
-        }
-        //先用for在用while,以提高性能 ,不要直接使用while循环
-        while (set.size()<template.getCount()){
-            set.add(prefix4 + buildCouponCodeSuffix14(date));
-        }
-        assert set.size()==template.getCount();
-        watch.stop();
-        log.info("Build Coupon Code Cost: {}ms",watch.elapsed(TimeUnit.MILLISECONDS));
-        return set;
-    }
-
-    /**
-     * <h2>构造优惠券码的后 14 位</h2>
-     * @param date 创建优惠券的日期
-     * @return 14 位优惠券码
-     * */
-    private String buildCouponCodeSuffix14(String date) {
-        char[] bases = new char[]{'1', '2', '3', '4', '5', '6', '7', '8', '9'};
-        List<Character> chars = date.chars()
-                .mapToObj(e->(char)e).collect(Collectors.toList());
-        Collections.shuffle(chars);
-        String mid6 = chars.stream()
-                .map(Object::toString).collect(Collectors.joining());
-        String suffix8 = RandomStringUtils.random(1,bases)
-                + RandomStringUtils.randomNumeric(7);
-        return mid6 + suffix8;
-    }
 }
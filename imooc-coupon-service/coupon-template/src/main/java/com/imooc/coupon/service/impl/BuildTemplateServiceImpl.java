@@ -6,6 +6,8 @@ import com.imooc.coupon.entity.CouponTemplate;
 import com.imooc.coupon.exception.CouponException;
 import com.imooc.coupon.service.IAsyncService;
 import com.imooc.coupon.service.IBuildTemplateService;
+import com.imooc.coupon.service.ITemplateChangeService;
+import com.imooc.coupon.service.ITemplateExpiryService;
 import com.imooc.coupon.vo.TemplateRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,10 +22,18 @@ public class BuildTemplateServiceImpl implements IBuildTemplateService {
 
     private final   CouponTemplateDao templateDao;
 
+    private final   ITemplateChangeService templateChangeService;
+
+    private final   ITemplateExpiryService templateExpiryService;
+
     @Autowired
-    public BuildTemplateServiceImpl(IAsyncService asyncService, CouponTemplateDao templateDao) {
+    public BuildTemplateServiceImpl(IAsyncService asyncService, CouponTemplateDao templateDao,
+                                    ITemplateChangeService templateChangeService,
+                                    ITemplateExpiryService templateExpiryService) {
         this.asyncService = asyncService;
         this.templateDao = templateDao;
+        this.templateChangeService = templateChangeService;
+        this.templateExpiryService = templateExpiryService;
     }
 
 
@@ -47,6 +57,8 @@ public class BuildTemplateServiceImpl implements IBuildTemplateService {
         // 构造 CouponTemplate 并保存到数据库中
         CouponTemplate template = requestToTemplate(request);
         template = templateDao.save(template);
+        templateChangeService.publishTemplateChange(template.getId());
+        templateExpiryService.scheduleExpiry(template);
         asyncService.asyncConstructCouponByTemplate(template);
         return template;
         
@@ -65,7 +77,8 @@ public class BuildTemplateServiceImpl implements IBuildTemplateService {
                 request.getCount(),
                 request.getUserId(),
                 request.getTarget(),
-                request.getRule()
+                request.getRule(),
+                request.getCodeShards()
         );
     }
 
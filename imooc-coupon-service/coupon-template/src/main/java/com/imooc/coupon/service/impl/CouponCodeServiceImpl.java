@@ -0,0 +1,245 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.config.CouponCodeProperties;
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.dao.CouponTemplateDao;
+import com.imooc.coupon.entity.CouponTemplate;
+import com.imooc.coupon.generator.CouponCodeGenerator;
+import com.imooc.coupon.service.ICouponCodeService;
+import com.imooc.coupon.service.ITemplateChangeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h1>优惠券码推送服务实现</h1>
+ * 1. 从 Redis 游标(不存在时为数据库断点)开始, 按批生成优惠券码
+ * 2. 每批拆成多段, 每段通过 Lua 脚本推送并前进游标, 两者原子完成, 避免单个超大命令阻塞 Redis;
+ *    游标与这一段的起始序号不一致时(其他实例已经推送)不推送, 从当前游标继续;
+ *    模板分片时, 序号为 i 的优惠券码推送到第 i % codeShards 个分片
+ * 3. 每批推送完成后更新数据库断点, 第一批推送完成后模板即可用
+ * 4. 懒生成模式下, 只保证 Redis 中剩余一个优惠券码池, 由后台任务补充;
+ *    游标即已发放(生成)的优惠券码计数, 不会超过 template.count
+ * 游标总是等于已经推送到 Redis 的序号上界, 进程在任何时刻退出都不会跳过或重复优惠券码
+ */
+@Slf4j
+@Service
+public class CouponCodeServiceImpl implements ICouponCodeService {
+
+    /** 推送一段优惠券码并前进游标的脚本 */
+    private static final RedisScript<List> PUSH_SCRIPT = pushScript();
+
+    private final CouponTemplateDao templateDao;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final CouponCodeProperties properties;
+
+    private final ITemplateChangeService templateChangeService;
+
+    @Autowired
+    public CouponCodeServiceImpl(CouponTemplateDao templateDao,
+                                 StringRedisTemplate redisTemplate,
+                                 CouponCodeProperties properties,
+                                 ITemplateChangeService templateChangeService) {
+        this.templateDao = templateDao;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.templateChangeService = templateChangeService;
+    }
+
+    /**
+     * <h2>分批推送优惠券码, 直到游标到达 limit</h2>
+     * 可以被多个实例并发调用, 每个序号只会推送一次
+     * @param template {@link CouponTemplate} 优惠券模板实体
+     * @param limit 序号上界, 不超过 template.count
+     * @return 本次推送的优惠券码个数
+     */
+    @Override
+    public int pushCouponCode(CouponTemplate template, int limit) {
+
+        CouponCodeGenerator generator = CouponCodeGenerator.of(template);
+        int upper = Math.min(limit, template.getCount());
+        int pipelineSize = properties.getPipelineSize();
+        boolean available = template.getAvailable();
+        int pushed = 0;
+        int cursor = currentCursor(template);
+
+        while (cursor < upper) {
+            int from = cursor;
+            int to = Math.min(from + properties.getBatchSize(), upper);
+            List<String> codes = generator.generate(from, to);
+            while (cursor < to) {
+                int[] result = pushCodes(template, cursor, codes.subList(
+                        cursor - from, Math.min(cursor + pipelineSize, to) - from));
+                pushed += result[0];
+                cursor = result[1];
+                if (result[0] == 0) {
+                    // 其他实例已经推送, 从当前游标重新生成
+                    log.info("CouponCode Cursor Moved: {} {}", template.getId(), cursor);
+                    break;
+                }
+            }
+
+            // 记录断点, 断点只增不减
+            templateDao.updateCodePushed(template.getId(), cursor);
+            if (!available && cursor > 0) {
+                templateDao.markAvailable(template.getId());
+                templateChangeService.publishTemplateChange(template.getId());
+                available = true;
+                log.info("CouponTemplate({}) Is Available After First Batch!",
+                        template.getId());
+            }
+            log.debug("Push CouponCode Batch: {} [{}, {})",
+                    template.getId(), from, cursor);
+        }
+
+        template.setAvailable(available);
+        return pushed;
+    }
+
+    /**
+     * <h2>根据模板的配置推送优惠券码</h2>
+     * @param template {@link CouponTemplate} 优惠券模板实体
+     * @return 本次推送的优惠券码个数
+     */
+    @Override
+    public int constructCouponCode(CouponTemplate template) {
+
+        if (!properties.getReplenish().isEnabled()) {
+            return pushCouponCode(template, template.getCount());
+        }
+        long remain = remainCouponCode(
+                Collections.singletonList(template)).get(0);
+        return replenishCouponCode(template, remain);
+    }
+
+    /**
+     * <h2>批量获取模板在 Redis 中剩余的优惠券码个数</h2>
+     * @param templates {@link CouponTemplate}s
+     * @return 与 templates 一一对应的剩余个数, 分片的模板为所有分片之和
+     */
+    @Override
+    @SuppressWarnings("all")
+    public List<Long> remainCouponCode(List<CouponTemplate> templates) {
+
+        SessionCallback<Object> sessionCallback = new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                templates.forEach(t -> {
+                    for (int shard = 0; shard < t.getCodeShards(); ++shard) {
+                        operations.opsForList().size(
+                                codeKey(t.getId(), t.getCodeShards(), shard));
+                    }
+                });
+                return null;
+            }
+        };
+        List<Object> sizes = redisTemplate.executePipelined(sessionCallback);
+
+        List<Long> remains = new ArrayList<>(templates.size());
+        int index = 0;
+        for (CouponTemplate t : templates) {
+            long remain = 0;
+            for (int shard = 0; shard < t.getCodeShards(); ++shard) {
+                remain += (Long) sizes.get(index++);
+            }
+            remains.add(remain);
+        }
+        return remains;
+    }
+
+    /**
+     * <h2>剩余优惠券码低于水位线时, 补充到优惠券码池大小</h2>
+     * @param template {@link CouponTemplate} 优惠券模板实体
+     * @param remain Redis 中剩余的优惠券码个数
+     * @return 本次推送的优惠券码个数
+     */
+    @Override
+    public int replenishCouponCode(CouponTemplate template, long remain) {
+
+        CouponCodeProperties.Replenish replenish = properties.getReplenish();
+        if (remain >= replenish.getLowWatermark()) {
+            return 0;
+        }
+        long limit = currentCursor(template) + replenish.getPoolSize() - remain;
+        int pushed = pushCouponCode(template,
+                (int) Math.min(limit, template.getCount()));
+        log.info("Replenish CouponCode: {}, remain: {}, pushed: {}",
+                template.getId(), remain, pushed);
+        return pushed;
+    }
+
+    /**
+     * <h2>当前已推送的优惠券码序号上界</h2>
+     * 游标不存在时(首次推送或 Redis 数据丢失), 以数据库断点作为初始值
+     * */
+    private int currentCursor(CouponTemplate template) {
+
+        String cursor = redisTemplate.opsForValue().get(cursorKey(template.getId()));
+        return null == cursor ? template.getCodePushed() : Integer.parseInt(cursor);
+    }
+
+    /**
+     * <h2>通过 Lua 脚本推送一段优惠券码并前进游标</h2>
+     * @param from 这段优惠券码中第一个的序号
+     * @return {推送的个数, 推送之后的游标}, 推送的个数为 0 代表游标已经被其他实例前进
+     * */
+    @SuppressWarnings("unchecked")
+    private int[] pushCodes(CouponTemplate template, int from, List<String> codes) {
+
+        int shards = template.getCodeShards();
+        List<String> keys = new ArrayList<>(shards + 1);
+        keys.add(cursorKey(template.getId()));
+        for (int shard = 0; shard < shards; ++shard) {
+            // imooc_coupon_template_code_{1} 或 imooc_coupon_template_code_{1}_0
+            keys.add(codeKey(template.getId(), shards, shard));
+        }
+        List<String> args = new ArrayList<>(codes.size() + 2);
+        args.add(String.valueOf(from));
+        args.add(String.valueOf(template.getCodePushed()));
+        args.addAll(codes);
+
+        List<Long> result = redisTemplate.execute(PUSH_SCRIPT, keys, args.toArray());
+        return new int[]{result.get(0).intValue(), result.get(1).intValue()};
+    }
+
+    /**
+     * <h2>优惠券码生成游标的 Redis Key</h2>
+     * 与优惠券码分片使用同一个 hash tag, 推送脚本可以同时访问
+     * */
+    private static String cursorKey(Integer templateId) {
+        return String.format("%s{%s}", Constant.RedisPrefix.COUPON_TEMPLATE_CURSOR, templateId);
+    }
+
+    /**
+     * <h2>优惠券码分片的 Redis Key</h2>
+     * 模板 id 作为 hash tag, 分发服务可以在一个脚本中同时访问领取计数与所有分片
+     * */
+    private static String codeKey(Integer templateId, int shards, int shard) {
+        return shards == 1
+                ? String.format("%s{%s}", Constant.RedisPrefix.COUPON_TEMPLATE, templateId)
+                : String.format("%s{%s}_%s", Constant.RedisPrefix.COUPON_TEMPLATE,
+                templateId, shard);
+    }
+
+    private static RedisScript<List> pushScript() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(
+                new ClassPathResource("lua/push_coupon_code.lua")));
+        script.setResultType(List.class);
+        return script;
+    }
+}
@@ -0,0 +1,220 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.config.JobProperties;
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.service.IJobCoordinatorService;
+import com.imooc.coupon.vo.JobPartition;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * <h1>多实例定时任务协调服务实现</h1>
+ * 1. 租约: SET NX PX 获取, 持有者每次执行时续期, 通过 Lua 脚本比较实例 id 后续期/释放
+ * 2. 分区: 实例定期把心跳写入 zset, 存活实例按实例 id 排序后决定各自负责的分区
+ * 租约到期或实例上下线的瞬间, 同一个模板可能被处理两次, 因此任务本身需要幂等
+ */
+@Slf4j
+@Service
+public class JobCoordinatorServiceImpl implements IJobCoordinatorService {
+
+    /** 获取或续期租约的脚本 */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT =
+            leaseScript("lua/acquire_job_lease.lua");
+
+    /** 释放租约的脚本 */
+    private static final RedisScript<Long> RELEASE_SCRIPT =
+            leaseScript("lua/release_job_lease.lua");
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final JobProperties properties;
+
+    private final MeterRegistry registry;
+
+    /** 本实例 id: pid@host_随机串, 重启后变化 */
+    private final String instanceId = String.format("%s_%s",
+            ManagementFactory.getRuntimeMXBean().getName(),
+            UUID.randomUUID().toString().substring(0, 8));
+
+    /** 本实例当前持有租约的任务 */
+    private final Set<String> heldJobs = ConcurrentHashMap.newKeySet();
+
+    /** 最近一次看到的存活实例个数 */
+    private final AtomicInteger members = new AtomicInteger(1);
+
+    @Autowired
+    public JobCoordinatorServiceImpl(StringRedisTemplate redisTemplate,
+                                     JobProperties properties,
+                                     MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.registry = registry;
+        Gauge.builder("coupon.job.lease.held", heldJobs, Set::size)
+                .register(registry);
+        Gauge.builder("coupon.job.members", members, AtomicInteger::get)
+                .register(registry);
+    }
+
+    /**
+     * <h2>持有租约时执行任务</h2>
+     * @param job 任务名称
+     * @param task 任务
+     * @return 本实例是否执行了任务
+     */
+    @Override
+    public boolean runExclusively(String job, Runnable task) {
+
+        if (!acquireLease(job)) {
+            return false;
+        }
+        run(job, task);
+        return true;
+    }
+
+    /**
+     * <h2>只处理本实例负责的分区</h2>
+     * @param job 任务名称
+     * @param task 任务, 参数为本实例负责的 {@link JobPartition}
+     */
+    @Override
+    public void runPartitioned(String job, Consumer<JobPartition> task) {
+
+        JobPartition partition = currentPartition();
+        run(job, () -> task.accept(partition));
+    }
+
+    /**
+     * <h2>获取本实例当前负责的分区</h2>
+     * 本实例还没有上报心跳时也算作存活实例
+     * @return {@link JobPartition}
+     */
+    @Override
+    public JobPartition currentPartition() {
+
+        long now = System.currentTimeMillis();
+        Set<String> live = redisTemplate.opsForZSet().rangeByScore(
+                Constant.RedisPrefix.JOB_MEMBERS,
+                now - properties.getMemberTtl(), Double.MAX_VALUE);
+
+        // 按实例 id 排序, 心跳时间变化不会改变分区
+        TreeSet<String> sorted = new TreeSet<>(
+                null == live ? Collections.emptySet() : live);
+        sorted.add(instanceId);
+        members.set(sorted.size());
+
+        return new JobPartition(sorted.headSet(instanceId).size(), sorted.size());
+    }
+
+    /**
+     * <h2>上报本实例心跳, 并清理过期的实例</h2>
+     */
+    @Override
+    public void heartbeat() {
+
+        long now = System.currentTimeMillis();
+        redisTemplate.opsForZSet().add(
+                Constant.RedisPrefix.JOB_MEMBERS, instanceId, now);
+        redisTemplate.opsForZSet().removeRangeByScore(
+                Constant.RedisPrefix.JOB_MEMBERS,
+                0, now - properties.getMemberTtl());
+    }
+
+    /**
+     * <h2>实例关闭时释放租约并退出分区, 其他实例不需要等待租约到期</h2>
+     * */
+    @PreDestroy
+    public void shutdown() {
+
+        try {
+            heldJobs.forEach(job -> redisTemplate.execute(RELEASE_SCRIPT,
+                    Collections.singletonList(leaseKey(job)), instanceId));
+            redisTemplate.opsForZSet().remove(
+                    Constant.RedisPrefix.JOB_MEMBERS, instanceId);
+            log.info("Job Coordinator Shutdown: {}, released: {}",
+                    instanceId, heldJobs);
+        } catch (Exception ex) {
+            log.error("Job Coordinator Shutdown Error: {}", ex.getMessage());
+        }
+        heldJobs.clear();
+    }
+
+    /**
+     * <h2>获取或续期租约</h2>
+     * Redis 不可用时视为没有获取到租约
+     * */
+    private boolean acquireLease(String job) {
+
+        String result;
+        try {
+            Long acquired = redisTemplate.execute(ACQUIRE_SCRIPT,
+                    Collections.singletonList(leaseKey(job)),
+                    instanceId, String.valueOf(properties.getLeaseTime()));
+            result = null == acquired || acquired == 0 ? "rejected"
+                    : acquired == 1 ? "acquired" : "renewed";
+        } catch (Exception ex) {
+            log.error("Acquire Job Lease Error: {}, {}", job, ex.getMessage());
+            result = "error";
+        }
+        registry.counter("coupon.job.lease", "job", job, "result", result)
+                .increment();
+
+        boolean held = "acquired".equals(result) || "renewed".equals(result);
+        if (held) {
+            if (heldJobs.add(job)) {
+                log.info("Job Lease Acquired: {}, {}", job, instanceId);
+            }
+        } else if (heldJobs.remove(job)) {
+            log.info("Job Lease Lost: {}, {}", job, instanceId);
+        }
+        return held;
+    }
+
+    /**
+     * <h2>执行任务并记录耗时</h2>
+     * */
+    private void run(String job, Runnable task) {
+
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            outcome = "failure";
+            throw ex;
+        } finally {
+            registry.timer("coupon.job.duration", "job", job, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String leaseKey(String job) {
+        return String.format("%s%s", Constant.RedisPrefix.JOB_LEASE, job);
+    }
+
+    private static RedisScript<Long> leaseScript(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(
+                new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
+    }
+}
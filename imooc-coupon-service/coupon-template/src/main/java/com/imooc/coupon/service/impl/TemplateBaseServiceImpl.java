@@ -1,26 +1,47 @@
 package com.imooc.coupon.service.impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.imooc.coupon.dao.CouponTemplateDao;
 import com.imooc.coupon.entity.CouponTemplate;
 import com.imooc.coupon.exception.CouponException;
 import com.imooc.coupon.service.ITemplateBaseService;
+import com.imooc.coupon.vo.CommonResponse;
 import com.imooc.coupon.vo.CouponTemplateSDK;
+import com.imooc.coupon.vo.TemplateChanges;
+import com.imooc.coupon.vo.UsableTemplateSnapshot;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * <h1>优惠券模板基础服务实现</h1>
+ * 可用模板保存为不可变快照(包括预先序列化好的响应), 模板变更时整体重建并原子替换,
+ * 查询可用模板时不访问数据库, 也不需要解析 rule 和序列化
+ */
+@Slf4j
 @Service
 public class TemplateBaseServiceImpl implements ITemplateBaseService {
 
 
     private final  CouponTemplateDao templateDao;
 
+    private final  ObjectMapper objectMapper;
+
+    /** 可用优惠券模板快照 */
+    private final AtomicReference<UsableTemplateSnapshot> usableSnapshot =
+            new AtomicReference<>();
+
     @Autowired
-    public TemplateBaseServiceImpl(CouponTemplateDao templateDao) {
+    public TemplateBaseServiceImpl(CouponTemplateDao templateDao,
+                                   ObjectMapper objectMapper) {
         this.templateDao = templateDao;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -46,10 +67,56 @@ public class TemplateBaseServiceImpl implements ITemplateBaseService {
      */
     @Override
     public List<CouponTemplateSDK> findAllUsableTemplate() {
-        List<CouponTemplate> allByAvailableAndExpired = templateDao.findAllByAvailableAndExpired(true, false);
+        return getUsableTemplateSnapshot().getTemplates();
+    }
+
+    /**
+     * <h2>获取可用优惠券模板的快照</h2>
+     * 还没有快照时(启动后第一次访问)先构建
+     * @return {@link UsableTemplateSnapshot}
+     */
+    @Override
+    public UsableTemplateSnapshot getUsableTemplateSnapshot() {
+        UsableTemplateSnapshot snapshot = usableSnapshot.get();
+        if (null == snapshot) {
+            rebuildUsableTemplateSnapshot();
+            snapshot = usableSnapshot.get();
+        }
+        return snapshot;
+    }
 
-        return allByAvailableAndExpired.stream()
-                .map(this::template2TemplateSDK).collect(Collectors.toList());
+    /**
+     * <h2>重建可用优惠券模板的快照</h2>
+     * 先读取版本号再查询数据库, 查询期间发生的变更会在下一次检查时再次重建
+     */
+    @Override
+    public synchronized void rebuildUsableTemplateSnapshot() {
+        long version = currentVersion();
+        List<CouponTemplateSDK> templates = Collections.unmodifiableList(
+                templateDao.findAllByAvailableAndExpired(true, false).stream()
+                        .map(this::template2TemplateSDK)
+                        .collect(Collectors.toList()));
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(
+                    new CommonResponse<>(0, "", templates));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Serialize Usable Template Error", ex);
+        }
+        usableSnapshot.set(new UsableTemplateSnapshot(version, templates, body));
+        log.info("Rebuild Usable Template Snapshot: version {}, count {}",
+                version, templates.size());
+    }
+
+    /**
+     * <h2>模板全局版本号与快照不一致时, 重建快照</h2>
+     */
+    @Override
+    public void refreshUsableTemplateSnapshot() {
+        UsableTemplateSnapshot snapshot = usableSnapshot.get();
+        if (null == snapshot || snapshot.getVersion() != currentVersion()) {
+            rebuildUsableTemplateSnapshot();
+        }
     }
 
     /**
@@ -69,6 +136,38 @@ public class TemplateBaseServiceImpl implements ITemplateBaseService {
                 ));
     }
 
+    /**
+     * <h2>获取版本号大于 since 的优惠券模板变更</h2>
+     *
+     * @param since 客户端已同步到的版本号, -1 代表全量
+     * @return {@link TemplateChanges}
+     */
+    @Override
+    public TemplateChanges findTemplateChanges(Long since) {
+        List<CouponTemplate> changed = templateDao.findAllByVersionGreaterThan(since);
+
+        List<CouponTemplateSDK> usable = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        long version = since;
+        for (CouponTemplate template : changed) {
+            if (template.getAvailable() && !template.getExpired()) {
+                usable.add(template2TemplateSDK(template));
+            } else {
+                removed.add(template.getId());
+            }
+            version = Math.max(version, template.getVersion());
+        }
+        return new TemplateChanges(version, usable, removed);
+    }
+
+    /**
+     * <h2>当前的模板全局版本号</h2>
+     * */
+    private long currentVersion() {
+        Long version = templateDao.findCurrentVersion();
+        return null == version ? 0L : version;
+    }
+
     /**
      * <h2>将 CouponTemplate 转换为 CouponTemplateSDK</h2>
      * */
@@ -83,7 +182,9 @@ public class TemplateBaseServiceImpl implements ITemplateBaseService {
                 template.getProductLine().getCode(),
                 template.getKey(),  // 并不是拼装好的 Template Key
                 template.getTarget().getCode(),
-                template.getRule()
+                template.getRule(),
+                template.getCodeShards(),
+                template.getVersion()
         );
     }
 }
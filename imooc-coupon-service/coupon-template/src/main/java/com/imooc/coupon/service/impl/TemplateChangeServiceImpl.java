@@ -0,0 +1,95 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.constant.Constant;
+import com.imooc.coupon.dao.CouponTemplateDao;
+import com.imooc.coupon.service.ITemplateBaseService;
+import com.imooc.coupon.service.ITemplateChangeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+/**
+ * <h1>优惠券模板变更通知服务实现</h1>
+ * 1. 在同一个事务中从 coupon_template_version 分配版本号并记录到模板的 version 字段,
+ *    版本号的行锁保证变更按版本号顺序提交, 增量变更接口按版本号翻页不会漏掉变更
+ * 2. 事务提交之后, 删除 Redis 中缓存的 CouponTemplateSDK, 再通过 Redis 发布/订阅通知各个节点清理本地缓存
+ * 3. 重建本实例的可用模板快照
+ */
+@Slf4j
+@Service
+public class TemplateChangeServiceImpl implements ITemplateChangeService {
+
+    private final CouponTemplateDao templateDao;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final ITemplateBaseService templateBaseService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public TemplateChangeServiceImpl(CouponTemplateDao templateDao,
+                                     StringRedisTemplate redisTemplate,
+                                     ITemplateBaseService templateBaseService,
+                                     PlatformTransactionManager transactionManager) {
+        this.templateDao = templateDao;
+        this.redisTemplate = redisTemplate;
+        this.templateBaseService = templateBaseService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * <h2>发布优惠券模板变更</h2>
+     * @param templateId 优惠券模板主键
+     * @return 本次变更的版本号
+     */
+    @Override
+    public long publishTemplateChange(Integer templateId) {
+        return publishTemplateChanges(Collections.singletonList(templateId));
+    }
+
+    /**
+     * <h2>批量发布优惠券模板变更</h2>
+     * @param templateIds 优惠券模板主键
+     * @return 本次变更中最大的版本号
+     */
+    @Override
+    public long publishTemplateChanges(Collection<Integer> templateIds) {
+
+        long version = transactionTemplate.execute(status -> assignVersions(templateIds));
+
+        redisTemplate.delete(templateIds.stream()
+                .map(id -> String.format("%s%s", Constant.RedisPrefix.COUPON_TEMPLATE_SDK, id))
+                .collect(Collectors.toList()));
+        templateIds.forEach(id -> redisTemplate.convertAndSend(
+                Constant.RedisChannel.TEMPLATE_CHANGE, id.toString()));
+        // 本实例立即重建可用模板快照, 其他实例由定时任务检查版本号后重建
+        templateBaseService.rebuildUsableTemplateSnapshot();
+        log.info("Publish CouponTemplate Change: {}, version: {}", templateIds, version);
+        return version;
+    }
+
+    /**
+     * <h2>一次分配 [version - size + 1, version] 这一段版本号并记录到模板</h2>
+     * @return 分配的最大版本号
+     */
+    private long assignVersions(Collection<Integer> templateIds) {
+
+        if (templateDao.incrementVersion(templateIds.size()) == 0) {
+            throw new IllegalStateException("coupon_template_version Is Not Initialized");
+        }
+        long version = templateDao.findCurrentVersion();
+        long next = version - templateIds.size();
+        for (Integer templateId : templateIds) {
+            templateDao.updateVersion(templateId, ++next);
+        }
+        return version;
+    }
+}
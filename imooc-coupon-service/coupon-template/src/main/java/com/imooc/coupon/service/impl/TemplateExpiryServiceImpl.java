@@ -0,0 +1,202 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.dao.CouponTemplateDao;
+import com.imooc.coupon.entity.CouponTemplate;
+import com.imooc.coupon.service.ITemplateChangeService;
+import com.imooc.coupon.service.ITemplateExpiryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <h1>优惠券模板过期服务实现</h1>
+ * 未过期的模板按过期时间保存在 DelayQueue 中, 每次只取出已到期的模板,
+ * 不需要扫描全表; 下线通过一条 update ... where id in (...) 完成, 并发布模板变更
+ * 其他实例上新建的模板通过 version 增量登记: where version > 已登记的最大版本号
+ * 下线失败时到期的模板放回队列; 已经下线但发布变更失败的模板在下次执行时重新发布
+ */
+@Slf4j
+@Service
+public class TemplateExpiryServiceImpl implements ITemplateExpiryService {
+
+    private final CouponTemplateDao templateDao;
+
+    private final ITemplateChangeService templateChangeService;
+
+    /** 按过期时间排序的未过期模板 */
+    private final DelayQueue<ExpiryEntry> expiryQueue = new DelayQueue<>();
+
+    /** 已经在队列中的模板 id, 避免重复登记 */
+    private final Set<Integer> queued = new HashSet<>();
+
+    /** 已经下线但还没有发布变更的模板 id */
+    private final Set<Integer> unpublished = new HashSet<>();
+
+    /** 队列是否已经从数据库加载 */
+    private boolean loaded = false;
+
+    /** 已登记的模板的最大版本号 */
+    private long loadedVersion = -1L;
+
+    @Autowired
+    public TemplateExpiryServiceImpl(CouponTemplateDao templateDao,
+                                     ITemplateChangeService templateChangeService) {
+        this.templateDao = templateDao;
+        this.templateChangeService = templateChangeService;
+    }
+
+    /**
+     * <h2>登记模板的过期时间</h2>
+     * @param template {@link CouponTemplate} 优惠券模板实体
+     */
+    @Override
+    public synchronized void scheduleExpiry(CouponTemplate template) {
+        // 队列没有加载时, 加载时会从数据库读到这个模板
+        if (!loaded) {
+            return;
+        }
+        if (queued.add(template.getId())) {
+            expiryQueue.offer(new ExpiryEntry(template.getId(),
+                    template.getRule().getExpiration().getDeadline()));
+        }
+        if (null != template.getVersion()) {
+            loadedVersion = Math.max(loadedVersion, template.getVersion());
+        }
+    }
+
+    /**
+     * <h2>从数据库重新加载所有未过期的模板</h2>
+     * @return 加载的模板个数
+     */
+    @Override
+    public synchronized int reloadExpiry() {
+        // 先读取版本号再查询, 查询期间的变更会在下一次增量登记时读到
+        Long version = templateDao.findCurrentVersion();
+        List<CouponTemplate> templates = templateDao.findAllByExpired(false);
+        clear();
+        loaded = true;
+        templates.forEach(this::scheduleExpiry);
+        if (null != version) {
+            loadedVersion = Math.max(loadedVersion, version);
+        }
+        log.info("Reload CouponTemplate Expiry: {}, version: {}",
+                templates.size(), loadedVersion);
+        return templates.size();
+    }
+
+    /**
+     * <h2>批量下线已到期的模板</h2>
+     * @return 下线的模板个数
+     */
+    @Override
+    public synchronized int expireDueTemplates() {
+        publishExpired();
+        if (!loaded) {
+            reloadExpiry();
+        } else {
+            // 已过期的模板也要推进版本号, 否则每次都会重新读到它们
+            for (CouponTemplate template : templateDao.findAllByVersionGreaterThan(loadedVersion)) {
+                if (null != template.getVersion()) {
+                    loadedVersion = Math.max(loadedVersion, template.getVersion());
+                }
+                if (!template.getExpired()) {
+                    scheduleExpiry(template);
+                }
+            }
+        }
+
+        List<ExpiryEntry> due = new ArrayList<>();
+        expiryQueue.drainTo(due);
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        List<Integer> ids = due.stream()
+                .map(e -> e.templateId)
+                .distinct()
+                .collect(Collectors.toList());
+        queued.removeAll(ids);
+        int expired;
+        try {
+            expired = templateDao.markExpired(ids);
+        } catch (RuntimeException ex) {
+            // 放回队列, 下次执行时重试
+            due.forEach(expiryQueue::offer);
+            queued.addAll(ids);
+            throw ex;
+        }
+        log.info("Expired CouponTemplate: {}, updated: {}", ids, expired);
+        // 其他实例已经下线时不再重复发布
+        if (expired > 0) {
+            unpublished.addAll(ids);
+            publishExpired();
+        }
+        return expired;
+    }
+
+    /**
+     * <h2>发布已经下线的模板的变更, 失败时保留, 下次执行时重试</h2>
+     */
+    private void publishExpired() {
+        if (unpublished.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>(unpublished);
+        templateChangeService.publishTemplateChanges(ids);
+        unpublished.removeAll(ids);
+    }
+
+    /**
+     * <h2>清空过期队列, 本实例不再负责下线模板时调用</h2>
+     * 重新获得租约后从数据库重新加载
+     */
+    @Override
+    public synchronized void releaseExpiry() {
+        if (loaded) {
+            clear();
+            loaded = false;
+            log.info("Release CouponTemplate Expiry");
+        }
+    }
+
+    private void clear() {
+        expiryQueue.clear();
+        queued.clear();
+        loadedVersion = -1L;
+    }
+
+    /**
+     * <h2>一个模板的过期时间</h2>
+     */
+    private static class ExpiryEntry implements Delayed {
+
+        private final Integer templateId;
+
+        private final long deadline;
+
+        private ExpiryEntry(Integer templateId, long deadline) {
+            this.templateId = templateId;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.currentTimeMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadline, ((ExpiryEntry) other).deadline);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.imooc.coupon.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * <h1>当前实例负责的模板 id 分区</h1>
+ * 存活实例按实例 id 排序, 第 index 个实例负责 id % total == index 的模板
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public final class JobPartition {
+
+    /** 当前实例的序号 */
+    private final int index;
+
+    /** 存活实例个数 */
+    private final int total;
+
+    /**
+     * <h2>模板是否由当前实例负责</h2>
+     * */
+    public boolean owns(Integer templateId) {
+        return templateId % total == index;
+    }
+}
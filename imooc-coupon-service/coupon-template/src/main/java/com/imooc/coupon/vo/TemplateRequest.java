@@ -3,6 +3,7 @@ package com.imooc.coupon.vo;
 import com.imooc.coupon.constant.CouponCategory;
 import com.imooc.coupon.constant.DistributeTarget;
 import com.imooc.coupon.constant.ProductLine;
+import com.imooc.coupon.generator.CouponCodeGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -16,6 +17,9 @@ import org.apache.commons.lang3.StringUtils;
 @AllArgsConstructor
 public class TemplateRequest {
 
+    /** 优惠券码分片个数上限 */
+    private static final int MAX_CODE_SHARDS = 64;
+
     /** 优惠券名称 */
     private String name;
 
@@ -43,6 +47,9 @@ public class TemplateRequest {
     /** 优惠券规则 */
     private TemplateRule rule;
 
+    /** 优惠券码分片个数, 为空时不分片 */
+    private Integer codeShards;
+
     /**
      * <h2>校验对象的合法性</h2>
      * */
@@ -54,7 +61,10 @@ public class TemplateRequest {
         boolean enumValid = null != CouponCategory.of(category)
                 && null != ProductLine.of(productLine)
                 && null != DistributeTarget.of(target);
-        boolean numValid = count > 0 && userId > 0;
+        boolean numValid = count > 0 && count <= CouponCodeGenerator.CODE_SPACE
+                && userId > 0
+                && (null == codeShards
+                    || (codeShards > 0 && codeShards <= MAX_CODE_SHARDS));
 
         return stringValid && enumValid && numValid && rule.validate();
     }
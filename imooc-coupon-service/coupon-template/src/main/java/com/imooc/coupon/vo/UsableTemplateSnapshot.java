@@ -0,0 +1,24 @@
+package com.imooc.coupon.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * <h1>可用优惠券模板的不可变快照</h1>
+ * 模板变更后整体重建并原子替换, 读取时不需要加锁
+ */
+@Getter
+@AllArgsConstructor
+public final class UsableTemplateSnapshot {
+
+    /** 构建快照时的模板全局版本号 */
+    private final long version;
+
+    /** 可用的优惠券模板, 不可修改 */
+    private final List<CouponTemplateSDK> templates;
+
+    /** 预先序列化好的响应: CommonResponse<List<CouponTemplateSDK>> 的 json, 不可修改 */
+    private final byte[] body;
+}
@@ -0,0 +1,15 @@
+-- 获取或续期定时任务租约
+-- KEYS[1]: 租约 key
+-- ARGV[1]: 实例 id
+-- ARGV[2]: 租约时长(毫秒)
+-- 返回: 1 新获取, 2 续期, 0 租约由其他实例持有
+local holder = redis.call('GET', KEYS[1])
+if holder == ARGV[1] then
+    redis.call('PEXPIRE', KEYS[1], ARGV[2])
+    return 2
+end
+if not holder then
+    redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+    return 1
+end
+return 0
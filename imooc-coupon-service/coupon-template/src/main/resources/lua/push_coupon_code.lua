@@ -0,0 +1,33 @@
+-- 推送一段优惠券码并前进游标, 两者在同一个脚本中原子完成:
+-- 进程在任何时刻退出, 游标都等于已经推送到 Redis 的优惠券码序号上界, 不会跳过也不会重复
+-- KEYS[1]: 优惠券码生成游标 key
+-- KEYS[2..n]: 优惠券码分片 key, 与 KEYS[1] 使用同一个 hash tag {模板 id}
+-- ARGV[1]: 这段优惠券码中第一个的序号, 必须等于当前游标
+-- ARGV[2]: 游标不存在时的初始值(数据库中的断点)
+-- ARGV[3..n]: 按序号排列的优惠券码, 序号为 i 的推送到第 i % 分片个数 个分片
+-- 返回: {推送的个数, 推送之后的游标};
+--      游标与 ARGV[1] 不一致(其他实例已经推送)时不推送, 返回 {0, 当前游标}
+local cursor = tonumber(redis.call('GET', KEYS[1]) or ARGV[2])
+local from = tonumber(ARGV[1])
+if cursor ~= from then
+    return {0, cursor}
+end
+
+local shards = #KEYS - 1
+local parts = {}
+for shard = 1, shards do
+    parts[shard] = {}
+end
+for i = 3, #ARGV do
+    local part = parts[(from + i - 3) % shards + 1]
+    part[#part + 1] = ARGV[i]
+end
+for shard = 1, shards do
+    if #parts[shard] > 0 then
+        redis.call('RPUSH', KEYS[shard + 1], unpack(parts[shard]))
+    end
+end
+
+local to = from + #ARGV - 2
+redis.call('SET', KEYS[1], to)
+return {to - from, to}
@@ -0,0 +1,8 @@
+-- 释放定时任务租约, 只删除自己持有的租约
+-- KEYS[1]: 租约 key
+-- ARGV[1]: 实例 id
+-- 返回: 1 已释放, 0 租约不存在或由其他实例持有
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -14,11 +14,35 @@ CREATE TABLE IF NOT EXISTS `imooc_coupon_data`.`coupon_template` (
   `template_key` varchar(128) NOT NULL DEFAULT '' COMMENT '优惠券模板的编码',
   `target` int(11) NOT NULL DEFAULT '0' COMMENT '目标用户',
   `rule` varchar(1024) NOT NULL DEFAULT '' COMMENT '优惠券规则: TemplateRule 的 json 表示',
+  `code_pushed` int(11) NOT NULL DEFAULT '0' COMMENT '已推送到 Redis 的优惠券码个数(断点)',
+  `code_shards` int(11) NOT NULL DEFAULT '1' COMMENT '优惠券码分片个数',
+  `version` bigint(20) NOT NULL DEFAULT '0' COMMENT '最近一次变更的版本号',
   PRIMARY KEY (`id`),
+  KEY `idx_version` (`version`),
   KEY `idx_category` (`category`),
   KEY `idx_user_id` (`user_id`),
   UNIQUE KEY `name` (`name`)
 ) ENGINE=InnoDB AUTO_INCREMENT=10 DEFAULT CHARSET=utf8 COMMENT='优惠券模板表';
 
+-- 创建 coupon_template_version 数据表: 模板变更的全局版本号, 只有一行
+CREATE TABLE IF NOT EXISTS `imooc_coupon_data`.`coupon_template_version` (
+  `id` int(11) NOT NULL COMMENT '主键, 固定为 1',
+  `version` bigint(20) NOT NULL DEFAULT '0' COMMENT '最近分配的版本号',
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='优惠券模板变更版本号';
+
+-- 从已有模板的最大版本号开始分配
+INSERT IGNORE INTO `imooc_coupon_data`.`coupon_template_version` (`id`, `version`)
+  SELECT 1, COALESCE(MAX(`version`), 0) FROM `imooc_coupon_data`.`coupon_template`;
+
+-- 已有的表增加优惠券码推送断点
+-- ALTER TABLE `imooc_coupon_data`.`coupon_template` ADD COLUMN `code_pushed` int(11) NOT NULL DEFAULT '0' COMMENT '已推送到 Redis 的优惠券码个数(断点)';
+-- 已经可用的模板的优惠券码在增加断点之前已经全部推送, 需要标记为推送完成, 否则启动时会被当作未完成的模板重复推送
+-- UPDATE `imooc_coupon_data`.`coupon_template` SET `code_pushed` = `coupon_count` WHERE `available` = 1;
+-- 已有的表增加优惠券码分片个数
+-- ALTER TABLE `imooc_coupon_data`.`coupon_template` ADD COLUMN `code_shards` int(11) NOT NULL DEFAULT '1' COMMENT '优惠券码分片个数';
+-- 已有的表增加变更版本号
+-- ALTER TABLE `imooc_coupon_data`.`coupon_template` ADD COLUMN `version` bigint(20) NOT NULL DEFAULT '0' COMMENT '最近一次变更的版本号', ADD KEY `idx_version` (`version`);
+
 -- 清空表数据
 -- truncate coupon_template;
\ No newline at end of file
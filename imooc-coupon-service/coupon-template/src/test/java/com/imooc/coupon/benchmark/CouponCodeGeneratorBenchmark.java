@@ -0,0 +1,80 @@
+package com.imooc.coupon.benchmark;
+
+import com.imooc.coupon.generator.CouponCodeGenerator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>优惠券码生成吞吐量基准测试</h1>
+ * 每次调用生成一个模板的全部优惠券码(按块生成), 辅助计数器 codes 即每秒生成的优惠券码个数
+ * 运行: mvn test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.imooc.coupon.benchmark.CouponCodeGeneratorBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Benchmark)
+public class CouponCodeGeneratorBenchmark {
+
+    /** 模板的优惠券码总数 */
+    @Param({"1000000", "10000000"})
+    private int count;
+
+    /** 每块的优惠券码个数, 与 coupon.code.batch-size 默认值保持一致 */
+    @Param({"10000"})
+    private int chunkSize;
+
+    private CouponCodeGenerator generator;
+
+    @Setup
+    public void setup() {
+        generator = new CouponCodeGenerator("1001", "200210", 10001L);
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counter {
+
+        /** 已生成的优惠券码个数 */
+        public long codes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            codes = 0;
+        }
+    }
+
+    @Benchmark
+    public void generateAll(Counter counter, Blackhole blackhole) {
+        for (int from = 0; from < count; from += chunkSize) {
+            int to = Math.min(count, from + chunkSize);
+            blackhole.consume(generator.generate(from, to));
+        }
+        counter.codes += count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CouponCodeGeneratorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,61 @@
+package com.imooc.coupon.generator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * <h1>优惠券码生成器测试</h1>
+ */
+public class CouponCodeGeneratorTest {
+
+    private final CouponCodeGenerator generator =
+            new CouponCodeGenerator("1001", "200210", 10001L);
+
+    @Test
+    public void testCodeFormat() {
+
+        String code = generator.codeAt(0);
+        Assert.assertEquals(18, code.length());
+        Assert.assertTrue(code.startsWith("1001"));
+        Assert.assertTrue(code.matches("\\d{18}"));
+        Assert.assertNotEquals('0', code.charAt(10));
+
+        // 中间六位是日期数字的一个排列
+        char[] mid6 = code.substring(4, 10).toCharArray();
+        char[] date6 = "200210".toCharArray();
+        Arrays.sort(mid6);
+        Arrays.sort(date6);
+        Assert.assertArrayEquals(date6, mid6);
+    }
+
+    @Test
+    public void testCodeIsUnique() {
+
+        int count = 2_000_000;
+        BitSet seen = new BitSet(CouponCodeGenerator.CODE_SPACE);
+        for (int from = 0; from < count; from += 100_000) {
+            for (String code : generator.generate(from, from + 100_000)) {
+                int suffix = Integer.parseInt(code.substring(10)) - 10_000_000;
+                Assert.assertFalse(code, seen.get(suffix));
+                seen.set(suffix);
+            }
+        }
+        Assert.assertEquals(count, seen.cardinality());
+    }
+
+    @Test
+    public void testGenerateIsDeterministic() {
+
+        List<String> codes = generator.generate(5000, 15000);
+        CouponCodeGenerator same = new CouponCodeGenerator("1001", "200210", 10001L);
+        CouponCodeGenerator other = new CouponCodeGenerator("1001", "200210", 10002L);
+
+        Assert.assertEquals(codes, same.generate(5000, 15000));
+        Assert.assertEquals(codes.get(42), generator.codeAt(5042));
+        Assert.assertNotEquals(codes, other.generate(5000, 15000));
+    }
+}
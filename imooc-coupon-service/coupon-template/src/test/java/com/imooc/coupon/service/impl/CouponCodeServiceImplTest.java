@@ -0,0 +1,118 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.config.CouponCodeProperties;
+import com.imooc.coupon.dao.CouponTemplateDao;
+import com.imooc.coupon.entity.CouponTemplate;
+import com.imooc.coupon.service.ITemplateChangeService;
+import com.imooc.coupon.vo.TemplateRule;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <h1>优惠券码推送服务测试</h1>
+ * 用内存中的游标模拟推送脚本: 游标与起始序号一致时推送并前进, 否则不推送
+ */
+public class CouponCodeServiceImplTest {
+
+    private CouponTemplateDao templateDao;
+
+    private StringRedisTemplate redisTemplate;
+
+    private CouponCodeServiceImpl codeService;
+
+    /** 模拟的 Redis 游标 */
+    private int cursor;
+
+    /** 每次脚本调用推送的 [from, to) */
+    private final List<int[]> pushes = new ArrayList<>();
+
+    /** 每次脚本调用访问的 key */
+    private final List<List<String>> scriptKeys = new ArrayList<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+
+        templateDao = Mockito.mock(CouponTemplateDao.class);
+        redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = Mockito.mock(ValueOperations.class);
+        Mockito.when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        CouponCodeProperties properties = new CouponCodeProperties();
+        properties.setBatchSize(1000);
+        properties.setPipelineSize(400);
+        codeService = new CouponCodeServiceImpl(templateDao, redisTemplate,
+                properties, Mockito.mock(ITemplateChangeService.class));
+
+        Mockito.when(redisTemplate.execute(ArgumentMatchers.any(RedisScript.class),
+                ArgumentMatchers.anyList(), ArgumentMatchers.<Object>any()))
+                .thenAnswer(invocation -> {
+                    Object[] arguments = invocation.getArguments();
+                    scriptKeys.add((List<String>) arguments[1]);
+                    int from = Integer.parseInt(arguments[2].toString());
+                    if (from != cursor) {
+                        return Arrays.asList(0L, (long) cursor);
+                    }
+                    int count = arguments.length - 4;
+                    pushes.add(new int[]{from, from + count});
+                    cursor = from + count;
+                    return Arrays.asList((long) count, (long) cursor);
+                });
+    }
+
+    @Test
+    public void testPushAndCheckpointEachBatch() {
+
+        CouponTemplate template = template(2500, 2);
+
+        Assert.assertEquals(2500, codeService.pushCouponCode(template, 2500));
+        Assert.assertEquals(2500, cursor);
+        Assert.assertEquals(8, pushes.size());
+        Assert.assertArrayEquals(new int[]{800, 1000}, pushes.get(2));
+        Assert.assertEquals(Arrays.asList("imooc_coupon_template_cursor_{1}",
+                "imooc_coupon_template_code_{1}_0", "imooc_coupon_template_code_{1}_1"),
+                scriptKeys.get(0));
+
+        Mockito.verify(templateDao).updateCodePushed(1, 1000);
+        Mockito.verify(templateDao).updateCodePushed(1, 2000);
+        Mockito.verify(templateDao).updateCodePushed(1, 2500);
+        Mockito.verify(templateDao, Mockito.times(1)).markAvailable(1);
+    }
+
+    @Test
+    public void testContinueFromMovedCursor() {
+
+        CouponTemplate template = template(2500, 1);
+        // 其他实例已经推送到 1500, 这里读到的游标仍然是 0
+        cursor = 1500;
+
+        Assert.assertEquals(1000, codeService.pushCouponCode(template, 2500));
+        Assert.assertEquals(2500, cursor);
+        Assert.assertArrayEquals(new int[]{1500, 1900}, pushes.get(0));
+        Assert.assertEquals(Collections.singletonList("imooc_coupon_template_code_{1}"),
+                scriptKeys.get(0).subList(1, 2));
+        Mockito.verify(templateDao).updateCodePushed(1, 1500);
+        Mockito.verify(templateDao).updateCodePushed(1, 2500);
+    }
+
+    private static CouponTemplate template(int count, int shards) {
+
+        CouponTemplate template = new CouponTemplate("name", "logo", "desc", "001",
+                1, count, 1L, 1, new TemplateRule(), shards);
+        template.setId(1);
+        template.setCreateTime(new Date());
+        return template;
+    }
+}
@@ -0,0 +1,109 @@
+package com.imooc.coupon.service.impl;
+
+import com.imooc.coupon.dao.CouponTemplateDao;
+import com.imooc.coupon.entity.CouponTemplate;
+import com.imooc.coupon.service.ITemplateChangeService;
+import com.imooc.coupon.vo.TemplateRule;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * <h1>优惠券模板过期服务测试</h1>
+ */
+public class TemplateExpiryServiceImplTest {
+
+    private CouponTemplateDao templateDao;
+
+    private ITemplateChangeService templateChangeService;
+
+    private TemplateExpiryServiceImpl expiryService;
+
+    @Before
+    public void setUp() {
+
+        templateDao = Mockito.mock(CouponTemplateDao.class);
+        templateChangeService = Mockito.mock(ITemplateChangeService.class);
+        expiryService = new TemplateExpiryServiceImpl(templateDao, templateChangeService);
+
+        Mockito.when(templateDao.findAllByExpired(false)).thenReturn(
+                Collections.singletonList(template(1, System.currentTimeMillis() - 1000)));
+    }
+
+    @Test
+    public void testRequeueWhenMarkExpiredFails() {
+
+        Mockito.when(templateDao.markExpired(Collections.singletonList(1)))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(1);
+
+        try {
+            expiryService.expireDueTemplates();
+            Assert.fail();
+        } catch (IllegalStateException ex) {
+            // 到期的模板放回队列
+        }
+        Assert.assertEquals(1, expiryService.expireDueTemplates());
+        Mockito.verify(templateChangeService).publishTemplateChanges(
+                Collections.singletonList(1));
+    }
+
+    @Test
+    public void testRepublishWhenPublishFails() {
+
+        Mockito.when(templateDao.markExpired(Collections.singletonList(1))).thenReturn(1);
+        Mockito.when(templateChangeService.publishTemplateChanges(
+                Collections.singletonList(1)))
+                .thenThrow(new IllegalStateException("redis down"))
+                .thenReturn(1L);
+
+        try {
+            expiryService.expireDueTemplates();
+            Assert.fail();
+        } catch (IllegalStateException ex) {
+            // 已经下线, 等待重新发布
+        }
+        Assert.assertEquals(0, expiryService.expireDueTemplates());
+        Mockito.verify(templateDao, Mockito.times(1))
+                .markExpired(Collections.singletonList(1));
+        Mockito.verify(templateChangeService, Mockito.times(2))
+                .publishTemplateChanges(Collections.singletonList(1));
+    }
+
+    @Test
+    public void testVersionAdvancesOverExpiredTemplates() {
+
+        Mockito.when(templateDao.findCurrentVersion()).thenReturn(5L);
+        CouponTemplate expired = template(2, System.currentTimeMillis() + 60000);
+        expired.setExpired(true);
+        expired.setVersion(7L);
+        CouponTemplate live = template(3, System.currentTimeMillis() + 60000);
+        live.setVersion(6L);
+        Mockito.when(templateDao.findAllByVersionGreaterThan(5L))
+                .thenReturn(Arrays.asList(live, expired));
+
+        Mockito.when(templateDao.markExpired(Collections.singletonList(1))).thenReturn(1);
+        expiryService.expireDueTemplates();
+        expiryService.expireDueTemplates();
+        expiryService.expireDueTemplates();
+
+        Mockito.verify(templateDao).findAllByVersionGreaterThan(5L);
+        Mockito.verify(templateDao).findAllByVersionGreaterThan(7L);
+    }
+
+    private static CouponTemplate template(Integer id, long deadline) {
+
+        TemplateRule rule = new TemplateRule();
+        rule.setExpiration(new TemplateRule.Expiration(1, 1, deadline));
+        CouponTemplate template = new CouponTemplate();
+        template.setId(id);
+        template.setExpired(false);
+        template.setRule(rule);
+        template.setVersion(1L);
+        return template;
+    }
+}